@@ -3,15 +3,23 @@ package com.lre.gitlabintegration.client.api;
 import com.lre.gitlabintegration.client.builder.GitLabUrlFactory;
 import com.lre.gitlabintegration.config.http.GitLabBaseApiClient;
 import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCompareResult;
+import com.lre.gitlabintegration.dto.gitlab.GitLabMergeRequest;
 import com.lre.gitlabintegration.dto.gitlab.GitLabProjectInfo;
+import com.lre.gitlabintegration.dto.gitlab.GitLabTreeIndex;
 import com.lre.gitlabintegration.dto.gitlab.GitLabTreeItem;
+import com.lre.gitlabintegration.dto.gitlab.GitLabTreePage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -37,6 +45,83 @@ public class GitLabApiClient {
         return items != null ? items : Collections.emptyList();
     }
 
+    /**
+     * Lists one page of a single directory without recursing into sub-folders.
+     */
+    public List<GitLabTreeItem> getRepositoryDirectory(int page, long projectId, String ref, String path) {
+        String url = gitLabUrlFactory.getRepositoryDirectoryUrl(page, projectId, ref, path);
+        log.debug("Fetching repository directory from: {}", url);
+        List<GitLabTreeItem> items = apiClient.get(url, new ParameterizedTypeReference<>() {});
+        return items != null ? items : Collections.emptyList();
+    }
+
+    public GitLabCompareResult compare(long projectId, String from, String to) {
+        String url = gitLabUrlFactory.getCompareUrl(projectId, from, to);
+        log.debug("Comparing {}..{} for project {}", from, to, projectId);
+        return apiClient.get(url, GitLabCompareResult.class);
+    }
+
+    /**
+     * Fetches one offset-paginated tree page into a script index and keeps the X-Total-Pages header.
+     * A null path lists the whole repository.
+     */
+    public GitLabTreePage getRepositoryTreePage(int page, long projectId, String ref, String path) {
+        String url = gitLabUrlFactory.getRepositoryTreeUrl(page, ref, projectId, path);
+        log.debug("Fetching repository tree page from: {}", url);
+        return fetchTreePage(url);
+    }
+
+    /**
+     * Fetches one keyset-paginated tree page into a script index; pageToken is null for the first page.
+     */
+    public GitLabTreePage getRepositoryTreeKeysetPage(long projectId, String ref, String path, String pageToken) {
+        String url = gitLabUrlFactory.getRepositoryTreeKeysetUrl(projectId, ref, path, pageToken);
+        log.debug("Fetching repository tree keyset page from: {}", url);
+        return fetchTreePage(url);
+    }
+
+    private GitLabTreePage fetchTreePage(String url) {
+        return apiClient.getStreaming(url, null, (headers, body) -> {
+            GitLabTreeIndex index = new GitLabTreeIndex();
+            int itemCount = GitLabTreeStreamReader.read(body, index);
+
+            return new GitLabTreePage(
+                    index,
+                    itemCount,
+                    parseTotalPages(headers.getFirst("X-Total-Pages")),
+                    nextPageToken(headers.getFirst(HttpHeaders.LINK))
+            );
+        });
+    }
+
+    private Integer parseTotalPages(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extracts page_token from the rel="next" entry of a Link header.
+     */
+    private String nextPageToken(String linkHeader) {
+        if (linkHeader == null || linkHeader.isBlank()) return null;
+
+        for (String link : linkHeader.split(",")) {
+            String[] parts = link.split(";");
+            if (parts.length < 2 || !parts[1].replace(" ", "").equals("rel=\"next\"")) continue;
+
+            String url = parts[0].trim();
+            if (url.startsWith("<") && url.endsWith(">")) url = url.substring(1, url.length() - 1);
+
+            String token = UriComponentsBuilder.fromUriString(url).build().getQueryParams().getFirst("page_token");
+            return token != null ? UriUtils.decode(token, StandardCharsets.UTF_8) : null;
+        }
+        return null;
+    }
+
     public GitLabCommit getLatestCommitForPath(long projectId, String ref, String path) {
         String url = gitLabUrlFactory.getLatestCommitUrlForPath(projectId, ref, path);
         log.debug("Fetching latest commit for path: {}", path);
@@ -45,6 +130,33 @@ public class GitLabApiClient {
         return (commits != null && !commits.isEmpty()) ? commits.get(0) : new GitLabCommit();
     }
 
+    /**
+     * Resolves the commit a branch, tag or SHA currently points to.
+     */
+    public GitLabCommit getHeadCommit(long projectId, String ref) {
+        String url = gitLabUrlFactory.getLatestCommitUrlForPath(projectId, ref, null);
+        log.debug("Fetching head commit for ref: {}", ref);
+
+        List<GitLabCommit> commits = apiClient.get(url, new ParameterizedTypeReference<>() {});
+        return (commits != null && !commits.isEmpty()) ? commits.get(0) : new GitLabCommit();
+    }
+
+    public GitLabMergeRequest getMergeRequest(long projectId, long mergeRequestIid) {
+        String url = gitLabUrlFactory.getMergeRequestUrl(projectId, mergeRequestIid);
+        log.debug("Fetching merge request from: {}", url);
+        return apiClient.get(url, GitLabMergeRequest.class);
+    }
+
+    /**
+     * Lists one page of the files a merge request changes.
+     */
+    public List<GitLabCompareResult.GitLabDiff> getMergeRequestDiffs(int page, long projectId, long mergeRequestIid) {
+        String url = gitLabUrlFactory.getMergeRequestDiffsUrl(page, projectId, mergeRequestIid);
+        log.debug("Fetching merge request diffs from: {}", url);
+        List<GitLabCompareResult.GitLabDiff> diffs = apiClient.get(url, new ParameterizedTypeReference<>() {});
+        return diffs != null ? diffs : Collections.emptyList();
+    }
+
     public GitLabProjectInfo getProjectInfo(long projectId) {
         String url = gitLabUrlFactory.getProjectUrl(projectId);
         log.debug("Fetching project info from: {}", url);
@@ -67,6 +179,23 @@ public class GitLabApiClient {
         }
     }
 
+    /**
+     * Streams the archive straight to disk; used for whole-ref archives that may not fit in memory.
+     */
+    public void streamRepositoryArchive(long projectId, String sha, String path, Path destPath) throws IOException {
+        String url = gitLabUrlFactory.getRepositoryArchiveUrl(projectId, sha, path);
+        log.debug("Streaming repository archive from: {}", url);
+
+        prepareDestinationDirectory(destPath);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(MediaType.APPLICATION_OCTET_STREAM));
+
+        try (OutputStream out = Files.newOutputStream(destPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            apiClient.streamTo(url, out, MediaType.APPLICATION_OCTET_STREAM, headers);
+        }
+    }
+
     private byte[] downloadArchive(String url) {
         HttpHeaders headers = new HttpHeaders();
         headers.setAccept(List.of(MediaType.APPLICATION_OCTET_STREAM));
@@ -0,0 +1,120 @@
+package com.lre.gitlabintegration.client.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lre.gitlabintegration.config.http.GitLabBaseApiClient;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.exceptions.LreException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batched latest-commit lookups through the GitLab GraphQL API: one request resolves
+ * {@code Tree.lastCommit} for a whole page of paths using field aliases.
+ */
+@Service
+@Slf4j
+public class GitLabGraphQlApiClient {
+
+    private static final String COMMIT_FIELDS = "lastCommit { sha committedDate message }";
+
+    private final GitLabBaseApiClient apiClient;
+    private final ObjectMapper objectMapper;
+    private final String graphqlUrl;
+
+    public GitLabGraphQlApiClient(GitLabBaseApiClient apiClient, ObjectMapper objectMapper,
+                                  GitLabProperties gitLabProperties) {
+        this.apiClient = apiClient;
+        this.objectMapper = objectMapper;
+        this.graphqlUrl = gitLabProperties.getGraphqlUrl() != null && !gitLabProperties.getGraphqlUrl().isBlank()
+                ? gitLabProperties.getGraphqlUrl()
+                : deriveGraphqlUrl(gitLabProperties.getUrl());
+    }
+
+    /**
+     * @return path to its latest commit at ref; paths without history are absent
+     */
+    public Map<String, GitLabCommit> getLatestCommits(long projectId, String ref, List<String> paths) {
+        if (paths.isEmpty()) return Map.of();
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("ids", List.of("gid://gitlab/Project/" + projectId));
+        variables.put("ref", ref);
+
+        StringBuilder declarations = new StringBuilder("$ids: [ID!], $ref: String!");
+        StringBuilder fields = new StringBuilder();
+        for (int i = 0; i < paths.size(); i++) {
+            declarations.append(", $p").append(i).append(": String");
+            fields.append(" p").append(i).append(": tree(ref: $ref, path: $p").append(i).append(") { ")
+                    .append(COMMIT_FIELDS).append(" }");
+            variables.put("p" + i, paths.get(i));
+        }
+
+        String query = "query(" + declarations + ") { projects(ids: $ids) { nodes { repository {"
+                + fields + " } } } }";
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("query", query);
+        body.put("variables", variables);
+
+        log.debug("Resolving latest commit for {} path(s) via GraphQL", paths.size());
+        // Authenticated by the PRIVATE-TOKEN header of the shared GitLab client, as REST calls are
+        String response = apiClient.postJson(graphqlUrl, body, String.class);
+
+        return parseCommits(readTree(response), paths);
+    }
+
+    /**
+     * The RestClient converters are Jackson 3 and cannot bind this Jackson 2 tree, so the
+     * body is read as text and parsed here.
+     */
+    private JsonNode readTree(String response) {
+        if (response == null || response.isBlank()) return null;
+        try {
+            return objectMapper.readTree(response);
+        } catch (JsonProcessingException e) {
+            throw new LreException("Unreadable GraphQL response from GitLab", e);
+        }
+    }
+
+    private Map<String, GitLabCommit> parseCommits(JsonNode response, List<String> paths) {
+        if (response == null) {
+            throw new LreException("Empty GraphQL response from GitLab");
+        }
+        if (response.hasNonNull("errors") && !response.get("errors").isEmpty()) {
+            throw new LreException("GitLab GraphQL error: " + response.get("errors").get(0).path("message").asText());
+        }
+
+        JsonNode repository = response.path("data").path("projects").path("nodes").path(0).path("repository");
+        if (repository.isMissingNode() || repository.isNull()) {
+            throw new LreException("GitLab GraphQL response holds no repository");
+        }
+
+        Map<String, GitLabCommit> commits = new HashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            JsonNode lastCommit = repository.path("p" + i).path("lastCommit");
+            if (lastCommit.isMissingNode() || lastCommit.isNull()) continue;
+
+            GitLabCommit commit = new GitLabCommit();
+            commit.setSha(lastCommit.path("sha").asText(""));
+            commit.setCommittedDate(lastCommit.path("committedDate").asText(""));
+            commit.setMessage(lastCommit.path("message").asText(""));
+            commit.setPath(paths.get(i));
+            commits.put(paths.get(i), commit);
+        }
+        return commits;
+    }
+
+    private static String deriveGraphqlUrl(String restUrl) {
+        String base = restUrl.endsWith("/") ? restUrl.substring(0, restUrl.length() - 1) : restUrl;
+        if (base.endsWith("/api/v4")) base = base.substring(0, base.length() - "/api/v4".length());
+        return base + "/api/graphql";
+    }
+}
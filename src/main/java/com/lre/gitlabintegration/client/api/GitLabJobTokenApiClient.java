@@ -24,7 +24,8 @@ public class GitLabJobTokenApiClient extends BaseRestApiClient {
         return get(url, GitLabJobInfo.class, headers);
     }
 
-    public record GitLabJobInfo(GitLabUser user, GitLabPipeline pipeline, String ref, Boolean tag) {
+    public record GitLabJobInfo(GitLabUser user, GitLabPipeline pipeline, String ref, Boolean tag,
+                                String status, @JsonProperty("started_at") String startedAt) {
     }
 
     public record GitLabUser(long id, String username, String name) {
@@ -0,0 +1,68 @@
+package com.lre.gitlabintegration.client.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.lre.gitlabintegration.dto.gitlab.GitLabTreeIndex;
+import lombok.experimental.UtilityClass;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pull-parses a repository tree page without binding it to {@code GitLabTreeItem}s.
+ */
+@UtilityClass
+class GitLabTreeStreamReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Adds the tree entries and .usr folders of the page to the index.
+     *
+     * @return number of entries read
+     */
+    static int read(InputStream body, GitLabTreeIndex index) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of tree entries");
+            }
+
+            int count = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                readEntry(parser, index);
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private static void readEntry(JsonParser parser, GitLabTreeIndex index) throws IOException {
+        String id = null;
+        String type = null;
+        String path = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            switch (field) {
+                case "id" -> id = parser.getValueAsString();
+                case "type" -> type = parser.getValueAsString();
+                case "path" -> path = parser.getValueAsString();
+                default -> {
+                    if (value.isStructStart()) parser.skipChildren();
+                }
+            }
+        }
+
+        if (path == null) return;
+
+        if ("tree".equals(type)) {
+            index.addTree(path, id);
+        } else if ("blob".equals(type) && path.endsWith(".usr")) {
+            int slash = path.lastIndexOf('/');
+            if (slash > 0) index.addScriptFolder(path.substring(0, slash));
+        }
+    }
+}
@@ -36,6 +36,36 @@ public class GitLabUrlFactory {
         return getRepositoryTreeUrl(page, ref, projectId, null);
     }
 
+    /**
+     * Get non-recursive listing URL of a single directory; a null path lists the repository root
+     */
+    public String getRepositoryDirectoryUrl(int page, long projectId, String ref, String path) {
+        return UriComponentsBuilder
+                .fromPath("projects/{projectId}/repository/tree")
+                .queryParam("ref", ref)
+                .queryParam("per_page", perPageRecords)
+                .queryParam("page", page)
+                .queryParamIfPresent("path", Optional.ofNullable(path))
+                .buildAndExpand(projectId)
+                .toUriString();
+    }
+
+    /**
+     * Get repository tree URL with keyset pagination; pageToken is null for the first page
+     */
+    public String getRepositoryTreeKeysetUrl(long projectId, String ref, String path, String pageToken) {
+        return UriComponentsBuilder
+                .fromPath("projects/{projectId}/repository/tree")
+                .queryParam("ref", ref)
+                .queryParam("recursive", true)
+                .queryParam("per_page", perPageRecords)
+                .queryParam("pagination", "keyset")
+                .queryParamIfPresent("path", Optional.ofNullable(path))
+                .queryParamIfPresent("page_token", Optional.ofNullable(pageToken))
+                .buildAndExpand(projectId)
+                .toUriString();
+    }
+
     /**
      * Get current job URL
      */
@@ -69,6 +99,41 @@ public class GitLabUrlFactory {
                 .toUriString();
     }
 
+    /**
+     * Get compare URL; straight=true diffs the two trees directly instead of from their merge base
+     */
+    public String getCompareUrl(long projectId, String from, String to) {
+        return UriComponentsBuilder
+                .fromPath("projects/{projectId}/repository/compare")
+                .queryParam("from", from)
+                .queryParam("to", to)
+                .queryParam("straight", true)
+                .buildAndExpand(projectId)
+                .toUriString();
+    }
+
+    /**
+     * Get merge request URL
+     */
+    public String getMergeRequestUrl(long projectId, long mergeRequestIid) {
+        return UriComponentsBuilder
+                .fromPath("projects/{projectId}/merge_requests/{iid}")
+                .buildAndExpand(projectId, mergeRequestIid)
+                .toUriString();
+    }
+
+    /**
+     * Get merge request diffs URL with pagination
+     */
+    public String getMergeRequestDiffsUrl(int page, long projectId, long mergeRequestIid) {
+        return UriComponentsBuilder
+                .fromPath("projects/{projectId}/merge_requests/{iid}/diffs")
+                .queryParam("per_page", perPageRecords)
+                .queryParam("page", page)
+                .buildAndExpand(projectId, mergeRequestIid)
+                .toUriString();
+    }
+
     /**
      * Get repository archive URL
      */
@@ -0,0 +1,185 @@
+package com.lre.gitlabintegration.config.concurrency;
+
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor for GitLab fan-out work (commit lookups, tree pages).
+ * <p>
+ * All syncs share at most {@code gitlab.fan-out.max-concurrency} running tasks. Each
+ * {@link #invokeAll} call keeps at most its own window of tasks submitted at a time,
+ * so concurrent syncs interleave in the queue instead of one sync filling it.
+ * Tasks run under the submitting sync's {@link SyncControl}.
+ */
+@Slf4j
+@Component
+public class GitLabFanOutExecutor {
+
+    private final ExecutorService executor;
+    private final Semaphore globalPermits;
+    private final int defaultWindow;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Timer runTimer;
+
+    public GitLabFanOutExecutor(GitLabProperties gitLabProperties, MeterRegistry meterRegistry) {
+        int maxConcurrency = Math.max(1, gitLabProperties.getFanOut().getMaxConcurrency());
+        this.defaultWindow = Math.max(1, gitLabProperties.getThreadPoolSize());
+        this.globalPermits = new Semaphore(maxConcurrency, true);
+        this.executor = createExecutor(maxConcurrency, gitLabProperties.getFanOut().isVirtualThreads());
+
+        Gauge.builder("gitlab.fanout.queue.depth", waiting, AtomicInteger::get)
+                .description("Tasks submitted but not yet running")
+                .register(meterRegistry);
+        Gauge.builder("gitlab.fanout.active", active, AtomicInteger::get)
+                .description("Tasks currently running")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("gitlab.fanout.task.latency")
+                .tag("phase", "queued")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("gitlab.fanout.task.latency")
+                .tag("phase", "running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs all tasks with the default per-sync window and waits for them to finish.
+     *
+     * @return completed futures in task order
+     */
+    public <T> List<Future<T>> invokeAll(List<? extends Callable<T>> tasks) throws InterruptedException {
+        return invokeAll(tasks, defaultWindow);
+    }
+
+    public <T> List<Future<T>> invokeAll(List<? extends Callable<T>> tasks, int window) throws InterruptedException {
+        List<FutureTask<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(new FutureTask<>(SyncControl.propagate(task)));
+        }
+
+        Semaphore inFlight = new Semaphore(Math.max(1, window));
+        try {
+            for (FutureTask<T> future : futures) {
+                inFlight.acquire();
+                submit(future, inFlight);
+            }
+            for (FutureTask<T> future : futures) {
+                awaitQuietly(future);
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e;
+        }
+
+        return new ArrayList<>(futures);
+    }
+
+    private void submit(FutureTask<?> future, Semaphore inFlight) {
+        long queuedAt = System.nanoTime();
+        waiting.incrementAndGet();
+
+        Runnable wrapped = () -> {
+            boolean permitted = false;
+            try {
+                globalPermits.acquire();
+                permitted = true;
+                waiting.decrementAndGet();
+                active.incrementAndGet();
+
+                long startedAt = System.nanoTime();
+                waitTimer.record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+                future.run();
+                runTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+            } finally {
+                if (permitted) {
+                    active.decrementAndGet();
+                    globalPermits.release();
+                } else {
+                    waiting.decrementAndGet();
+                }
+                inFlight.release();
+            }
+        };
+
+        try {
+            executor.execute(wrapped);
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void awaitQuietly(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException | CancellationException ignored) {
+            // surfaced to the caller through the returned future
+        }
+    }
+
+    private ExecutorService createExecutor(int maxConcurrency, boolean virtualThreads) {
+        if (virtualThreads) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                log.info("GitLab fan-out executor using virtual threads (maxConcurrency={})", maxConcurrency);
+                return virtual;
+            }
+            log.warn("Virtual threads not supported by this runtime, using a platform thread pool");
+        }
+
+        log.info("GitLab fan-out executor using {} platform threads", maxConcurrency);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                maxConcurrency, maxConcurrency,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("gitlab-fanout-")
+        );
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor is looked up reflectively so the
+     * application still runs on Java 17.
+     */
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.lre.gitlabintegration.config.concurrency;
+
+import com.lre.gitlabintegration.dto.sync.ScriptChange;
+import com.lre.gitlabintegration.exceptions.SyncCancelledException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * Deadline and cancel flag of one running sync.
+ * <p>
+ * The control is bound to the thread running the sync and carried over to the
+ * threads it fans out to, so checkpoints and HTTP calls deep in the call tree can
+ * see it without it being passed through every signature. Threads outside a sync
+ * see {@link #NONE}, which never stops anything.
+ */
+public final class SyncControl {
+
+    public static final SyncControl NONE = new SyncControl(null);
+
+    private static final ThreadLocal<SyncControl> CURRENT = ThreadLocal.withInitial(() -> NONE);
+
+    private final Instant deadline;
+    private volatile String cancelReason;
+    private volatile Consumer<ScriptChange> progress;
+
+    /**
+     * @param deadline null for no deadline
+     */
+    public SyncControl(Instant deadline) {
+        this.deadline = deadline;
+    }
+
+    public static SyncControl current() {
+        return CURRENT.get();
+    }
+
+    public Instant deadline() {
+        return deadline;
+    }
+
+    /**
+     * Receives every script change as soon as it is done. Called from the sync's
+     * worker threads, so the listener must be thread-safe.
+     */
+    public SyncControl onProgress(Consumer<ScriptChange> listener) {
+        if (this != NONE) this.progress = listener;
+        return this;
+    }
+
+    public void report(ScriptChange change) {
+        Consumer<ScriptChange> listener = progress;
+        if (listener == null || change == null) return;
+        try {
+            listener.accept(change);
+        } catch (RuntimeException e) {
+            // progress is best effort and never fails the sync
+        }
+    }
+
+    public void cancel(String reason) {
+        if (this != NONE && cancelReason == null) cancelReason = reason;
+    }
+
+    /**
+     * @return why remaining work should be skipped, or null to go on
+     */
+    public String stopReason() {
+        if (cancelReason != null) return cancelReason;
+        if (deadline != null && !Instant.now().isBefore(deadline)) return "Deadline " + deadline + " exceeded";
+        return null;
+    }
+
+    /**
+     * Stops the calling stage when the sync was cancelled or is out of time.
+     */
+    public void checkpoint(String stage) {
+        String reason = stopReason();
+        if (reason != null) {
+            throw new SyncCancelledException("Sync stopped before " + stage + ": " + reason);
+        }
+    }
+
+    /**
+     * @return time left until the deadline, or null when there is none
+     */
+    public Duration remaining() {
+        if (deadline == null) return null;
+        Duration left = Duration.between(Instant.now(), deadline);
+        return left.isNegative() ? Duration.ZERO : left;
+    }
+
+    public <T> T callWith(Callable<T> action) throws Exception {
+        SyncControl previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.call();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public void runWith(Runnable action) {
+        SyncControl previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            action.run();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Binds the caller's control to a task that runs on another thread.
+     */
+    public static Runnable propagate(Runnable task) {
+        SyncControl control = current();
+        return control == NONE ? task : () -> control.runWith(task);
+    }
+
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        SyncControl control = current();
+        return control == NONE ? task : () -> control.callWith(task);
+    }
+}
@@ -0,0 +1,273 @@
+package com.lre.gitlabintegration.config.concurrency;
+
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which waiting sync runs next. Every sync asks for a slot before it locks
+ * its target and gives it back when done; at most {@code lre.scheduler.max-concurrent}
+ * slots are out at a time.
+ * <p>
+ * Each tenant (GitLab project and LRE target) has its own queue. A free slot goes to
+ * <ol>
+ *     <li>incremental syncs before full scans, unless the full scan has waited longer
+ *     than {@code bulk-aging};</li>
+ *     <li>then the tenant that has used the least run time for its weight;</li>
+ *     <li>then the longest waiting sync.</li>
+ * </ol>
+ * Full scans never hold more than {@code max-bulk-concurrent} slots, so one team's
+ * initial load cannot block everyone else's small syncs.
+ */
+@Slf4j
+@Component
+public class SyncScheduler {
+
+    private static final String CLASS_INCREMENTAL = "incremental";
+    private static final String CLASS_BULK = "bulk";
+
+    private final LreProperties.Scheduler config;
+    private final MeterRegistry meterRegistry;
+
+    private final Object monitor = new Object();
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    private int running;
+    private int runningBulk;
+    private int waiting;
+    private long sequence;
+    /** Virtual time of the last granted tenant; idle tenants rejoin here instead of with saved-up credit. */
+    private double clock;
+
+    public SyncScheduler(LreProperties lreProperties, MeterRegistry meterRegistry) {
+        this.config = lreProperties.getScheduler();
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("lre.sync.scheduler.waiting", this, s -> s.snapshot(false))
+                .description("Syncs waiting for a slot")
+                .register(meterRegistry);
+        Gauge.builder("lre.sync.scheduler.running", this, s -> s.snapshot(true))
+                .description("Syncs holding a slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Waits for a slot. Gives up when the control's sync is cancelled or out of time.
+     *
+     * @param bulk true for a sync expected to scan and upload the whole ref
+     * @return the slot, to be closed when the sync is done
+     */
+    public Slot acquire(SyncRequest request, boolean bulk, SyncControl control) {
+        if (!config.isEnabled()) return Slot.NONE;
+
+        Ticket ticket;
+        synchronized (monitor) {
+            Tenant tenant = tenants.computeIfAbsent(tenantKey(request), k -> new Tenant(k, weight(request)));
+            if (tenant.isIdle()) tenant.virtualTime = Math.max(tenant.virtualTime, clock);
+
+            ticket = new Ticket(tenant, bulk, sequence++, System.nanoTime());
+            (bulk ? tenant.bulk : tenant.incremental).add(ticket);
+            waiting++;
+            dispatch();
+
+            try {
+                while (!ticket.granted) {
+                    String stop = control.stopReason();
+                    if (stop != null) {
+                        withdraw(ticket);
+                        control.checkpoint("waiting for a sync slot");
+                    }
+                    monitor.wait(1000);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!ticket.granted) {
+                    withdraw(ticket);
+                    throw new IllegalStateException("Interrupted while waiting for a sync slot", e);
+                }
+            }
+        }
+
+        long waited = System.nanoTime() - ticket.enqueuedAt;
+        timer("lre.sync.scheduler.wait", ticket).record(waited, TimeUnit.NANOSECONDS);
+        if (waited > TimeUnit.SECONDS.toNanos(1)) {
+            log.info("Sync of {} waited {} ms for a slot", ticket.tenant.key, TimeUnit.NANOSECONDS.toMillis(waited));
+        }
+        return new Slot(this, ticket, System.nanoTime());
+    }
+
+    private void release(Ticket ticket, long startedAt) {
+        long ran = System.nanoTime() - startedAt;
+        timer("lre.sync.scheduler.run", ticket).record(ran, TimeUnit.NANOSECONDS);
+
+        synchronized (monitor) {
+            Tenant tenant = ticket.tenant;
+            tenant.running--;
+            tenant.virtualTime += (double) ran / tenant.weight;
+            running--;
+            if (ticket.bulk) runningBulk--;
+
+            dropIfIdle(tenant);
+            dispatch();
+        }
+    }
+
+    /**
+     * Hands out free slots. Caller holds the monitor.
+     */
+    private void dispatch() {
+        boolean granted = false;
+        long now = System.nanoTime();
+
+        while (running < config.getMaxConcurrent()) {
+            Ticket next = null;
+            for (Tenant tenant : tenants.values()) {
+                Ticket candidate = candidate(tenant, now);
+                if (candidate != null && (next == null || before(candidate, next, now))) next = candidate;
+            }
+            if (next == null) break;
+
+            Tenant tenant = next.tenant;
+            (next.bulk ? tenant.bulk : tenant.incremental).remove(next);
+            next.granted = true;
+            tenant.running++;
+            waiting--;
+            running++;
+            if (next.bulk) runningBulk++;
+            clock = Math.max(clock, tenant.virtualTime);
+            granted = true;
+        }
+
+        if (granted) monitor.notifyAll();
+    }
+
+    /**
+     * The tenant's ticket to compete with: its next incremental sync, or its next full
+     * scan when bulk slots are free and that scan is older or has aged.
+     */
+    private Ticket candidate(Tenant tenant, long now) {
+        Ticket incremental = tenant.incremental.peekFirst();
+        Ticket bulk = runningBulk < config.getMaxBulkConcurrent() ? tenant.bulk.peekFirst() : null;
+
+        if (bulk == null) return incremental;
+        if (incremental == null) return bulk;
+        return aged(bulk, now) && bulk.sequence < incremental.sequence ? bulk : incremental;
+    }
+
+    private boolean before(Ticket a, Ticket b, long now) {
+        boolean aFirstClass = !a.bulk || aged(a, now);
+        boolean bFirstClass = !b.bulk || aged(b, now);
+        if (aFirstClass != bFirstClass) return aFirstClass;
+
+        int byShare = Double.compare(a.tenant.virtualTime, b.tenant.virtualTime);
+        if (byShare != 0) return byShare < 0;
+
+        return a.sequence < b.sequence;
+    }
+
+    private boolean aged(Ticket ticket, long now) {
+        return now - ticket.enqueuedAt >= config.getBulkAging().toNanos();
+    }
+
+    private void withdraw(Ticket ticket) {
+        Tenant tenant = ticket.tenant;
+        if ((ticket.bulk ? tenant.bulk : tenant.incremental).remove(ticket)) {
+            waiting--;
+            dropIfIdle(tenant);
+        }
+    }
+
+    private void dropIfIdle(Tenant tenant) {
+        if (tenant.isIdle()) tenants.remove(tenant.key);
+    }
+
+    private int snapshot(boolean runningSlots) {
+        synchronized (monitor) {
+            return runningSlots ? running : waiting;
+        }
+    }
+
+    private Timer timer(String name, Ticket ticket) {
+        return Timer.builder(name)
+                .tag("tenant", ticket.tenant.key)
+                .tag("class", ticket.bulk ? CLASS_BULK : CLASS_INCREMENTAL)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private int weight(SyncRequest request) {
+        Integer weight = config.getWeights().get(request.getGitlabProjectId());
+        return weight == null || weight < 1 ? 1 : weight;
+    }
+
+    private static String tenantKey(SyncRequest request) {
+        return (request.getGitlabProjectId() + ":" + request.getLreDomain() + "/" + request.getLreProject())
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Tenant {
+        private final String key;
+        private final int weight;
+        private final Deque<Ticket> incremental = new ArrayDeque<>();
+        private final Deque<Ticket> bulk = new ArrayDeque<>();
+        private int running;
+        private double virtualTime;
+
+        Tenant(String key, int weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+
+        boolean isIdle() {
+            return running == 0 && incremental.isEmpty() && bulk.isEmpty();
+        }
+    }
+
+    private static final class Ticket {
+        private final Tenant tenant;
+        private final boolean bulk;
+        private final long sequence;
+        private final long enqueuedAt;
+        private boolean granted;
+
+        Ticket(Tenant tenant, boolean bulk, long sequence, long enqueuedAt) {
+            this.tenant = tenant;
+            this.bulk = bulk;
+            this.sequence = sequence;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    public static final class Slot implements AutoCloseable {
+
+        static final Slot NONE = new Slot(null, null, 0);
+
+        private final SyncScheduler scheduler;
+        private final Ticket ticket;
+        private final long startedAt;
+        private boolean closed;
+
+        private Slot(SyncScheduler scheduler, Ticket ticket, long startedAt) {
+            this.scheduler = scheduler;
+            this.ticket = ticket;
+            this.startedAt = startedAt;
+        }
+
+        @Override
+        public void close() {
+            if (ticket == null || closed) return;
+            closed = true;
+            scheduler.release(ticket, startedAt);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.lre.gitlabintegration.config.http;
 
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
 import com.lre.gitlabintegration.util.http.HttpErrorHandler;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -9,6 +10,7 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -51,6 +53,9 @@ public class BaseRestApiClient {
     private <R> RestClient.RequestBodySpec buildRequest(HttpMethod method, String url, R body,
                                                         MediaType contentType, MediaType accept, HttpHeaders headers) {
 
+        // A cancelled or timed-out sync stops at its next call instead of finishing its stage
+        SyncControl.current().checkpoint(method + " " + url);
+
         RestClient.RequestBodySpec spec = restClient.method(method).uri(url).headers(h -> applyHeaders(h, headers, accept));
 
         if (contentType != null) spec.contentType(contentType);
@@ -399,6 +404,49 @@ public class BaseRestApiClient {
         }
     }
 
+    /**
+     * Reads a 2xx response body as a stream instead of buffering it; error responses
+     * are mapped like every other call so callers see the usual domain exceptions.
+     */
+    public <T> T getStreaming(String url, HttpHeaders headers, ResponseStreamReader<T> reader) {
+        Objects.requireNonNull(reader, "reader must not be null");
+
+        try {
+            return buildRequest(HttpMethod.GET, url, null, null, null, headers)
+                    .exchange((req, res) -> {
+
+                        if (!res.getStatusCode().is2xxSuccessful()) {
+                            byte[] errorBody;
+                            try (InputStream in = res.getBody()) {
+                                errorBody = in.readAllBytes();
+                            }
+                            throw new RestClientResponseException("Non-2xx response: " + res.getStatusCode(),
+                                    res.getStatusCode(), res.getStatusText(), res.getHeaders(), errorBody, null);
+                        }
+
+                        try (InputStream in = res.getBody()) {
+                            return reader.read(res.getHeaders(), in);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+
+        } catch (UncheckedIOException e) {
+            throw HttpErrorHandler.toDomainException(
+                    new RestClientException("Stream read failed", e.getCause()),
+                    url,
+                    "GET " + url
+            );
+        } catch (RestClientException e) {
+            throw HttpErrorHandler.toDomainException(e, url, "GET " + url);
+        }
+    }
+
+    @FunctionalInterface
+    public interface ResponseStreamReader<T> {
+        T read(HttpHeaders responseHeaders, InputStream body) throws IOException;
+    }
+
     public void postFormAndStream(String url, Map<String, String> form, OutputStream out, HttpHeaders headers) {
         Objects.requireNonNull(out, "OutputStream must not be null");
 
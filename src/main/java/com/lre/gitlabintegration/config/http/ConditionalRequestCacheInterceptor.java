@@ -0,0 +1,209 @@
+package com.lre.gitlabintegration.config.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.AntPathMatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Revalidates GETs to the configured endpoints with If-None-Match / If-Modified-Since
+ * and answers 304 responses from an in-memory, byte-bounded LRU store.
+ * <p>
+ * Only 200 responses carrying an ETag or Last-Modified are stored; everything else
+ * passes through untouched, so error handling is unchanged.
+ */
+@Slf4j
+public class ConditionalRequestCacheInterceptor implements ClientHttpRequestInterceptor {
+
+    private final String clientName;
+    private final List<String> endpoints;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final MeterRegistry meterRegistry;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final LinkedHashMap<String, CachedResponse> store = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, EndpointMetrics> metrics = new ConcurrentHashMap<>();
+    private long storedBytes;
+
+    public ConditionalRequestCacheInterceptor(String clientName, List<String> endpoints,
+                                              long maxBytes, long maxEntryBytes, MeterRegistry meterRegistry) {
+        this.clientName = clientName;
+        this.endpoints = List.copyOf(endpoints);
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("http.cache.size", this, ConditionalRequestCacheInterceptor::storedBytes)
+                .tag("client", clientName)
+                .baseUnit("bytes")
+                .description("Bytes held by the conditional-request cache")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public @NonNull ClientHttpResponse intercept(
+            @NonNull HttpRequest request,
+            byte @NonNull [] body,
+            @NonNull ClientHttpRequestExecution execution
+    ) throws IOException {
+
+        String endpoint = cachedEndpoint(request.getURI(), request.getMethod());
+        if (endpoint == null) {
+            return execution.execute(request, body);
+        }
+
+        String key = request.getURI().toString();
+        CachedResponse cached = lookup(key);
+        if (cached != null) {
+            if (cached.etag() != null) request.getHeaders().setIfNoneMatch(cached.etag());
+            if (cached.lastModified() != null) request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+        }
+
+        ClientHttpResponse response = execution.execute(request, body);
+        EndpointMetrics endpointMetrics = metricsFor(endpoint);
+
+        if (cached != null && response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+            response.close();
+            endpointMetrics.hits().increment();
+            endpointMetrics.bytesSaved().increment(cached.body().length);
+            log.debug("Cache hit for {} ({} bytes)", key, cached.body().length);
+            return new BufferedResponse(HttpStatus.OK, "OK", cached.headers(), cached.body());
+        }
+
+        endpointMetrics.misses().increment();
+
+        HttpHeaders headers = response.getHeaders();
+        String etag = headers.getETag();
+        String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+
+        if (!response.getStatusCode().isSameCodeAs(HttpStatus.OK) || (etag == null && lastModified == null)) {
+            return response;
+        }
+
+        long contentLength = headers.getContentLength();
+        if (contentLength > maxEntryBytes) {
+            return response;
+        }
+
+        byte[] bytes;
+        HttpHeaders copy = HttpHeaders.copyOf(headers);
+        try (response) {
+            bytes = response.getBody().readAllBytes();
+        }
+
+        if (bytes.length <= maxEntryBytes) {
+            put(key, new CachedResponse(etag, lastModified, copy, bytes));
+        }
+        return new BufferedResponse(HttpStatus.OK, "OK", copy, bytes);
+    }
+
+    /**
+     * @return whether a request is one this cache revalidates; only those need to pass
+     * through it
+     */
+    public boolean caches(URI uri, HttpMethod method) {
+        return cachedEndpoint(uri, method) != null;
+    }
+
+    private String cachedEndpoint(URI uri, HttpMethod method) {
+        return method == HttpMethod.GET ? matchEndpoint(uri.getPath()) : null;
+    }
+
+    private String matchEndpoint(String path) {
+        for (String pattern : endpoints) {
+            if (pathMatcher.match(pattern, path)) return pattern;
+        }
+        return null;
+    }
+
+    private synchronized CachedResponse lookup(String key) {
+        return store.get(key);
+    }
+
+    private synchronized void put(String key, CachedResponse entry) {
+        CachedResponse previous = store.put(key, entry);
+        if (previous != null) storedBytes -= previous.body().length;
+        storedBytes += entry.body().length;
+
+        Iterator<CachedResponse> eldest = store.values().iterator();
+        while (storedBytes > maxBytes && eldest.hasNext()) {
+            storedBytes -= eldest.next().body().length;
+            eldest.remove();
+        }
+    }
+
+    private synchronized long storedBytes() {
+        return storedBytes;
+    }
+
+    private EndpointMetrics metricsFor(String endpoint) {
+        return metrics.computeIfAbsent(endpoint, e -> new EndpointMetrics(
+                Counter.builder("http.cache.requests")
+                        .tags("client", clientName, "endpoint", e, "result", "hit")
+                        .register(meterRegistry),
+                Counter.builder("http.cache.requests")
+                        .tags("client", clientName, "endpoint", e, "result", "miss")
+                        .register(meterRegistry),
+                Counter.builder("http.cache.bytes.saved")
+                        .tags("client", clientName, "endpoint", e)
+                        .baseUnit("bytes")
+                        .register(meterRegistry)
+        ));
+    }
+
+    private record CachedResponse(String etag, String lastModified, HttpHeaders headers, byte[] body) {
+    }
+
+    private record EndpointMetrics(Counter hits, Counter misses, Counter bytesSaved) {
+    }
+
+    private record BufferedResponse(HttpStatusCode status, String text, HttpHeaders headers, byte[] body)
+            implements ClientHttpResponse {
+
+        @Override
+        public @NonNull HttpStatusCode getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public @NonNull String getStatusText() {
+            return text;
+        }
+
+        @Override
+        public @NonNull HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public @NonNull InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+            // nothing to release, the body is already buffered
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.lre.gitlabintegration.config.http;
+
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adapts the number of GitLab requests in flight to GitLab's rate limit headers (AIMD).
+ * <p>
+ * The permit limit grows by one after a full window of healthy responses and is halved
+ * on 429/503 or when RateLimit-Remaining runs low. Once the remaining budget is spent,
+ * new requests wait for RateLimit-Reset. Rate-limited GETs are retried after
+ * Retry-After; other methods are returned as-is so they are never replayed.
+ * <p>
+ * A request holds its permit until its response is closed, so streamed tree pages and
+ * archive downloads count as in flight while their bodies are read.
+ */
+@Slf4j
+public class GitLabRateLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final String RATE_LIMIT_LIMIT = "RateLimit-Limit";
+    private static final String RATE_LIMIT_REMAINING = "RateLimit-Remaining";
+    private static final String RATE_LIMIT_RESET = "RateLimit-Reset";
+
+    private final int minPermits;
+    private final int maxPermits;
+    private final int maxRetries;
+    private final Duration maxRetryWait;
+    private final double lowRemainingRatio;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private int limit;
+    private int inFlight;
+    private int healthyResponses;
+    private Instant pausedUntil = Instant.MIN;
+
+    private final Counter throttledCounter;
+    private final Counter lowRemainingCounter;
+    private final Counter retryCounter;
+
+    public GitLabRateLimitInterceptor(GitLabProperties.RateLimit properties, MeterRegistry meterRegistry) {
+        this.minPermits = Math.max(1, properties.getMinPermits());
+        this.maxPermits = Math.max(minPermits, properties.getMaxPermits());
+        this.limit = Math.max(minPermits, Math.min(maxPermits, properties.getInitialPermits()));
+        this.maxRetries = Math.max(0, properties.getMaxRetries());
+        this.maxRetryWait = properties.getMaxRetryWait();
+        this.lowRemainingRatio = properties.getLowRemainingRatio();
+
+        Gauge.builder("gitlab.ratelimit.permits", this, GitLabRateLimitInterceptor::currentLimit)
+                .description("GitLab requests currently allowed in flight")
+                .register(meterRegistry);
+        this.throttledCounter = Counter.builder("gitlab.ratelimit.throttled")
+                .tag("reason", "rejected")
+                .description("Responses with 429/503 from GitLab")
+                .register(meterRegistry);
+        this.lowRemainingCounter = Counter.builder("gitlab.ratelimit.throttled")
+                .tag("reason", "low-remaining")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("gitlab.ratelimit.retries")
+                .description("Rate-limited GETs retried")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public @NonNull ClientHttpResponse intercept(
+            @NonNull HttpRequest request,
+            byte @NonNull [] body,
+            @NonNull ClientHttpRequestExecution execution
+    ) throws IOException {
+
+        boolean retryable = request.getMethod() == HttpMethod.GET;
+
+        for (int attempt = 0; ; attempt++) {
+            acquire();
+            ClientHttpResponse response;
+            try {
+                response = new PermitHoldingResponse(execution.execute(request, body));
+            } catch (IOException | RuntimeException e) {
+                release();
+                throw e;
+            }
+
+            if (!isRateLimited(response)) {
+                onResponse(response.getHeaders());
+                return response;
+            }
+
+            Duration wait = onRateLimited(response.getHeaders(), attempt);
+            if (!retryable || attempt >= maxRetries || wait.compareTo(maxRetryWait) > 0) {
+                return response;
+            }
+
+            response.close();
+            retryCounter.increment();
+            log.warn("GitLab rate limited {} {}, retrying in {} ms (attempt {}/{})",
+                    request.getMethod(), request.getURI().getPath(), wait.toMillis(), attempt + 1, maxRetries);
+            sleep(wait);
+        }
+    }
+
+    private boolean isRateLimited(ClientHttpResponse response) throws IOException {
+        return response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)
+                || (response.getStatusCode().isSameCodeAs(HttpStatus.SERVICE_UNAVAILABLE)
+                && response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER) != null);
+    }
+
+    /* ==========================================================
+       Permits
+       ========================================================== */
+
+    private void acquire() throws IOException {
+        lock.lock();
+        try {
+            while (true) {
+                Duration pause = Duration.between(Instant.now(), pausedUntil);
+                if (pause.compareTo(Duration.ZERO) > 0) {
+                    permitReleased.await(pause.toMillis() + 1, TimeUnit.MILLISECONDS);
+                } else if (inFlight >= limit) {
+                    permitReleased.await();
+                } else {
+                    inFlight++;
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a GitLab request permit");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives the permit back when the body is closed, once.
+     */
+    private final class PermitHoldingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PermitHoldingResponse(ClientHttpResponse delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public @NonNull HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public @NonNull String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public @NonNull HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public @NonNull InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (released.compareAndSet(false, true)) release();
+            }
+        }
+    }
+
+    private int currentLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* ==========================================================
+       AIMD
+       ========================================================== */
+
+    private void onResponse(HttpHeaders headers) {
+        Long remaining = parseLong(headers.getFirst(RATE_LIMIT_REMAINING));
+        Long budget = parseLong(headers.getFirst(RATE_LIMIT_LIMIT));
+
+        lock.lock();
+        try {
+            if (remaining != null && remaining <= 0) {
+                pauseUntil(resetInstant(headers));
+                decrease();
+                lowRemainingCounter.increment();
+            } else if (remaining != null && budget != null && budget > 0 && remaining < budget * lowRemainingRatio) {
+                decrease();
+                lowRemainingCounter.increment();
+            } else if (++healthyResponses >= limit && limit < maxPermits) {
+                limit++;
+                healthyResponses = 0;
+                permitReleased.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Duration onRateLimited(HttpHeaders headers, int attempt) {
+        throttledCounter.increment();
+
+        Instant retryAt = retryAfter(headers);
+        if (retryAt == null) retryAt = resetInstant(headers);
+        if (retryAt == null) retryAt = Instant.now().plusMillis(500L << Math.min(attempt, 6));
+
+        lock.lock();
+        try {
+            decrease();
+            pauseUntil(retryAt);
+        } finally {
+            lock.unlock();
+        }
+
+        Duration wait = Duration.between(Instant.now(), retryAt);
+        return wait.isNegative() ? Duration.ZERO : wait;
+    }
+
+    private void decrease() {
+        int previous = limit;
+        limit = Math.max(minPermits, limit / 2);
+        healthyResponses = 0;
+        if (limit != previous) {
+            log.info("GitLab request permits reduced from {} to {}", previous, limit);
+        }
+    }
+
+    private void pauseUntil(Instant until) {
+        if (until != null && until.isAfter(pausedUntil)) pausedUntil = until;
+    }
+
+    /* ==========================================================
+       Header parsing
+       ========================================================== */
+
+    /**
+     * Retry-After is either delta-seconds or an HTTP date.
+     */
+    private Instant retryAfter(HttpHeaders headers) {
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) return null;
+
+        Long seconds = parseLong(value);
+        if (seconds != null) return Instant.now().plusSeconds(Math.max(0, seconds));
+
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * RateLimit-Reset is a Unix timestamp in seconds on GitLab.
+     */
+    private Instant resetInstant(HttpHeaders headers) {
+        Long epochSeconds = parseLong(headers.getFirst(RATE_LIMIT_RESET));
+        return epochSeconds != null ? Instant.ofEpochSecond(epochSeconds) : null;
+    }
+
+    private Long parseLong(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void sleep(Duration wait) throws IOException {
+        try {
+            Thread.sleep(wait.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry a rate-limited GitLab request");
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.lre.gitlabintegration.config.http;
 
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
 import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.config.properties.HttpCacheProperties;
 import com.lre.gitlabintegration.config.properties.LreProperties;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hc.client5.http.classic.HttpClient;
@@ -9,20 +12,25 @@ import org.apache.hc.client5.http.config.ConnectionConfig;
 import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.cookie.BasicCookieStore;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
 import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.http.protocol.HttpContext;
 import org.apache.hc.core5.util.TimeValue;
 import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.InterceptingClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
 import javax.net.ssl.SSLContext;
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
@@ -33,6 +41,8 @@ public class RestClientConfig {
     private final GitLabProperties gitLabProperties;
     private final LreProperties lreProperties;
     private final SSLContext sslContext;
+    private final HttpCacheProperties httpCacheProperties;
+    private final MeterRegistry meterRegistry;
 
     @Value("${http.connection.timeout:30000}")
     private int connectionTimeout;
@@ -53,21 +63,28 @@ public class RestClientConfig {
     public RestClient gitlabRestClient() {
         log.info("GitLab Base URL configured as: {}", gitLabProperties.getUrl());
 
-        HttpComponentsClientHttpRequestFactory factory = getHttpRequestFactory(sslContext, false);
+        ClientHttpRequestFactory factory = withResponseCache(getHttpRequestFactory(sslContext, false),
+                "gitlab", httpCacheProperties.getGitlabEndpoints());
 
-        return RestClient.builder()
+        RestClient.Builder builder = RestClient.builder()
                 .requestFactory(factory)
                 .baseUrl(gitLabProperties.getUrl())
-                .defaultHeader("PRIVATE-TOKEN", gitLabProperties.getToken())
+                .defaultHeader("PRIVATE-TOKEN", gitLabProperties.getToken());
 //                .requestInterceptor(new LoggingInterceptor())
-                .build();
+
+        // Registered last so a retry re-executes only the HTTP call itself
+        if (gitLabProperties.getRateLimit().isEnabled()) {
+            builder.requestInterceptor(new GitLabRateLimitInterceptor(gitLabProperties.getRateLimit(), meterRegistry));
+        }
+        return builder.build();
     }
 
     @Bean
     public RestClient lreRestClient() {
         log.info("LRE Base URL configured as: {}", lreProperties.getUrl());
 
-        HttpComponentsClientHttpRequestFactory factory = getHttpRequestFactory(sslContext, true);
+        ClientHttpRequestFactory factory = withResponseCache(getHttpRequestFactory(sslContext, true),
+                "lre", httpCacheProperties.getLreEndpoints());
 
         return RestClient.builder()
                 .requestFactory(factory)
@@ -87,15 +104,58 @@ public class RestClientConfig {
                 .build();
     }
 
+    /**
+     * Each client gets its own store so cached bodies never cross credentials.
+     * <p>
+     * An interceptor buffers the whole request body, so the cache is not added to the
+     * client's interceptors: only the cached GETs are routed through it, and uploads
+     * still stream.
+     */
+    private ClientHttpRequestFactory withResponseCache(ClientHttpRequestFactory factory, String clientName,
+                                                       List<String> endpoints) {
+        if (!httpCacheProperties.isEnabled() || endpoints.isEmpty()) return factory;
+
+        log.info("HTTP response cache enabled for {}: endpoints={}, maxBytes={}",
+                clientName, endpoints, httpCacheProperties.getMaxBytes());
+
+        ConditionalRequestCacheInterceptor cache = new ConditionalRequestCacheInterceptor(
+                clientName,
+                endpoints,
+                httpCacheProperties.getMaxBytes(),
+                httpCacheProperties.getMaxEntryBytes(),
+                meterRegistry
+        );
+        ClientHttpRequestFactory cached = new InterceptingClientHttpRequestFactory(factory, List.of(cache));
+
+        return (uri, method) -> (cache.caches(uri, method) ? cached : factory).createRequest(uri, method);
+    }
 
     private HttpComponentsClientHttpRequestFactory getHttpRequestFactory(SSLContext sslContext, boolean enableCookies) {
         HttpClient httpClient = buildHttpClient(sslContext, enableCookies);
         HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
         factory.setConnectionRequestTimeout(Duration.ofMillis(connectionTimeout));
         factory.setReadTimeout(Duration.ofMillis(readTimeout));
+        factory.setHttpContextFactory((method, uri) -> deadlineContext());
         return factory;
     }
 
+    /**
+     * Shortens the timeouts of a call made by a sync that has less time left than
+     * the configured read timeout; null keeps the defaults.
+     */
+    private HttpContext deadlineContext() {
+        Duration remaining = SyncControl.current().remaining();
+        if (remaining == null || remaining.toMillis() >= readTimeout) return null;
+
+        long millis = Math.max(1, remaining.toMillis());
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(Math.min(connectionTimeout, millis)))
+                .setResponseTimeout(Timeout.ofMilliseconds(millis))
+                .build());
+        return context;
+    }
+
     private HttpClient buildHttpClient(SSLContext sslContext, boolean enableCookies) {
         // Create connection manager with proper timeout and eviction settings
         PoolingHttpClientConnectionManager connectionManager = createConnectionManager(sslContext);
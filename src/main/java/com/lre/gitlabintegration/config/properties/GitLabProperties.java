@@ -4,6 +4,10 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Validated
 @ConfigurationProperties(prefix = "gitlab")
@@ -13,4 +17,149 @@ public class GitLabProperties {
     private int perPageRecords;
     private int threadPoolSize;
 
+    /**
+     * How script folder changes are detected: by the folder's tree SHA from the
+     * repository tree listing, or by querying the latest commit of every folder.
+     */
+    private ChangeDetection changeDetection = ChangeDetection.FINGERPRINT;
+
+    /**
+     * PARALLEL reads the pagination headers of the first tree page and fetches the
+     * remaining pages concurrently; SERIAL walks page by page until a short page.
+     */
+    private TreePagination treePagination = TreePagination.PARALLEL;
+
+    private int treePageParallelism = 4;
+
+    /**
+     * Incremental syncs diff the last synced HEAD against the new one with the compare
+     * API and only rescan the affected script folders.
+     */
+    private boolean compareIncremental = true;
+
+    /**
+     * Compare results with at least this many changed files fall back to a full scan,
+     * since GitLab truncates large diffs.
+     */
+    private int compareMaxFiles = 1000;
+
+    private FanOut fanOut = new FanOut();
+
+    /**
+     * REST looks up the latest commit with one commits call per script folder; GRAPHQL
+     * resolves up to graphqlBatchSize folders per GraphQL request.
+     */
+    private CommitLookup commitLookup = CommitLookup.REST;
+
+    private int graphqlBatchSize = 50;
+
+    /**
+     * GraphQL endpoint; derived from url (…/api/v4/ → …/api/graphql) when blank.
+     */
+    private String graphqlUrl;
+
+    /**
+     * Uploads of at least this many scripts download one archive per script root (or of
+     * the whole ref) and cut the script folders out locally instead of one archive each.
+     */
+    private int bulkArchiveThreshold = 20;
+
+    private Webhook webhook = new Webhook();
+
+    private RateLimit rateLimit = new RateLimit();
+
+    private Mirror mirror = new Mirror();
+
+    private Sharding sharding = new Sharding();
+
+    /**
+     * Application-wide executor for GitLab fan-out calls. threadPoolSize is the number
+     * of tasks a single sync may have in flight; maxConcurrency caps all syncs together.
+     */
+    @Data
+    public static class FanOut {
+        private int maxConcurrency = 20;
+        private boolean virtualThreads = false;
+    }
+
+    /**
+     * Push-event webhook that precomputes sync plans. Disabled while secret is blank;
+     * GitLab sends the secret in the X-Gitlab-Token header.
+     */
+    @Data
+    public static class Webhook {
+        private String secret;
+        private Duration planTtl = Duration.ofMinutes(30);
+        private int queueCapacity = 100;
+    }
+
+    /**
+     * Adaptive limit on GitLab requests in flight, driven by the RateLimit-* and
+     * Retry-After response headers. Rate-limited GETs are retried up to maxRetries
+     * times as long as the advised wait does not exceed maxRetryWait.
+     */
+    @Data
+    public static class RateLimit {
+        private boolean enabled = true;
+        private int initialPermits = 10;
+        private int minPermits = 1;
+        private int maxPermits = 20;
+        private int maxRetries = 3;
+        private Duration maxRetryWait = Duration.ofSeconds(60);
+
+        /** Permits are halved once RateLimit-Remaining drops below this share of RateLimit-Limit. */
+        private double lowRemainingRatio = 0.1;
+    }
+
+    /**
+     * Local bare mirrors that replace the tree, compare, commits and archive REST calls.
+     * remoteUrlTemplate may use {projectId} and {pathWithNamespace}; when blank the
+     * project's web URL plus ".git" is cloned. Mirrors not used recently are deleted
+     * once all of them together exceed maxDiskBytes.
+     */
+    @Data
+    public static class Mirror {
+        private boolean enabled = false;
+
+        /** Projects served from a mirror; empty means all projects. */
+        private List<Long> projects = new ArrayList<>();
+
+        private String directory = System.getProperty("java.io.tmpdir") + "/lre_mirrors";
+        private String remoteUrlTemplate;
+        private long maxDiskBytes = 10L * 1024 * 1024 * 1024;
+        private String gitExecutable = "git";
+        private Duration commandTimeout = Duration.ofMinutes(10);
+    }
+
+    /**
+     * Large syncs are split into shards by top-level script folder. Shards are stored in
+     * gitlab_lre_sync_shard and claimed by workerThreads local workers; with remoteWorkers
+     * every instance sharing the database also claims pending shards of other instances.
+     * A shard claimed longer than claimTimeout ago is handed out again.
+     */
+    @Data
+    public static class Sharding {
+        private boolean enabled = false;
+        private int minScripts = 500;
+        private int scriptsPerShard = 100;
+        private int workerThreads = 4;
+        private boolean remoteWorkers = false;
+        private Duration pollInterval = Duration.ofSeconds(2);
+        private Duration claimTimeout = Duration.ofMinutes(30);
+    }
+
+    public enum ChangeDetection {
+        COMMIT,
+        FINGERPRINT
+    }
+
+    public enum CommitLookup {
+        REST,
+        GRAPHQL
+    }
+
+    public enum TreePagination {
+        SERIAL,
+        PARALLEL
+    }
 }
@@ -0,0 +1,33 @@
+package com.lre.gitlabintegration.config.properties;
+
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conditional-request (ETag / Last-Modified) cache for selected GET endpoints.
+ * Endpoints are Ant-style patterns matched against the request path.
+ */
+@Data
+@Validated
+@ConfigurationProperties(prefix = "http.cache")
+public class HttpCacheProperties {
+
+    private boolean enabled = false;
+
+    /** Upper bound for all cached bodies of one client together. */
+    @Min(0)
+    private long maxBytes = 32L * 1024 * 1024;
+
+    /** Larger responses are passed through without being stored. */
+    @Min(0)
+    private long maxEntryBytes = 1024L * 1024;
+
+    private List<String> gitlabEndpoints = new ArrayList<>();
+
+    private List<String> lreEndpoints = new ArrayList<>();
+}
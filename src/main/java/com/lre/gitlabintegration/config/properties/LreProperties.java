@@ -1,5 +1,6 @@
 package com.lre.gitlabintegration.config.properties;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -9,6 +10,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 
 @Data
 @Validated
@@ -36,4 +39,166 @@ public class LreProperties {
     @NotNull
     @DurationMin(seconds = 1)
     private Duration failureBackoff = Duration.ofMinutes(5);
+
+    /**
+     * Targets of a multi-target sync uploaded concurrently.
+     */
+    @Min(1)
+    private int maxParallelTargets = 4;
+
+    /**
+     * Taken off a deadline derived from the CI job timeout, leaving time to save state and answer.
+     */
+    @NotNull
+    private Duration deadlineMargin = Duration.ofSeconds(30);
+
+    /**
+     * How often a running sync checks that its CI job is still running; zero disables the check.
+     */
+    @NotNull
+    private Duration jobWatchInterval = Duration.ofSeconds(15);
+
+    @Valid
+    private Preview preview = new Preview();
+
+    @Valid
+    private Drift drift = new Drift();
+
+    @Valid
+    private Jobs jobs = new Jobs();
+
+    @Valid
+    private Scheduler scheduler = new Scheduler();
+
+    @Valid
+    private Journal journal = new Journal();
+
+    @Valid
+    private Shutdown shutdown = new Shutdown();
+
+    @Data
+    public static class Preview {
+        /**
+         * Test plan folder merge request previews are staged under, one sub-folder per MR.
+         */
+        @NotBlank
+        private String stagingFolder = "MR-Preview";
+    }
+
+    @Data
+    public static class Drift {
+        /**
+         * Periodically compares the scripts in LRE against the sync state.
+         */
+        private boolean enabled = false;
+
+        /**
+         * LRE projects checked at the same time.
+         */
+        @Min(1)
+        private int maxParallel = 1;
+
+        /**
+         * Makes the next sync re-upload drifted scripts; otherwise they are only flagged.
+         */
+        private boolean requeue = true;
+    }
+
+    @Data
+    public static class Jobs {
+        /**
+         * Asynchronous syncs running at the same time on this instance.
+         */
+        @Min(1)
+        private int maxConcurrent = 2;
+
+        /**
+         * Jobs waiting for a free slot before new ones are refused.
+         */
+        @Min(1)
+        private int queueCapacity = 50;
+
+        /**
+         * How long a finished job's result stays available.
+         */
+        @NotNull
+        @DurationMin(seconds = 1)
+        private Duration resultTtl = Duration.ofHours(1);
+
+        /**
+         * Longest an event stream stays open; clients reconnect for more.
+         */
+        @NotNull
+        @DurationMin(seconds = 1)
+        private Duration streamTimeout = Duration.ofMinutes(30);
+
+        /**
+         * Threads writing event streams; a stalled client holds one until its stream times out.
+         */
+        @Min(1)
+        private int streamThreads = 4;
+    }
+
+    @Data
+    public static class Scheduler {
+        /**
+         * Off lets every sync start right away, as before.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Syncs running at the same time on this instance.
+         */
+        @Min(1)
+        private int maxConcurrent = 4;
+
+        /**
+         * Of those, full-scan syncs (no synced HEAD yet) running at the same time.
+         */
+        @Min(1)
+        private int maxBulkConcurrent = 2;
+
+        /**
+         * A full-scan sync waiting this long competes like an incremental one.
+         */
+        @NotNull
+        private Duration bulkAging = Duration.ofMinutes(10);
+
+        /**
+         * Share of each GitLab project id relative to the default of 1.
+         */
+        @NotNull
+        private Map<Long, Integer> weights = new HashMap<>();
+    }
+
+    @Data
+    public static class Journal {
+        /**
+         * Name this instance writes its journals under; blank for the host name.
+         * Instances sharing a database need distinct owners.
+         */
+        private String owner = "";
+
+        /**
+         * A journal of another owner this old is taken to belong to a dead instance.
+         */
+        @NotNull
+        @DurationMin(minutes = 1)
+        private Duration staleAfter = Duration.ofHours(2);
+    }
+
+    @Data
+    public static class Shutdown {
+        /**
+         * How long running and queued syncs may go on once shutdown begins.
+         */
+        @NotNull
+        private Duration gracePeriod = Duration.ofMinutes(2);
+
+        /**
+         * How long syncs cancelled after the grace period get to save their state.
+         */
+        @NotNull
+        private Duration cancelTimeout = Duration.ofSeconds(30);
+    }
 }
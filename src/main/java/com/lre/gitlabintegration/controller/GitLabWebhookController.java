@@ -0,0 +1,64 @@
+package com.lre.gitlabintegration.controller;
+
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabPushEvent;
+import com.lre.gitlabintegration.exceptions.AuthException;
+import com.lre.gitlabintegration.services.git.sync.PushEventPlanner;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Receives GitLab push events; authenticated by the webhook secret instead of a job token.
+ */
+@RestController
+@RequestMapping("/api/gitlab")
+@RequiredArgsConstructor
+@Slf4j
+public class GitLabWebhookController {
+
+    private static final String PUSH_HOOK = "Push Hook";
+    private static final String TAG_PUSH_HOOK = "Tag Push Hook";
+
+    private final PushEventPlanner pushEventPlanner;
+    private final GitLabProperties gitLabProperties;
+
+    @PostMapping("/webhook")
+    public ResponseEntity<@NonNull Void> receive(
+            @RequestHeader(value = "X-Gitlab-Token", required = false) String token,
+            @RequestHeader(value = "X-Gitlab-Event", required = false) String eventType,
+            @RequestBody GitLabPushEvent event
+    ) {
+        assertValidSecret(token);
+
+        if (!PUSH_HOOK.equals(eventType) && !TAG_PUSH_HOOK.equals(eventType)) {
+            log.debug("Ignoring GitLab {} event", eventType);
+            return ResponseEntity.noContent().build();
+        }
+
+        boolean accepted = pushEventPlanner.submit(event);
+        return ResponseEntity.status(accepted ? HttpStatus.ACCEPTED : HttpStatus.NO_CONTENT).build();
+    }
+
+    private void assertValidSecret(String token) {
+        String secret = gitLabProperties.getWebhook().getSecret();
+        if (secret == null || secret.isBlank()) {
+            throw new AuthException("GitLab webhook is not configured", HttpStatus.FORBIDDEN);
+        }
+
+        if (token == null || !MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            throw new AuthException("Invalid GitLab webhook token", HttpStatus.UNAUTHORIZED);
+        }
+    }
+}
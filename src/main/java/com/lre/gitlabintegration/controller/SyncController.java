@@ -1,16 +1,30 @@
 package com.lre.gitlabintegration.controller;
 
+import com.lre.gitlabintegration.dto.sync.MultiTargetSyncRequest;
+import com.lre.gitlabintegration.dto.sync.MultiTargetSyncResponse;
+import com.lre.gitlabintegration.dto.sync.SyncJobStatus;
+import com.lre.gitlabintegration.dto.sync.SyncPlanResponse;
 import com.lre.gitlabintegration.dto.sync.SyncResponse;
 import com.lre.gitlabintegration.services.git.sync.SyncOrchestrationService;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.net.URI;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/lre")
@@ -24,9 +38,136 @@ public class SyncController {
     public ResponseEntity<@NonNull SyncResponse> sync(
             @PathVariable String domain,
             @PathVariable String project,
+            @RequestParam(name = "scriptRoot", required = false) List<String> scriptRoots,
+            @RequestHeader(name = "X-Sync-Deadline", required = false) String deadline,
+            @RequestHeader(name = "X-Sync-Timeout", required = false) Long timeoutSeconds,
+            Authentication authentication
+    ) {
+        SyncResponse response = syncOrchestrationService.handleSync(
+                domain, project, scriptRoots, deadline, timeoutSeconds, authentication);
+        return response.success()
+                ? ResponseEntity.ok(response)
+                : ResponseEntity.badRequest().body(response);
+    }
+
+    /**
+     * Dry run: what the sync would upload, move and delete at the ref's current HEAD.
+     * A sync right after it reuses the scan.
+     */
+    @GetMapping("/domain/{domain}/project/{project}/sync/plan")
+    public ResponseEntity<@NonNull SyncPlanResponse> plan(
+            @PathVariable String domain,
+            @PathVariable String project,
+            @RequestParam(name = "scriptRoot", required = false) List<String> scriptRoots,
+            Authentication authentication
+    ) {
+        return ResponseEntity.ok(syncOrchestrationService.handlePlan(domain, project, scriptRoots, authentication));
+    }
+
+    /**
+     * Starts the sync in the background and answers right away with the job to poll
+     * or stream.
+     */
+    @PostMapping("/domain/{domain}/project/{project}/sync/jobs")
+    public ResponseEntity<@NonNull SyncJobStatus> submitSyncJob(
+            @PathVariable String domain,
+            @PathVariable String project,
+            @RequestParam(name = "scriptRoot", required = false) List<String> scriptRoots,
+            @RequestHeader(name = "X-Sync-Deadline", required = false) String deadline,
+            @RequestHeader(name = "X-Sync-Timeout", required = false) Long timeoutSeconds,
+            Authentication authentication
+    ) {
+        SyncJobStatus job = syncOrchestrationService.handleSyncAsync(
+                domain, project, scriptRoots, deadline, timeoutSeconds, authentication);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/lre/sync/jobs/" + job.jobId()))
+                .body(job);
+    }
+
+    @GetMapping("/sync/jobs/{jobId}")
+    public ResponseEntity<@NonNull SyncJobStatus> syncJobStatus(
+            @PathVariable String jobId,
+            Authentication authentication
+    ) {
+        return ResponseEntity.ok(syncOrchestrationService.handleJobStatus(jobId, authentication));
+    }
+
+    /**
+     * Server-sent events: one "change" per finished script, then one "result" with the
+     * sync response. Changes made before subscribing are sent first.
+     */
+    @GetMapping(value = "/sync/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter syncJobEvents(
+            @PathVariable String jobId,
+            Authentication authentication
+    ) {
+        return syncOrchestrationService.handleJobEvents(jobId, authentication);
+    }
+
+    /**
+     * Stops the caller's running sync of the project; it answers its own request with
+     * what was done before it stopped.
+     */
+    @DeleteMapping("/domain/{domain}/project/{project}/sync")
+    public ResponseEntity<@NonNull Void> cancelSync(
+            @PathVariable String domain,
+            @PathVariable String project,
+            Authentication authentication
+    ) {
+        return syncOrchestrationService.handleCancel(domain, project, authentication)
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Stages only the scripts changed by the merge request in the project's preview folder.
+     */
+    @PostMapping("/domain/{domain}/project/{project}/preview/{mergeRequestIid}")
+    public ResponseEntity<@NonNull SyncResponse> preview(
+            @PathVariable String domain,
+            @PathVariable String project,
+            @PathVariable long mergeRequestIid,
+            @RequestParam(name = "scriptRoot", required = false) List<String> scriptRoots,
+            @RequestHeader(name = "X-Sync-Deadline", required = false) String deadline,
+            @RequestHeader(name = "X-Sync-Timeout", required = false) Long timeoutSeconds,
+            Authentication authentication
+    ) {
+        SyncResponse response = syncOrchestrationService.handlePreview(
+                domain, project, mergeRequestIid, scriptRoots, deadline, timeoutSeconds, authentication);
+        return response.success()
+                ? ResponseEntity.ok(response)
+                : ResponseEntity.badRequest().body(response);
+    }
+
+    /**
+     * Removes the scripts staged for the merge request, e.g. when it is merged or closed.
+     */
+    @DeleteMapping("/domain/{domain}/project/{project}/preview/{mergeRequestIid}")
+    public ResponseEntity<@NonNull SyncResponse> cleanupPreview(
+            @PathVariable String domain,
+            @PathVariable String project,
+            @PathVariable long mergeRequestIid,
+            Authentication authentication
+    ) {
+        SyncResponse response = syncOrchestrationService.handlePreviewCleanup(
+                domain, project, mergeRequestIid, authentication);
+        return response.success()
+                ? ResponseEntity.ok(response)
+                : ResponseEntity.badRequest().body(response);
+    }
+
+    /**
+     * Syncs the caller's GitLab project/ref to several LRE projects with one scan.
+     */
+    @PostMapping("/sync")
+    public ResponseEntity<@NonNull MultiTargetSyncResponse> syncTargets(
+            @RequestBody MultiTargetSyncRequest request,
+            @RequestHeader(name = "X-Sync-Deadline", required = false) String deadline,
+            @RequestHeader(name = "X-Sync-Timeout", required = false) Long timeoutSeconds,
             Authentication authentication
     ) {
-        SyncResponse response = syncOrchestrationService.handleSync(domain, project, authentication);
+        MultiTargetSyncResponse response = syncOrchestrationService.handleMultiSync(
+                request, deadline, timeoutSeconds, authentication);
         return response.success()
                 ? ResponseEntity.ok(response)
                 : ResponseEntity.badRequest().body(response);
@@ -21,6 +21,12 @@ public class GitLabCommit {
     @JsonProperty("message")
     private String message = "";
 
+    /**
+     * Tree SHA of the script folder; not part of the GitLab commit payload.
+     */
+    @JsonIgnore
+    private String fingerprint = "";
+
     @JsonIgnore
     public boolean isEmpty() {
         return sha.isBlank() && committedDate.isBlank();
@@ -0,0 +1,24 @@
+package com.lre.gitlabintegration.dto.gitlab;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record GitLabCompareResult(
+        GitLabCommit commit,
+        List<GitLabDiff> diffs,
+        @JsonProperty("compare_timeout") boolean compareTimeout
+) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record GitLabDiff(
+            @JsonProperty("old_path") String oldPath,
+            @JsonProperty("new_path") String newPath,
+            @JsonProperty("new_file") boolean newFile,
+            @JsonProperty("renamed_file") boolean renamedFile,
+            @JsonProperty("deleted_file") boolean deletedFile
+    ) {
+    }
+}
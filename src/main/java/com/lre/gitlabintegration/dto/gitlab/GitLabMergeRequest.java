@@ -0,0 +1,20 @@
+package com.lre.gitlabintegration.dto.gitlab;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record GitLabMergeRequest(
+        long iid,
+        String state,
+        String sha,
+        @JsonProperty("source_branch") String sourceBranch,
+        @JsonProperty("target_branch") String targetBranch
+) {
+
+    @JsonIgnore
+    public boolean isOpen() {
+        return "opened".equals(state);
+    }
+}
@@ -0,0 +1,72 @@
+package com.lre.gitlabintegration.dto.gitlab;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Subset of a GitLab "Push Hook" payload.
+ *
+ * @param totalCommitsCount number of pushed commits; the commits list is capped at 20 by GitLab
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record GitLabPushEvent(
+        @JsonProperty("object_kind") String objectKind,
+        @JsonProperty("project_id") Long projectId,
+        String ref,
+        String before,
+        String after,
+        @JsonProperty("total_commits_count") int totalCommitsCount,
+        List<PushedCommit> commits
+) {
+
+    private static final String BRANCH_PREFIX = "refs/heads/";
+    private static final String TAG_PREFIX = "refs/tags/";
+    private static final String NULL_SHA = "0000000000000000000000000000000000000000";
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record PushedCommit(
+            String id,
+            List<String> added,
+            List<String> modified,
+            List<String> removed
+    ) {
+    }
+
+    /**
+     * Branch or tag name as CI reports it in CI_COMMIT_REF_NAME.
+     */
+    public String refName() {
+        if (ref == null) return null;
+        if (ref.startsWith(BRANCH_PREFIX)) return ref.substring(BRANCH_PREFIX.length());
+        if (ref.startsWith(TAG_PREFIX)) return ref.substring(TAG_PREFIX.length());
+        return ref;
+    }
+
+    public boolean isRefDeleted() {
+        return after == null || NULL_SHA.equals(after);
+    }
+
+    /**
+     * True when every pushed commit is listed, so the file lists cover the whole push.
+     */
+    public boolean listsAllCommits() {
+        return commits != null && before != null && !NULL_SHA.equals(before)
+                && commits.size() >= totalCommitsCount;
+    }
+
+    public List<String> changedPaths() {
+        List<String> paths = new ArrayList<>();
+        if (commits == null) return paths;
+
+        for (PushedCommit commit : commits) {
+            paths.addAll(Objects.requireNonNullElse(commit.added(), List.of()));
+            paths.addAll(Objects.requireNonNullElse(commit.modified(), List.of()));
+            paths.addAll(Objects.requireNonNullElse(commit.removed(), List.of()));
+        }
+        return paths;
+    }
+}
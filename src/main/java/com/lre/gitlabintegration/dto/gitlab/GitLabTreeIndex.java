@@ -0,0 +1,46 @@
+package com.lre.gitlabintegration.dto.gitlab;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compact view of a recursive tree listing: folder tree SHAs plus the folders that
+ * hold a .usr file. Other blobs are never kept, so the size grows with the number
+ * of directories rather than the number of files.
+ */
+public class GitLabTreeIndex {
+
+    private final Map<String, String> treeShaByPath = new HashMap<>();
+    private final Set<String> scriptFolders = new HashSet<>();
+
+    public void addTree(String path, String treeSha) {
+        treeShaByPath.put(path, treeSha);
+    }
+
+    public void addScriptFolder(String folder) {
+        scriptFolders.add(folder);
+    }
+
+    public boolean containsTree(String path) {
+        return treeShaByPath.containsKey(path);
+    }
+
+    public void merge(GitLabTreeIndex other) {
+        treeShaByPath.putAll(other.treeShaByPath);
+        scriptFolders.addAll(other.scriptFolders);
+    }
+
+    /**
+     * @return script folder path to its tree SHA, sorted by path
+     */
+    public Map<String, String> scriptFolders() {
+        Map<String, String> result = new TreeMap<>();
+        for (String folder : scriptFolders) {
+            result.put(folder, treeShaByPath.getOrDefault(folder, ""));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,17 @@
+package com.lre.gitlabintegration.dto.gitlab;
+
+/**
+ * One page of a repository tree listing, reduced to a script index, together with
+ * the pagination headers GitLab returned.
+ *
+ * @param itemCount     number of entries on the page, used to detect the last page
+ * @param totalPages    value of X-Total-Pages, null when GitLab omitted it (very large listings)
+ * @param nextPageToken page_token of the rel="next" Link for keyset pagination, null on the last page
+ */
+public record GitLabTreePage(
+        GitLabTreeIndex index,
+        int itemCount,
+        Integer totalPages,
+        String nextPageToken
+) {
+}
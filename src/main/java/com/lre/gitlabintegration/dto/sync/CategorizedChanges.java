@@ -8,6 +8,7 @@ import java.util.List;
 public record CategorizedChanges(
         List<ScriptChange> uploaded,
         List<ScriptChange> deleted,
+        List<ScriptChange> moved,
         List<ScriptChange> unchanged,
         List<ScriptChange> failed
 ) {}
@@ -5,5 +5,6 @@ import java.util.List;
 public record ChangeGroups(
         List<ScriptChange> uploadedSuccess,
         List<ScriptChange> deletedSuccess,
+        List<ScriptChange> movedSuccess,
         List<ScriptChange> failed
 ) {}
@@ -0,0 +1,11 @@
+package com.lre.gitlabintegration.dto.sync;
+
+import java.util.List;
+
+/**
+ * One GitLab project/ref (taken from the CI token) synced to several LRE projects.
+ */
+public record MultiTargetSyncRequest(
+        List<SyncTarget> targets,
+        List<String> scriptRoots
+) {}
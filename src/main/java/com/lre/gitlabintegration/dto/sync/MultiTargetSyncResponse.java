@@ -0,0 +1,11 @@
+package com.lre.gitlabintegration.dto.sync;
+
+import lombok.Builder;
+
+import java.util.List;
+
+@Builder
+public record MultiTargetSyncResponse(
+        boolean success,
+        List<TargetSyncResponse> targets
+) {}
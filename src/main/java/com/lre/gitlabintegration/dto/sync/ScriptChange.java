@@ -11,7 +11,8 @@ public record ScriptChange(
         String status,
         String message,
         String testFolderPath,
-        Integer lreScriptId
+        Integer lreScriptId,
+        String previousPath
 
 ) {
 
@@ -55,6 +56,32 @@ public record ScriptChange(
                 .build();
     }
 
+    /**
+     * @param lreScriptId id of the script uploaded to the new path, if the upload got that far
+     */
+    public static ScriptChange moved(
+            String path,
+            String previousPath,
+            String scriptName,
+            String commitSha,
+            String status,
+            String message,
+            String testFolderPath,
+            Integer lreScriptId
+    ) {
+        return ScriptChange.builder()
+                .path(path)
+                .previousPath(previousPath)
+                .scriptName(scriptName)
+                .commitSha(commitSha)
+                .action("MOVE")
+                .status(status)
+                .message(message)
+                .testFolderPath(testFolderPath)
+                .lreScriptId(lreScriptId)
+                .build();
+    }
+
     public static ScriptChange unchanged(
             String path,
             String scriptName,
@@ -0,0 +1,14 @@
+package com.lre.gitlabintegration.dto.sync;
+
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+
+/**
+ * A script folder that disappeared from one path and reappeared unchanged at another.
+ *
+ * @param from state of the old path, including its LRE script id
+ * @param to   the script at its new path
+ */
+public record ScriptMove(
+        SyncStateEntry from,
+        GitLabCommit to
+) {}
@@ -0,0 +1,30 @@
+package com.lre.gitlabintegration.dto.sync;
+
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+
+/**
+ * Serializable form of a scanned script; GitLabCommit maps GitLab's payload and
+ * leaves the fingerprint out of JSON.
+ */
+public record ShardScript(
+        String path,
+        String sha,
+        String committedDate,
+        String message,
+        String fingerprint
+) {
+    public static ShardScript of(GitLabCommit commit) {
+        return new ShardScript(commit.getPath(), commit.getSha(), commit.getCommittedDate(),
+                commit.getMessage(), commit.getFingerprint());
+    }
+
+    public GitLabCommit toCommit() {
+        GitLabCommit commit = new GitLabCommit();
+        commit.setPath(path);
+        commit.setSha(sha);
+        commit.setCommittedDate(committedDate);
+        commit.setMessage(message);
+        commit.setFingerprint(fingerprint);
+        return commit;
+    }
+}
@@ -4,13 +4,27 @@ import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
 
 import java.util.List;
 
+/**
+ * @param headSha        commit the ref pointed to when the sync started, null if it could not be resolved
+ * @param headUnchanged  true when headSha equals the last fully synced HEAD; current then mirrors previous
+ */
 public record SyncContext(
         SyncRequest request,
         List<SyncStateEntry> previous,
         List<GitLabCommit> current,
-        boolean initial
+        boolean initial,
+        String headSha,
+        boolean headUnchanged
 ) {
     public boolean isInitial() {
         return initial;
     }
+
+    /**
+     * Ref to read repository content from: the pinned HEAD when known, so that a
+     * push landing mid-sync cannot mix two revisions.
+     */
+    public String sourceRef() {
+        return headSha != null ? headSha : request.getRef();
+    }
 }
@@ -0,0 +1,24 @@
+package com.lre.gitlabintegration.dto.sync;
+
+import lombok.Builder;
+
+import java.time.Instant;
+
+/**
+ * @param state     QUEUED, RUNNING or DONE
+ * @param processed script changes finished so far
+ * @param result    the sync's response once the job is DONE
+ */
+@Builder
+public record SyncJobStatus(
+        String jobId,
+        String state,
+        String domain,
+        String project,
+        String ref,
+        Instant submittedAt,
+        Instant startedAt,
+        Instant finishedAt,
+        int processed,
+        SyncResponse result
+) {}
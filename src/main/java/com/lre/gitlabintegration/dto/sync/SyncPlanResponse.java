@@ -0,0 +1,27 @@
+package com.lre.gitlabintegration.dto.sync;
+
+import lombok.Builder;
+
+import java.util.List;
+
+/**
+ * What a sync of the target would do at headSha. Lists hold repository paths.
+ *
+ * @param mode INITIAL, INCREMENTAL or UNCHANGED (HEAD already synced)
+ */
+@Builder
+public record SyncPlanResponse(
+        String mode,
+        String headSha,
+        int uploadCount,
+        int deleteCount,
+        int moveCount,
+        int unchangedCount,
+        List<String> toUpload,
+        List<String> toDelete,
+        List<PlannedMove> toMove,
+        List<String> unchanged
+) {
+    public record PlannedMove(String from, String to) {
+    }
+}
@@ -1,16 +1,41 @@
 package com.lre.gitlabintegration.dto.sync;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+import java.util.List;
+
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class SyncRequest {
 
     private Long gitlabProjectId;
     private String ref;
     private String lreDomain;
     private String lreProject;
+
+    /**
+     * Folders to scan instead of the whole repository; empty means the configured
+     * roots of the project, or the repository root when none are configured.
+     */
+    private List<String> scriptRoots = List.of();
+
+    /**
+     * When the caller stops waiting for the result; null for no deadline.
+     */
+    private Instant deadline;
+
+    public SyncRequest(Long gitlabProjectId, String ref, String lreDomain, String lreProject) {
+        this(gitlabProjectId, ref, lreDomain, lreProject, List.of());
+    }
+
+    public SyncRequest(Long gitlabProjectId, String ref, String lreDomain, String lreProject,
+                       List<String> scriptRoots) {
+        this.gitlabProjectId = gitlabProjectId;
+        this.ref = ref;
+        this.lreDomain = lreDomain;
+        this.lreProject = lreProject;
+        this.scriptRoots = scriptRoots;
+    }
 }
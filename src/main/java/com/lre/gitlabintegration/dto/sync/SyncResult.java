@@ -7,15 +7,23 @@ import java.util.List;
 public record SyncResult(
         List<GitLabCommit> scriptsToUpload,
         List<SyncStateEntry> scriptsToDelete,
-        List<GitLabCommit> unchangedScripts
+        List<GitLabCommit> unchangedScripts,
+        List<ScriptMove> scriptsToMove
 ) {
+    public SyncResult(List<GitLabCommit> scriptsToUpload,
+                      List<SyncStateEntry> scriptsToDelete,
+                      List<GitLabCommit> unchangedScripts) {
+        this(scriptsToUpload, scriptsToDelete, unchangedScripts, List.of());
+    }
+
     public boolean hasChanges() {
-        return !scriptsToUpload.isEmpty() || !scriptsToDelete.isEmpty();
+        return !scriptsToUpload.isEmpty() || !scriptsToDelete.isEmpty() || !scriptsToMove.isEmpty();
     }
 
     public int totalScripts() {
         return scriptsToUpload.size()
                 + scriptsToDelete.size()
-                + unchangedScripts.size();
+                + unchangedScripts.size()
+                + scriptsToMove.size();
     }
 }
@@ -0,0 +1,29 @@
+package com.lre.gitlabintegration.dto.sync;
+
+import java.util.List;
+
+/**
+ * Work of one shard, stored as JSON so any instance can run it.
+ *
+ * @param key       top-level script folder(s) the shard covers
+ * @param sourceRef revision scripts are packaged from
+ */
+public record SyncShard(
+        String key,
+        SyncRequest request,
+        String sourceRef,
+        List<ShardScript> uploads,
+        List<SyncStateEntry> deletes,
+        List<Move> moves
+) {
+    public record Move(SyncStateEntry from, ShardScript to) {
+
+        public ScriptMove toScriptMove() {
+            return new ScriptMove(from, to.toCommit());
+        }
+    }
+
+    public int size() {
+        return uploads.size() + deletes.size() + moves.size();
+    }
+}
@@ -4,6 +4,7 @@ public record SyncStateEntry(
         String path,
         String commitSha,
         String committedDate,
+        String fingerprint,
         Integer lreScriptId
 ) {
     public boolean isEmpty() {
@@ -6,6 +6,7 @@ import lombok.Builder;
 public record SyncSummary(
         int uploaded,
         int deleted,
+        int moved,
         int unchanged,
         int failed
 ) {}
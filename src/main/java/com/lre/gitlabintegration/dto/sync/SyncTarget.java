@@ -0,0 +1,6 @@
+package com.lre.gitlabintegration.dto.sync;
+
+public record SyncTarget(
+        String domain,
+        String project
+) {}
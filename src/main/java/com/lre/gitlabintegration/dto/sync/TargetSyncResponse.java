@@ -0,0 +1,7 @@
+package com.lre.gitlabintegration.dto.sync;
+
+public record TargetSyncResponse(
+        String domain,
+        String project,
+        SyncResponse result
+) {}
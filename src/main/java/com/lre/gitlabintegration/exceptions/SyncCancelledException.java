@@ -0,0 +1,16 @@
+package com.lre.gitlabintegration.exceptions;
+
+import java.io.Serial;
+
+/**
+ * Thrown at a checkpoint once a sync was cancelled or ran past its deadline.
+ */
+public class SyncCancelledException extends LreException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public SyncCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,107 @@
+package com.lre.gitlabintegration.repository;
+
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scripts staged for a merge request preview, per LRE target.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PreviewStateRepository {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<SyncStateEntry> findStaged(SyncRequest request, long mergeRequestIid) {
+        return jdbcTemplate.query("""
+                        SELECT script_path_unix, commit_sha, committed_date, content_fingerprint, lre_script_id
+                        FROM gitlab_lre_preview_state
+                        WHERE gitlab_project_id = ?
+                          AND merge_request_iid = ?
+                          AND lre_domain = ?
+                          AND lre_project = ?
+                        """,
+                (rs, rowNum) -> new SyncStateEntry(
+                        rs.getString("script_path_unix"),
+                        rs.getString("commit_sha"),
+                        rs.getString("committed_date"),
+                        rs.getString("content_fingerprint"),
+                        (Integer) rs.getObject("lre_script_id")
+                ),
+                request.getGitlabProjectId(),
+                mergeRequestIid,
+                request.getLreDomain(),
+                request.getLreProject()
+        );
+    }
+
+    @Transactional
+    public void upsertStaged(SyncRequest request, long mergeRequestIid,
+                             List<GitLabCommit> commits, Map<String, Integer> lreIdByPath) {
+        String sql = """
+                INSERT INTO gitlab_lre_preview_state
+                (gitlab_project_id, merge_request_iid, lre_domain, lre_project, lre_script_id,
+                 script_path_unix, commit_sha, committed_date, content_fingerprint, staged_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT(gitlab_project_id, merge_request_iid, lre_domain, lre_project, script_path_unix) DO UPDATE SET
+                  lre_script_id = COALESCE(excluded.lre_script_id, gitlab_lre_preview_state.lre_script_id),
+                  commit_sha = excluded.commit_sha,
+                  committed_date = excluded.committed_date,
+                  content_fingerprint = excluded.content_fingerprint,
+                  staged_at = excluded.staged_at
+                """;
+
+        String now = LocalDateTime.now().format(FORMATTER);
+
+        for (GitLabCommit commit : commits) {
+            jdbcTemplate.update(
+                    sql,
+                    request.getGitlabProjectId(),
+                    mergeRequestIid,
+                    request.getLreDomain(),
+                    request.getLreProject(),
+                    lreIdByPath.get(commit.getPath()),
+                    commit.getPath(),
+                    commit.getSha(),
+                    commit.getCommittedDate(),
+                    commit.getFingerprint(),
+                    now
+            );
+        }
+    }
+
+    @Transactional
+    public void deleteStaged(SyncRequest request, long mergeRequestIid, Collection<String> paths) {
+        String sql = """
+                DELETE FROM gitlab_lre_preview_state
+                WHERE gitlab_project_id = ?
+                  AND merge_request_iid = ?
+                  AND lre_domain = ?
+                  AND lre_project = ?
+                  AND script_path_unix = ?
+                """;
+
+        for (String path : paths) {
+            jdbcTemplate.update(sql,
+                    request.getGitlabProjectId(),
+                    mergeRequestIid,
+                    request.getLreDomain(),
+                    request.getLreProject(),
+                    path
+            );
+        }
+    }
+}
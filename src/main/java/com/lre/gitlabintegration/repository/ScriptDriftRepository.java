@@ -0,0 +1,112 @@
+package com.lre.gitlabintegration.repository;
+
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * What the drift reconciler last saw in LRE for each synced script.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ScriptDriftRepository {
+
+    public static final String DRIFT_MODIFIED = "MODIFIED";
+    public static final String DRIFT_DELETED = "DELETED";
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param stateVersion     fingerprint or commit SHA of the sync state row when the baseline was taken
+     * @param lastModifyDate   LastModifyDate reported by LRE at baseline
+     * @param driftType        null while LRE matches the baseline
+     */
+    public record Observation(String path, int lreScriptId, String stateVersion,
+                              String lastModifyDate, String driftType) {
+    }
+
+    public List<Observation> findByTarget(SyncRequest request) {
+        return jdbcTemplate.query("""
+                        SELECT script_path_unix, lre_script_id, state_version, lre_last_modify_date, drift_type
+                        FROM gitlab_lre_script_drift
+                        WHERE gitlab_project_id = ?
+                          AND lre_domain = ?
+                          AND lre_project = ?
+                        """,
+                (rs, rowNum) -> new Observation(
+                        rs.getString("script_path_unix"),
+                        rs.getInt("lre_script_id"),
+                        rs.getString("state_version"),
+                        rs.getString("lre_last_modify_date"),
+                        rs.getString("drift_type")
+                ),
+                request.getGitlabProjectId(),
+                request.getLreDomain(),
+                request.getLreProject()
+        );
+    }
+
+    @Transactional
+    public void saveAll(SyncRequest request, Collection<Observation> observations) {
+        String sql = """
+                INSERT INTO gitlab_lre_script_drift
+                (gitlab_project_id, lre_domain, lre_project, script_path_unix,
+                 lre_script_id, state_version, lre_last_modify_date, drift_type, checked_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT(gitlab_project_id, lre_domain, lre_project, script_path_unix) DO UPDATE SET
+                  lre_script_id = excluded.lre_script_id,
+                  state_version = excluded.state_version,
+                  lre_last_modify_date = excluded.lre_last_modify_date,
+                  drift_type = excluded.drift_type,
+                  checked_at = excluded.checked_at
+                """;
+
+        String now = LocalDateTime.now().format(FORMATTER);
+
+        for (Observation o : observations) {
+            jdbcTemplate.update(sql,
+                    request.getGitlabProjectId(),
+                    request.getLreDomain(),
+                    request.getLreProject(),
+                    o.path(),
+                    o.lreScriptId(),
+                    o.stateVersion(),
+                    o.lastModifyDate(),
+                    o.driftType(),
+                    now
+            );
+        }
+    }
+
+    /**
+     * Drops rows of paths the target no longer has in its sync state.
+     */
+    public void deleteOrphans(SyncRequest request) {
+        jdbcTemplate.update("""
+                        DELETE FROM gitlab_lre_script_drift
+                        WHERE gitlab_project_id = ?
+                          AND lre_domain = ?
+                          AND lre_project = ?
+                          AND NOT EXISTS (
+                            SELECT 1 FROM gitlab_lre_sync_state s
+                            WHERE s.gitlab_project_id = gitlab_lre_script_drift.gitlab_project_id
+                              AND s.lre_domain = gitlab_lre_script_drift.lre_domain
+                              AND s.lre_project = gitlab_lre_script_drift.lre_project
+                              AND s.script_path_unix = gitlab_lre_script_drift.script_path_unix
+                          )
+                        """,
+                request.getGitlabProjectId(),
+                request.getLreDomain(),
+                request.getLreProject()
+        );
+    }
+}
@@ -0,0 +1,26 @@
+package com.lre.gitlabintegration.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class ScriptRootRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<String> findRoots(long gitlabProjectId) {
+        return jdbcTemplate.queryForList("""
+                        SELECT root_path
+                        FROM gitlab_script_root
+                        WHERE gitlab_project_id = ?
+                        ORDER BY root_path
+                        """,
+                String.class,
+                gitlabProjectId
+        );
+    }
+}
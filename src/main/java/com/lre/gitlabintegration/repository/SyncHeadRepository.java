@@ -0,0 +1,104 @@
+package com.lre.gitlabintegration.repository;
+
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class SyncHeadRepository {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param scriptRoots roots the HEAD was synced with, null when not recorded
+     */
+    public record SyncHead(String ref, String headSha, String scriptRoots, String syncedAt) {
+
+        /**
+         * A HEAD synced with other roots says nothing about the folders now in scope.
+         */
+        public boolean syncedWith(List<String> roots) {
+            return scriptRoots != null && scriptRoots.equals(joinRoots(roots));
+        }
+    }
+
+    public SyncHead find(SyncRequest request) {
+        var rows = jdbcTemplate.query("""
+                        SELECT ref, head_sha, script_roots, synced_at
+                        FROM gitlab_lre_sync_head
+                        WHERE gitlab_project_id = ?
+                          AND lre_domain = ?
+                          AND lre_project = ?
+                        """,
+                (rs, rowNum) -> new SyncHead(rs.getString("ref"), rs.getString("head_sha"),
+                        rs.getString("script_roots"), rs.getString("synced_at")),
+                request.getGitlabProjectId(),
+                request.getLreDomain(),
+                request.getLreProject()
+        );
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * LRE targets that have been synced from the given project and ref.
+     */
+    public List<SyncRequest> findTargets(long gitlabProjectId, String ref) {
+        return jdbcTemplate.query("""
+                        SELECT lre_domain, lre_project
+                        FROM gitlab_lre_sync_head
+                        WHERE gitlab_project_id = ?
+                          AND ref = ?
+                        """,
+                (rs, rowNum) -> new SyncRequest(
+                        gitlabProjectId, ref, rs.getString("lre_domain"), rs.getString("lre_project")),
+                gitlabProjectId,
+                ref
+        );
+    }
+
+    public void save(SyncRequest request, String headSha) {
+        jdbcTemplate.update("""
+                        INSERT INTO gitlab_lre_sync_head
+                        (gitlab_project_id, lre_domain, lre_project, ref, head_sha, script_roots, synced_at)
+                        VALUES (?, ?, ?, ?, ?, ?, ?)
+                        ON CONFLICT(gitlab_project_id, lre_domain, lre_project) DO UPDATE SET
+                          ref = excluded.ref,
+                          head_sha = excluded.head_sha,
+                          script_roots = excluded.script_roots,
+                          synced_at = excluded.synced_at
+                        """,
+                request.getGitlabProjectId(),
+                request.getLreDomain(),
+                request.getLreProject(),
+                request.getRef(),
+                headSha,
+                joinRoots(request.getScriptRoots()),
+                LocalDateTime.now().format(FORMATTER)
+        );
+    }
+
+    public void clear(SyncRequest request) {
+        jdbcTemplate.update("""
+                        DELETE FROM gitlab_lre_sync_head
+                        WHERE gitlab_project_id = ?
+                          AND lre_domain = ?
+                          AND lre_project = ?
+                        """,
+                request.getGitlabProjectId(),
+                request.getLreDomain(),
+                request.getLreProject()
+        );
+    }
+
+    private static String joinRoots(List<String> roots) {
+        return roots == null ? "" : String.join("\n", roots);
+    }
+}
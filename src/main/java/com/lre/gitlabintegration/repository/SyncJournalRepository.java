@@ -0,0 +1,143 @@
+package com.lre.gitlabintegration.repository;
+
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Per-script outcomes of running syncs, so a sync cut short by a crash can be
+ * folded into the sync state afterwards.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SyncJournalRepository {
+
+    public static final String ACTION_UPLOAD = "UPLOAD";
+    public static final String ACTION_DELETE = "DELETE";
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record Journal(String journalId, SyncRequest request, String headSha, String owner, String startedAt) {
+    }
+
+    /**
+     * @param commit the uploaded script, null for a delete
+     */
+    public record Entry(String path, String action, Integer lreScriptId, GitLabCommit commit) {
+    }
+
+    public void open(String journalId, SyncRequest request, String headSha, String owner) {
+        jdbcTemplate.update("""
+                        INSERT INTO gitlab_lre_sync_journal
+                        (journal_id, gitlab_project_id, ref, lre_domain, lre_project, head_sha, owner, started_at)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                        """,
+                journalId,
+                request.getGitlabProjectId(),
+                request.getRef(),
+                request.getLreDomain(),
+                request.getLreProject(),
+                headSha,
+                owner,
+                LocalDateTime.now().format(FORMATTER)
+        );
+    }
+
+    public void recordUpload(String journalId, GitLabCommit commit, Integer lreScriptId) {
+        record(journalId, commit.getPath(), ACTION_UPLOAD, lreScriptId,
+                commit.getSha(), commit.getCommittedDate(), commit.getFingerprint());
+    }
+
+    public void recordDelete(String journalId, String path) {
+        record(journalId, path, ACTION_DELETE, null, null, null, null);
+    }
+
+    private void record(String journalId, String path, String action, Integer lreScriptId,
+                        String commitSha, String committedDate, String fingerprint) {
+        jdbcTemplate.update("""
+                        INSERT INTO gitlab_lre_sync_journal_entry
+                        (journal_id, script_path_unix, action, lre_script_id,
+                         commit_sha, committed_date, content_fingerprint, recorded_at)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                        ON CONFLICT(journal_id, script_path_unix, action) DO UPDATE SET
+                          lre_script_id = excluded.lre_script_id,
+                          commit_sha = excluded.commit_sha,
+                          committed_date = excluded.committed_date,
+                          content_fingerprint = excluded.content_fingerprint,
+                          recorded_at = excluded.recorded_at
+                        """,
+                journalId, path, action, lreScriptId, commitSha, committedDate, fingerprint,
+                LocalDateTime.now().format(FORMATTER)
+        );
+    }
+
+    /**
+     * Journals still open that were written by the given owner, or started before
+     * staleBefore by anyone.
+     */
+    public List<Journal> findUnfinished(String owner, LocalDateTime staleBefore) {
+        return jdbcTemplate.query("""
+                        SELECT journal_id, gitlab_project_id, ref, lre_domain, lre_project, head_sha, owner, started_at
+                        FROM gitlab_lre_sync_journal
+                        WHERE owner = ?
+                           OR started_at < ?
+                        ORDER BY started_at
+                        """,
+                (rs, rowNum) -> new Journal(
+                        rs.getString("journal_id"),
+                        new SyncRequest(
+                                rs.getLong("gitlab_project_id"),
+                                rs.getString("ref"),
+                                rs.getString("lre_domain"),
+                                rs.getString("lre_project")
+                        ),
+                        rs.getString("head_sha"),
+                        rs.getString("owner"),
+                        rs.getString("started_at")
+                ),
+                owner,
+                staleBefore.format(FORMATTER)
+        );
+    }
+
+    public List<Entry> findEntries(String journalId) {
+        return jdbcTemplate.query("""
+                        SELECT script_path_unix, action, lre_script_id, commit_sha, committed_date, content_fingerprint
+                        FROM gitlab_lre_sync_journal_entry
+                        WHERE journal_id = ?
+                        ORDER BY recorded_at
+                        """,
+                (rs, rowNum) -> {
+                    String path = rs.getString("script_path_unix");
+                    String action = rs.getString("action");
+                    Integer lreScriptId = rs.getObject("lre_script_id", Integer.class);
+
+                    GitLabCommit commit = null;
+                    if (ACTION_UPLOAD.equals(action)) {
+                        commit = new GitLabCommit();
+                        commit.setPath(path);
+                        commit.setSha(rs.getString("commit_sha"));
+                        commit.setCommittedDate(rs.getString("committed_date"));
+                        commit.setFingerprint(rs.getString("content_fingerprint"));
+                    }
+                    return new Entry(path, action, lreScriptId, commit);
+                },
+                journalId
+        );
+    }
+
+    @Transactional
+    public void delete(String journalId) {
+        jdbcTemplate.update("DELETE FROM gitlab_lre_sync_journal_entry WHERE journal_id = ?", journalId);
+        jdbcTemplate.update("DELETE FROM gitlab_lre_sync_journal WHERE journal_id = ?", journalId);
+    }
+}
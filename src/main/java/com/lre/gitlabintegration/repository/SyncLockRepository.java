@@ -42,6 +42,40 @@ public class SyncLockRepository {
         }
     }
 
+    /**
+     * True while any GitLab project is syncing into the LRE project.
+     */
+    public boolean isLocked(String lreDomain, String lreProject) {
+        Integer count = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*)
+                FROM sync_lock
+                WHERE lre_domain = ?
+                  AND lre_project = ?
+                """, Integer.class, lreDomain, lreProject);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Releases a lock left behind by a sync that died, but not one taken after it.
+     *
+     * @param takenBy the dead sync's start; only locks taken no later are released
+     */
+    public boolean releaseStaleLock(SyncRequest request, String takenBy) {
+        int released = jdbcTemplate.update("""
+                DELETE FROM sync_lock
+                WHERE gitlab_project_id = ?
+                  AND lre_domain = ?
+                  AND lre_project = ?
+                  AND locked_at <= ?
+                """,
+                request.getGitlabProjectId(),
+                request.getLreDomain(),
+                request.getLreProject(),
+                takenBy
+        );
+        return released > 0;
+    }
+
     public void releaseLock(SyncRequest request) {
         String sql = """
             DELETE FROM sync_lock
@@ -0,0 +1,135 @@
+package com.lre.gitlabintegration.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class SyncShardRepository {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record ShardRow(String jobId, int shardNo, String shardKey, String payload) {
+    }
+
+    public record ShardResult(int shardNo, String shardKey, String status, String result) {
+    }
+
+    public void insert(String jobId, int shardNo, String shardKey, String payload) {
+        jdbcTemplate.update("""
+                        INSERT INTO gitlab_lre_sync_shard (job_id, shard_no, shard_key, status, payload, created_at)
+                        VALUES (?, ?, ?, ?, ?, ?)
+                        """,
+                jobId, shardNo, shardKey, STATUS_PENDING, payload, LocalDateTime.now().format(FORMATTER)
+        );
+    }
+
+    /**
+     * Claims the oldest pending shard. The conditional update makes the claim safe
+     * against other workers racing for the same row.
+     *
+     * @param jobId only shards of this job, or any job when null
+     * @return the claimed shard, or null when none is pending
+     */
+    public ShardRow claimNext(String jobId, String workerId) {
+        while (true) {
+            List<ShardRow> candidates = jdbcTemplate.query("""
+                            SELECT job_id, shard_no, shard_key, payload
+                            FROM gitlab_lre_sync_shard
+                            WHERE status = 'PENDING'
+                              AND (? IS NULL OR job_id = ?)
+                            ORDER BY created_at, shard_no
+                            LIMIT 1
+                            """,
+                    (rs, rowNum) -> new ShardRow(
+                            rs.getString("job_id"), rs.getInt("shard_no"),
+                            rs.getString("shard_key"), rs.getString("payload")),
+                    jobId, jobId
+            );
+            if (candidates.isEmpty()) return null;
+
+            ShardRow candidate = candidates.get(0);
+            int claimed = jdbcTemplate.update("""
+                            UPDATE gitlab_lre_sync_shard
+                            SET status = 'RUNNING', claimed_by = ?, claimed_at = ?
+                            WHERE job_id = ?
+                              AND shard_no = ?
+                              AND status = 'PENDING'
+                            """,
+                    workerId, System.currentTimeMillis(), candidate.jobId(), candidate.shardNo()
+            );
+            if (claimed == 1) return candidate;
+        }
+    }
+
+    public void complete(String jobId, int shardNo, String status, String result) {
+        jdbcTemplate.update("""
+                        UPDATE gitlab_lre_sync_shard
+                        SET status = ?, result = ?
+                        WHERE job_id = ?
+                          AND shard_no = ?
+                        """,
+                status, result, jobId, shardNo
+        );
+    }
+
+    /**
+     * Hands shards whose worker went silent back to the queue.
+     *
+     * @return number of shards released
+     */
+    public int releaseStale(String jobId, long claimedBeforeMillis) {
+        return jdbcTemplate.update("""
+                        UPDATE gitlab_lre_sync_shard
+                        SET status = 'PENDING', claimed_by = NULL, claimed_at = NULL
+                        WHERE job_id = ?
+                          AND status = 'RUNNING'
+                          AND claimed_at < ?
+                        """,
+                jobId, claimedBeforeMillis
+        );
+    }
+
+    public int countOpen(String jobId) {
+        Integer open = jdbcTemplate.queryForObject("""
+                        SELECT COUNT(*)
+                        FROM gitlab_lre_sync_shard
+                        WHERE job_id = ?
+                          AND status IN ('PENDING', 'RUNNING')
+                        """,
+                Integer.class,
+                jobId
+        );
+        return open == null ? 0 : open;
+    }
+
+    public List<ShardResult> findResults(String jobId) {
+        return jdbcTemplate.query("""
+                        SELECT shard_no, shard_key, status, result
+                        FROM gitlab_lre_sync_shard
+                        WHERE job_id = ?
+                        ORDER BY shard_no
+                        """,
+                (rs, rowNum) -> new ShardResult(
+                        rs.getInt("shard_no"), rs.getString("shard_key"),
+                        rs.getString("status"), rs.getString("result")),
+                jobId
+        );
+    }
+
+    public void deleteJob(String jobId) {
+        jdbcTemplate.update("DELETE FROM gitlab_lre_sync_shard WHERE job_id = ?", jobId);
+    }
+}
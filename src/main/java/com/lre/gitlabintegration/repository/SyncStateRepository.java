@@ -9,8 +9,11 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.StringJoiner;
 
 @Repository
 public class SyncStateRepository {
@@ -25,7 +28,7 @@ public class SyncStateRepository {
 
     public List<SyncStateEntry> findPreviousState(SyncRequest request) {
         String sql = """
-                SELECT script_path_unix, commit_sha, committed_date, lre_script_id
+                SELECT script_path_unix, commit_sha, committed_date, content_fingerprint, lre_script_id
                 FROM gitlab_lre_sync_state
                 WHERE gitlab_project_id = ?
                   AND lre_domain = ?
@@ -38,6 +41,7 @@ public class SyncStateRepository {
                                 rs.getString("script_path_unix"),
                                 rs.getString("commit_sha"),
                                 rs.getString("committed_date"),
+                                rs.getString("content_fingerprint"),
                                 (Integer) rs.getObject("lre_script_id")
                         ),
                 request.getGitlabProjectId(),
@@ -47,6 +51,10 @@ public class SyncStateRepository {
     }
 
 
+    /**
+     * Replaces the target's state under the request's script roots. Rows under other
+     * roots were written by syncs of those roots and are kept.
+     */
     @Transactional
     public void saveCommits(SyncRequest request, List<GitLabCommit> commits, Map<String, Integer> lreIdByPath) {
         String deleteSql = """
@@ -56,18 +64,23 @@ public class SyncStateRepository {
                   AND lre_project = ?
                 """;
 
-        jdbcTemplate.update(
-                deleteSql,
+        List<Object> deleteArgs = new ArrayList<>(List.of(
                 request.getGitlabProjectId(),
                 request.getLreDomain(),
                 request.getLreProject()
-        );
+        ));
+        List<String> roots = request.getScriptRoots() == null ? List.of() : request.getScriptRoots();
+        if (!roots.isEmpty()) {
+            deleteSql += "  AND " + underRoots(roots, deleteArgs);
+        }
+
+        jdbcTemplate.update(deleteSql, deleteArgs.toArray());
 
         String insertSql = """
                 INSERT INTO gitlab_lre_sync_state
                 (gitlab_project_id, lre_domain, lre_project, lre_script_id,
-                 script_path_unix, commit_sha, committed_date, last_synced_at)
-                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                 script_path_unix, commit_sha, committed_date, content_fingerprint, last_synced_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
                 """;
 
         String now = LocalDateTime.now().format(FORMATTER);
@@ -84,10 +97,123 @@ public class SyncStateRepository {
                     commit.getPath(),
                     commit.getSha(),
                     commit.getCommittedDate(),
+                    commit.getFingerprint(),
                     now
             );
         }
 
     }
 
+    /**
+     * Writes the given rows without touching the rest of the target's state, so shards
+     * of one sync can commit independently.
+     */
+    @Transactional
+    public void upsertCommits(SyncRequest request, List<GitLabCommit> commits, Map<String, Integer> lreIdByPath) {
+        String sql = """
+                INSERT INTO gitlab_lre_sync_state
+                (gitlab_project_id, lre_domain, lre_project, lre_script_id,
+                 script_path_unix, commit_sha, committed_date, content_fingerprint, last_synced_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT(gitlab_project_id, lre_domain, lre_project, script_path_unix) DO UPDATE SET
+                  lre_script_id = COALESCE(excluded.lre_script_id, gitlab_lre_sync_state.lre_script_id),
+                  commit_sha = excluded.commit_sha,
+                  committed_date = excluded.committed_date,
+                  content_fingerprint = excluded.content_fingerprint,
+                  last_synced_at = excluded.last_synced_at
+                """;
+
+        String now = LocalDateTime.now().format(FORMATTER);
+
+        for (GitLabCommit commit : commits) {
+            jdbcTemplate.update(
+                    sql,
+                    request.getGitlabProjectId(),
+                    request.getLreDomain(),
+                    request.getLreProject(),
+                    lreIdByPath.get(commit.getPath()),
+                    commit.getPath(),
+                    commit.getSha(),
+                    commit.getCommittedDate(),
+                    commit.getFingerprint(),
+                    now
+            );
+        }
+    }
+
+    @Transactional
+    public void deletePaths(SyncRequest request, Collection<String> paths) {
+        String sql = """
+                DELETE FROM gitlab_lre_sync_state
+                WHERE gitlab_project_id = ?
+                  AND lre_domain = ?
+                  AND lre_project = ?
+                  AND script_path_unix = ?
+                """;
+
+        for (String path : paths) {
+            jdbcTemplate.update(
+                    sql,
+                    request.getGitlabProjectId(),
+                    request.getLreDomain(),
+                    request.getLreProject(),
+                    path
+            );
+        }
+    }
+
+    /**
+     * Condition matching script paths equal to or below any of the roots.
+     */
+    private static String underRoots(List<String> roots, List<Object> args) {
+        StringJoiner condition = new StringJoiner(" OR ", "(", ")");
+        for (String root : roots) {
+            condition.add("script_path_unix = ? OR script_path_unix LIKE ? ESCAPE '\\'");
+            args.add(root);
+            args.add(root.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "/%");
+        }
+        return condition.toString();
+    }
+
+    /**
+     * Every LRE target with synced scripts.
+     */
+    public List<SyncRequest> findSyncedTargets() {
+        String sql = """
+                SELECT DISTINCT gitlab_project_id, lre_domain, lre_project
+                FROM gitlab_lre_sync_state
+                """;
+
+        return jdbcTemplate.query(sql,
+                (rs, rowNum) -> new SyncRequest(
+                        rs.getLong("gitlab_project_id"), null, rs.getString("lre_domain"), rs.getString("lre_project"))
+        );
+    }
+
+    /**
+     * Forgets the synced version of the given paths so the next sync uploads them again.
+     */
+    @Transactional
+    public void markForReupload(SyncRequest request, Collection<String> paths) {
+        String sql = """
+                UPDATE gitlab_lre_sync_state
+                SET commit_sha = NULL,
+                    content_fingerprint = NULL
+                WHERE gitlab_project_id = ?
+                  AND lre_domain = ?
+                  AND lre_project = ?
+                  AND script_path_unix = ?
+                """;
+
+        for (String path : paths) {
+            jdbcTemplate.update(
+                    sql,
+                    request.getGitlabProjectId(),
+                    request.getLreDomain(),
+                    request.getLreProject(),
+                    path
+            );
+        }
+    }
+
 }
@@ -19,6 +19,9 @@ import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 @RequiredArgsConstructor
@@ -57,7 +60,7 @@ public class GitLabCiJobTokenAuthFilter extends OncePerRequestFilter {
             }
 
             var job = resolveJob(token);
-            var auth = buildAuthentication(job);
+            var auth = buildAuthentication(job, token);
 
             SecurityContextHolder.getContext().setAuthentication(auth);
             chain.doFilter(request, response);
@@ -78,7 +81,11 @@ public class GitLabCiJobTokenAuthFilter extends OncePerRequestFilter {
         }
     }
 
-    private static UsernamePasswordAuthenticationToken buildAuthentication(GitLabJobTokenApiClient.GitLabJobInfo job) {
+    /**
+     * The job token is kept as credentials so a long sync can check whether its job still runs.
+     */
+    private static UsernamePasswordAuthenticationToken buildAuthentication(GitLabJobTokenApiClient.GitLabJobInfo job,
+                                                                           String token) {
         if (job == null || job.user() == null || job.pipeline() == null) {
             throw new BadCredentialsException("Could not resolve CI identity");
         }
@@ -89,14 +96,23 @@ public class GitLabCiJobTokenAuthFilter extends OncePerRequestFilter {
                 job.pipeline().projectId(),
                 job.pipeline().webUrl(),
                 job.ref(),
-                Boolean.TRUE.equals(job.tag())
+                Boolean.TRUE.equals(job.tag()),
+                parseInstant(job.startedAt())
         );
 
         return new UsernamePasswordAuthenticationToken(
                 principal,
-                null,
+                token,
                 List.of(new SimpleGrantedAuthority(ROLE_GITLAB_CI))
         );
     }
 
+    private static Instant parseInstant(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
 }
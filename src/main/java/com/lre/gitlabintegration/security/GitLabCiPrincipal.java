@@ -1,11 +1,17 @@
 package com.lre.gitlabintegration.security;
 
+import java.time.Instant;
+
+/**
+ * @param jobStartedAt when the CI job started; null if GitLab did not say
+ */
 public record GitLabCiPrincipal(
         long gitlabUserId,
         String gitlabUsername,
         long gitlabProjectId,
         String webUrl,
         String ref,
-        boolean tag
+        boolean tag,
+        Instant jobStartedAt
 ) {
 }
@@ -2,6 +2,7 @@ package com.lre.gitlabintegration.security;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lre.gitlabintegration.client.api.GitLabJobTokenApiClient;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -29,7 +30,9 @@ public class SecurityConfig {
         RequestMatcher publicEndpoints = new OrRequestMatcher(
                 p.matcher("/health/**"),
                 p.matcher("/actuator/health/**"),
-                p.matcher("/error")
+                p.matcher("/error"),
+                // Authenticated by the webhook secret in the controller
+                p.matcher(HttpMethod.POST, "/api/gitlab/webhook")
         );
 
         return http
@@ -46,6 +49,8 @@ public class SecurityConfig {
                 )
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+                        // Re-dispatch of an already authorized request, e.g. an SSE stream ending
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers(publicEndpoints).permitAll()
                         .anyRequest().hasAuthority("ROLE_GITLAB_CI")
                 )
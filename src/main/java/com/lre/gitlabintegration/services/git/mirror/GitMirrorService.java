@@ -0,0 +1,469 @@
+package com.lre.gitlabintegration.services.git.mirror;
+
+import com.lre.gitlabintegration.client.api.GitLabApiClient;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.gitlab.GitLabProjectInfo;
+import com.lre.gitlabintegration.dto.gitlab.GitLabTreeIndex;
+import com.lre.gitlabintegration.exceptions.LreException;
+import com.lre.gitlabintegration.repository.GitLabProjectCacheRepository;
+import com.lre.gitlabintegration.util.io.FileUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps one local bare clone per GitLab project and answers tree listings, diffs,
+ * latest commits and folder archives from its object store using the git CLI.
+ * <p>
+ * Each fetch only transfers new objects. When all mirrors together exceed
+ * {@code gitlab.mirror.max-disk-bytes}, the least recently used ones are deleted;
+ * a mirror that is being fetched or read is skipped.
+ */
+@Slf4j
+@Service
+public class GitMirrorService {
+
+    private static final String LAST_USED_MARKER = "lre-last-used";
+    private static final int MAX_ERROR_CHARS = 2000;
+
+    private final GitLabApiClient gitLabApiClient;
+    private final GitLabProjectCacheRepository projectCacheRepo;
+    private final GitLabProperties.Mirror properties;
+    private final String token;
+    private final Path mirrorRoot;
+    /** Serializes fetches of one project. */
+    private final Map<Long, ReentrantLock> locks = new ConcurrentHashMap<>();
+    /** Shared by fetches and reads of one project, exclusive for its eviction. */
+    private final Map<Long, ReentrantReadWriteLock> useLocks = new ConcurrentHashMap<>();
+
+    public GitMirrorService(GitLabApiClient gitLabApiClient,
+                            GitLabProjectCacheRepository projectCacheRepo,
+                            GitLabProperties gitLabProperties) {
+        this.gitLabApiClient = gitLabApiClient;
+        this.projectCacheRepo = projectCacheRepo;
+        this.properties = gitLabProperties.getMirror();
+        this.token = gitLabProperties.getToken();
+        this.mirrorRoot = Paths.get(properties.getDirectory());
+    }
+
+    @FunctionalInterface
+    private interface OutputReader {
+        void read(InputStream stdout) throws IOException;
+    }
+
+    public boolean isEnabledFor(long projectId) {
+        return properties.isEnabled()
+                && (properties.getProjects().isEmpty() || properties.getProjects().contains(projectId));
+    }
+
+    /**
+     * True when the project is mirrored and the mirror already holds the commit.
+     */
+    public boolean canServe(long projectId, String rev) {
+        if (!isEnabledFor(projectId) || rev == null || !Files.exists(mirrorDir(projectId).resolve("HEAD"))) {
+            return false;
+        }
+        try {
+            return resolveCommit(projectId, rev) != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Brings the mirror up to date, cloning it on first use.
+     *
+     * @return the commit the ref points to in the updated mirror
+     */
+    public String fetch(long projectId, String ref) {
+        Path dir = mirrorDir(projectId);
+        ReentrantLock lock = locks.computeIfAbsent(projectId, id -> new ReentrantLock());
+
+        lock.lock();
+        try {
+            using(projectId, () -> {
+                if (!Files.exists(dir.resolve("HEAD"))) {
+                    createMirror(projectId, dir);
+                }
+
+                long started = System.currentTimeMillis();
+                git(dir, true, null, "fetch", "--prune", "--quiet", "origin",
+                        "+refs/heads/*:refs/heads/*", "+refs/tags/*:refs/tags/*");
+                touch(dir);
+                log.debug("Fetched mirror of project {} in {} ms", projectId, System.currentTimeMillis() - started);
+            });
+        } finally {
+            lock.unlock();
+        }
+
+        evictColdMirrors(projectId);
+
+        String sha = resolveCommit(projectId, ref);
+        if (sha == null) {
+            throw new LreException("Ref " + ref + " not found in mirror of project " + projectId);
+        }
+        return sha;
+    }
+
+    /**
+     * @return the full commit SHA, or null when the revision is unknown to the mirror
+     */
+    public String resolveCommit(long projectId, String rev) {
+        List<String> lines = new ArrayList<>();
+        try {
+            using(projectId, () -> git(mirrorDir(projectId), false, out -> readLines(out, lines),
+                    "rev-parse", "--verify", "--quiet", rev + "^{commit}"));
+        } catch (LreException e) {
+            return null;
+        }
+        return lines.isEmpty() ? null : lines.get(0).trim();
+    }
+
+    /**
+     * Recursive tree listing reduced to folder SHAs and .usr folders, as from the REST tree API.
+     *
+     * @param paths folders to list; empty lists the whole tree
+     */
+    public GitLabTreeIndex indexTree(long projectId, String rev, Collection<String> paths) {
+        List<String> args = new ArrayList<>(List.of("ls-tree", "-r", "-t", "-z", "--full-tree", rev));
+        if (!paths.isEmpty()) {
+            args.add("--");
+            args.addAll(paths);
+        }
+
+        GitLabTreeIndex index = new GitLabTreeIndex();
+        using(projectId, () -> {
+            git(mirrorDir(projectId), false, out -> {
+                // -z keeps non-ASCII paths unquoted
+                Scanner entries = new Scanner(out, StandardCharsets.UTF_8).useDelimiter("\0");
+                while (entries.hasNext()) {
+                    addTreeEntry(entries.next(), index);
+                }
+            }, args.toArray(String[]::new));
+            touch(mirrorDir(projectId));
+        });
+        return index;
+    }
+
+    /**
+     * Format: {@code <mode> SP <type> SP <sha> TAB <path>}.
+     */
+    private void addTreeEntry(String line, GitLabTreeIndex index) {
+        int tab = line.indexOf('\t');
+        if (tab < 0) return;
+
+        String[] meta = line.substring(0, tab).split(" ");
+        String path = line.substring(tab + 1);
+        if (meta.length < 3) return;
+
+        if ("tree".equals(meta[1])) {
+            index.addTree(path, meta[2]);
+        } else if ("blob".equals(meta[1]) && path.endsWith(".usr")) {
+            int slash = path.lastIndexOf('/');
+            if (slash > 0) index.addScriptFolder(path.substring(0, slash));
+        }
+    }
+
+    /**
+     * Paths changed between two commits; renames are reported as delete plus add so
+     * both the old and the new path are included.
+     */
+    public List<String> changedPaths(long projectId, String baseSha, String headSha) {
+        List<String> paths = new ArrayList<>();
+        using(projectId, () -> git(mirrorDir(projectId), false, out -> {
+            String all = new String(out.readAllBytes(), StandardCharsets.UTF_8);
+            for (String path : all.split("\0")) {
+                if (!path.isBlank()) paths.add(path);
+            }
+        }, "diff", "--name-only", "-z", "--no-renames", baseSha, headSha));
+        return paths;
+    }
+
+    public GitLabCommit latestCommit(long projectId, String rev, String path) {
+        List<String> lines = new ArrayList<>();
+        using(projectId, () -> git(mirrorDir(projectId), false, out -> readLines(out, lines),
+                "log", "-1", "--format=%H%x1f%cI%x1f%s", rev, "--", path));
+
+        GitLabCommit commit = new GitLabCommit();
+        if (lines.isEmpty()) return commit;
+
+        String[] fields = lines.get(0).split("\u001f", 3);
+        commit.setSha(fields[0]);
+        commit.setCommittedDate(fields.length > 1 ? fields[1] : "");
+        commit.setMessage(fields.length > 2 ? fields[2] : "");
+        commit.setPath(path);
+        return commit;
+    }
+
+    /**
+     * Writes the given paths at rev into one zip. Entries are prefixed with a single
+     * top-level folder, the same layout as a GitLab repository archive.
+     *
+     * @param paths folders to include; empty archives the whole tree
+     */
+    public void archive(long projectId, String rev, Collection<String> paths, Path target) {
+        List<String> args = new ArrayList<>(List.of(
+                "archive", "--format=zip", "--prefix=" + projectId + "-" + rev + "/",
+                "-o", target.toAbsolutePath().toString(), rev));
+        if (!paths.isEmpty()) {
+            args.add("--");
+            args.addAll(paths);
+        }
+        using(projectId, () -> {
+            git(mirrorDir(projectId), false, null, args.toArray(String[]::new));
+            touch(mirrorDir(projectId));
+        });
+    }
+
+    /* ==========================================================
+       Mirror lifecycle
+       ========================================================== */
+
+    private void createMirror(long projectId, Path dir) {
+        String remoteUrl = remoteUrl(projectId);
+        log.info("Creating mirror of project {} in {}", projectId, dir);
+
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new LreException("Cannot create mirror directory " + dir, e);
+        }
+
+        try {
+            git(dir, true, null, "init", "--bare", "--quiet");
+            git(dir, true, null, "remote", "add", "origin", remoteUrl);
+        } catch (RuntimeException e) {
+            FileUtils.deleteFolder(dir);
+            throw e;
+        }
+    }
+
+    private String remoteUrl(long projectId) {
+        String template = properties.getRemoteUrlTemplate();
+        String pathWithNamespace = null;
+        String webUrl = null;
+
+        var cached = projectCacheRepo.find(projectId);
+        if (cached != null) {
+            pathWithNamespace = cached.pathWithNamespace();
+            webUrl = cached.webUrl();
+        } else if (template == null || template.isBlank() || template.contains("{pathWithNamespace}")) {
+            GitLabProjectInfo info = gitLabApiClient.getProjectInfo(projectId);
+            pathWithNamespace = info.pathWithNamespace();
+            webUrl = info.webUrl();
+        }
+
+        if (template == null || template.isBlank()) {
+            if (webUrl == null) throw new LreException("No web URL known for project " + projectId);
+            return webUrl + ".git";
+        }
+        return template
+                .replace("{projectId}", String.valueOf(projectId))
+                .replace("{pathWithNamespace}", String.valueOf(pathWithNamespace));
+    }
+
+    private void evictColdMirrors(long currentProjectId) {
+        if (!Files.isDirectory(mirrorRoot)) return;
+
+        List<MirrorUsage> mirrors = new ArrayList<>();
+        try (Stream<Path> dirs = Files.list(mirrorRoot)) {
+            for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                mirrors.add(new MirrorUsage(dir, parseProjectId(dir), lastUsed(dir), sizeOf(dir)));
+            }
+        } catch (IOException e) {
+            log.warn("Cannot inspect mirror directory {}: {}", mirrorRoot, e.getMessage());
+            return;
+        }
+
+        long total = mirrors.stream().mapToLong(MirrorUsage::bytes).sum();
+        if (total <= properties.getMaxDiskBytes()) return;
+
+        mirrors.sort(Comparator.comparing(MirrorUsage::lastUsed));
+        for (MirrorUsage mirror : mirrors) {
+            if (total <= properties.getMaxDiskBytes()) break;
+            if (mirror.projectId() == null || mirror.projectId() == currentProjectId) continue;
+
+            Lock lock = useLock(mirror.projectId()).writeLock();
+            if (!lock.tryLock()) continue;
+            try {
+                log.info("Evicting mirror of project {} ({} bytes, last used {})",
+                        mirror.projectId(), mirror.bytes(), mirror.lastUsed());
+                FileUtils.deleteFolder(mirror.dir());
+                total -= mirror.bytes();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private record MirrorUsage(Path dir, Long projectId, Instant lastUsed, long bytes) {
+    }
+
+    /**
+     * Runs a fetch or read of the mirror; it cannot be evicted in the meantime.
+     */
+    private void using(long projectId, Runnable action) {
+        Lock lock = useLock(projectId).readLock();
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantReadWriteLock useLock(long projectId) {
+        return useLocks.computeIfAbsent(projectId, id -> new ReentrantReadWriteLock());
+    }
+
+    private Path mirrorDir(long projectId) {
+        return mirrorRoot.resolve(projectId + ".git");
+    }
+
+    private Long parseProjectId(Path dir) {
+        String name = dir.getFileName().toString();
+        if (!name.endsWith(".git")) return null;
+        try {
+            return Long.valueOf(name.substring(0, name.length() - 4));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void touch(Path dir) {
+        try {
+            Path marker = dir.resolve(LAST_USED_MARKER);
+            if (!Files.exists(marker)) Files.createFile(marker);
+            Files.setLastModifiedTime(marker, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.debug("Cannot update last-used marker of {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private Instant lastUsed(Path dir) {
+        try {
+            return Files.getLastModifiedTime(dir.resolve(LAST_USED_MARKER)).toInstant();
+        } catch (IOException e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    private long sizeOf(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /* ==========================================================
+       git CLI
+       ========================================================== */
+
+    /**
+     * Runs git in the mirror directory. The token is passed through GIT_CONFIG_*
+     * environment variables so it never shows up in the process list or the mirror config.
+     *
+     * @param reader consumes stdout; null discards it
+     */
+    private void git(Path dir, boolean network, OutputReader reader, String... args) {
+        List<String> command = new ArrayList<>(args.length + 1);
+        command.add(properties.getGitExecutable());
+        command.addAll(List.of(args));
+
+        Path stderr = null;
+        try {
+            stderr = Files.createTempFile("git-stderr", ".log");
+
+            ProcessBuilder builder = new ProcessBuilder(command)
+                    .directory(dir.toFile())
+                    .redirectError(stderr.toFile());
+            builder.environment().put("GIT_TERMINAL_PROMPT", "0");
+            if (network && token != null && !token.isBlank()) {
+                String basic = Base64.getEncoder()
+                        .encodeToString(("oauth2:" + token).getBytes(StandardCharsets.UTF_8));
+                builder.environment().put("GIT_CONFIG_COUNT", "1");
+                builder.environment().put("GIT_CONFIG_KEY_0", "http.extraHeader");
+                builder.environment().put("GIT_CONFIG_VALUE_0", "Authorization: Basic " + basic);
+            }
+
+            Process process = builder.start();
+            Duration timeout = properties.getCommandTimeout();
+            CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .execute(() -> {
+                        if (process.isAlive()) process.destroyForcibly();
+                    });
+
+            try (InputStream out = process.getInputStream()) {
+                if (reader != null) {
+                    reader.read(out);
+                } else {
+                    out.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+
+            if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new LreException("git " + args[0] + " timed out after " + timeout);
+            }
+            if (process.exitValue() != 0) {
+                throw new LreException("git " + args[0] + " failed (exit " + process.exitValue() + "): "
+                        + readError(stderr));
+            }
+
+        } catch (IOException e) {
+            throw new LreException("Failed to run git " + args[0] + " in " + dir, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LreException("Interrupted while running git " + args[0], e);
+        } finally {
+            if (stderr != null) {
+                try {
+                    Files.deleteIfExists(stderr);
+                } catch (IOException e) {
+                    log.debug("Cannot delete {}: {}", stderr, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String readError(Path stderr) throws IOException {
+        String text = Files.readString(stderr, StandardCharsets.UTF_8).trim();
+        return text.length() > MAX_ERROR_CHARS ? text.substring(0, MAX_ERROR_CHARS) + "..." : text;
+    }
+
+    private static void readLines(InputStream out, List<String> lines) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(out, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.client.api.GitLabJobTokenApiClient;
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.exceptions.AuthException;
+import com.lre.gitlabintegration.exceptions.ResourceNotFoundException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels syncs whose CI job is gone. A servlet cannot tell that a blocking request's
+ * client went away, but a job token stops working once its job is cancelled or
+ * times out, so polling the job endpoint with it tells the same.
+ */
+@Slf4j
+@Component
+public class CiJobWatchdog {
+
+    private static final String JOB_TOKEN_HEADER = "JOB-TOKEN";
+    private static final String RUNNING = "running";
+
+    private final GitLabJobTokenApiClient jobClient;
+    private final SyncControlRegistry controlRegistry;
+    private final Duration interval;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    public CiJobWatchdog(GitLabJobTokenApiClient jobClient,
+                         SyncControlRegistry controlRegistry,
+                         LreProperties lreProperties) {
+        this.jobClient = jobClient;
+        this.controlRegistry = controlRegistry;
+        this.interval = lreProperties.getJobWatchInterval();
+
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("ci-job-watch-"));
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Watches the caller's CI job until the returned handle is closed and cancels the
+     * given requests when the job stops running. A request waiting on another
+     * caller's sync only stops waiting; that sync goes on.
+     */
+    public Watch watch(Authentication authentication, List<SyncRequest> requests) {
+        if (interval.isZero() || interval.isNegative()
+                || authentication == null || !(authentication.getCredentials() instanceof String token)) {
+            return Watch.NONE;
+        }
+
+        long millis = interval.toMillis();
+        ScheduledFuture<?> task = scheduler.scheduleWithFixedDelay(
+                () -> check(token, requests), millis, millis, TimeUnit.MILLISECONDS);
+        return new Watch(task);
+    }
+
+    private void check(String token, List<SyncRequest> requests) {
+        String reason = null;
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(JOB_TOKEN_HEADER, token);
+            GitLabJobTokenApiClient.GitLabJobInfo job = jobClient.getCurrentJob(headers);
+            if (job != null && job.status() != null && !RUNNING.equals(job.status())) {
+                reason = "CI job is " + job.status();
+            }
+        } catch (AuthException | ResourceNotFoundException e) {
+            reason = "CI job is no longer running";
+        } catch (Exception e) {
+            // GitLab being slow or down says nothing about the job
+            log.debug("CI job check failed: {}", e.getMessage());
+        }
+
+        if (reason != null) {
+            for (SyncRequest request : requests) {
+                controlRegistry.cancelCaller(request, reason);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public static final class Watch implements AutoCloseable {
+
+        static final Watch NONE = new Watch(null);
+
+        private final ScheduledFuture<?> task;
+
+        private Watch(ScheduledFuture<?> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void close() {
+            if (task != null) task.cancel(false);
+        }
+    }
+}
@@ -1,116 +1,512 @@
 package com.lre.gitlabintegration.services.git.sync;
 
 import com.lre.gitlabintegration.client.api.GitLabApiClient;
+import com.lre.gitlabintegration.client.api.GitLabGraphQlApiClient;
+import com.lre.gitlabintegration.config.concurrency.GitLabFanOutExecutor;
 import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.config.properties.GitLabProperties.ChangeDetection;
+import com.lre.gitlabintegration.config.properties.GitLabProperties.CommitLookup;
+import com.lre.gitlabintegration.config.properties.GitLabProperties.TreePagination;
 import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.gitlab.GitLabTreeIndex;
 import com.lre.gitlabintegration.dto.gitlab.GitLabTreeItem;
+import com.lre.gitlabintegration.dto.gitlab.GitLabTreePage;
+import com.lre.gitlabintegration.exceptions.ClientErrorException;
+import com.lre.gitlabintegration.exceptions.LreException;
+import com.lre.gitlabintegration.exceptions.ResourceNotFoundException;
+import com.lre.gitlabintegration.services.git.mirror.GitMirrorService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class GitRepositoryScanner {
 
     private final GitLabApiClient gitLabApiClient;
-    private final int threadPoolSize;
+    private final GitLabGraphQlApiClient graphQlApiClient;
+    private final GitLabFanOutExecutor fanOutExecutor;
+    private final GitMirrorService mirrorService;
     private final int gitlabPerPageRecords;
+    private final ChangeDetection changeDetection;
+    private final TreePagination treePagination;
+    private final int treePageParallelism;
+    private final CommitLookup commitLookup;
+    private final int graphqlBatchSize;
 
     public GitRepositoryScanner(GitLabApiClient gitLabApiClient,
+                                GitLabGraphQlApiClient graphQlApiClient,
+                                GitLabFanOutExecutor fanOutExecutor,
+                                GitMirrorService mirrorService,
                                 GitLabProperties gitLabProperties) {
         this.gitLabApiClient = gitLabApiClient;
-        this.threadPoolSize = gitLabProperties.getThreadPoolSize();
+        this.graphQlApiClient = graphQlApiClient;
+        this.fanOutExecutor = fanOutExecutor;
+        this.mirrorService = mirrorService;
         this.gitlabPerPageRecords = gitLabProperties.getPerPageRecords();
+        this.changeDetection = gitLabProperties.getChangeDetection();
+        this.treePagination = gitLabProperties.getTreePagination();
+        this.treePageParallelism = Math.max(1, gitLabProperties.getTreePageParallelism());
+        this.commitLookup = gitLabProperties.getCommitLookup();
+        this.graphqlBatchSize = Math.max(1, gitLabProperties.getGraphqlBatchSize());
     }
 
     public List<GitLabCommit> scanScripts(long projectId, String ref) {
-        Set<String> scriptDirs = findScriptDirectories(projectId, ref);
-        log.debug("Found {} scripts", scriptDirs.size());
+        return scanScripts(projectId, ref, List.of());
+    }
+
+    /**
+     * Lists every script folder of the ref with its tree SHA as fingerprint.
+     * Commit metadata is only fetched up front in COMMIT mode; in FINGERPRINT mode
+     * callers resolve it later for the folders that actually changed.
+     *
+     * @param roots folders to scan recursively; empty scans the whole repository
+     */
+    public List<GitLabCommit> scanScripts(long projectId, String ref, List<String> roots) {
+        Map<String, String> scriptFolders = findScriptFolders(projectId, ref, roots);
+        log.debug("Found {} scripts", scriptFolders.size());
 
-        if (scriptDirs.isEmpty()) {
+        if (scriptFolders.isEmpty()) {
             log.info("No LRE script(s) found in the repository");
             return List.of();
         }
 
-        ExecutorService executor = Executors.newFixedThreadPool(threadPoolSize);
-        try {
-            List<Future<GitLabCommit>> futures = scriptDirs.stream()
-                    .map(path -> executor.submit(
-                            () -> fetchCommitForPath(projectId, ref, path)))
-                    .toList();
-
-            List<GitLabCommit> commits = new ArrayList<>();
-            for (Future<GitLabCommit> future : futures) {
-                try {
-                    GitLabCommit commit = future.get();
-                    if (!commit.isEmpty()) {
-                        commits.add(commit);
-                    }
-                } catch (Exception e) {
-                    log.warn("Failed to fetch commit for script path", e);
+        List<GitLabCommit> scripts = new ArrayList<>(scriptFolders.size());
+        scriptFolders.forEach((path, treeSha) -> scripts.add(newScript(path, treeSha)));
+
+        if (changeDetection == ChangeDetection.COMMIT) {
+            return fetchCommits(projectId, ref, scripts);
+        }
+        return scripts;
+    }
+
+    /**
+     * Re-reads only the given folders: the parent listing supplies each folder's tree
+     * SHA and the folder listing tells whether it still holds a .usr file.
+     * Folders that no longer exist or are no longer scripts are left out.
+     */
+    public List<GitLabCommit> scanScriptFolders(long projectId, String ref, Collection<String> folders) {
+        if (mirrorService.canServe(projectId, ref)) {
+            return scanScriptFoldersFromMirror(projectId, ref, folders);
+        }
+
+        Map<String, List<String>> byParent = new TreeMap<>();
+        for (String folder : folders) {
+            String parent = Objects.requireNonNullElse(ScriptFolderMapper.parentOf(folder), "");
+            byParent.computeIfAbsent(parent, k -> new ArrayList<>()).add(folder);
+        }
+
+        List<GitLabCommit> scripts = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : byParent.entrySet()) {
+            String parent = entry.getKey().isEmpty() ? null : entry.getKey();
+            Map<String, String> treeShaByPath = new HashMap<>();
+            for (GitLabTreeItem item : listDirectory(projectId, ref, parent)) {
+                if ("tree".equals(item.getType())) treeShaByPath.put(item.getPath(), item.getId());
+            }
+
+            for (String folder : entry.getValue()) {
+                String treeSha = treeShaByPath.get(folder);
+                if (treeSha != null && containsUsrFile(listDirectory(projectId, ref, folder))) {
+                    scripts.add(newScript(folder, treeSha));
                 }
             }
+        }
+
+        scripts.sort(Comparator.comparing(GitLabCommit::getPath));
+        log.debug("Rescanned {} folder(s), {} still hold a script", folders.size(), scripts.size());
 
-            return commits;
-        } finally {
-            shutdownExecutor(executor);
+        if (changeDetection == ChangeDetection.COMMIT) {
+            return fetchCommits(projectId, ref, scripts);
         }
+        return scripts;
     }
 
-    private GitLabCommit fetchCommitForPath(long projectId, String ref, String path) {
-        GitLabCommit commit = gitLabApiClient.getLatestCommitForPath(projectId, ref, path);
-        if (!commit.isEmpty()) {
-            commit.setPath(path);
+    private List<GitLabCommit> scanScriptFoldersFromMirror(long projectId, String ref, Collection<String> folders) {
+        Map<String, String> scriptFolders = mirrorService.indexTree(projectId, ref, folders).scriptFolders();
+
+        List<GitLabCommit> scripts = new ArrayList<>();
+        for (String folder : folders) {
+            String treeSha = scriptFolders.get(folder);
+            if (treeSha != null && !treeSha.isEmpty()) scripts.add(newScript(folder, treeSha));
         }
-        return commit;
-    }
 
-    private Set<String> findScriptDirectories(long projectId, String ref) {
-        List<GitLabTreeItem> allItems = scanEntireRepository(projectId, ref);
-        return allItems.stream()
-                .filter(i ->
-                        "blob".equals(i.getType())
-                                && i.getName().endsWith(".usr"))
-                .map(i ->
-                        i.getPath().substring(
-                                0, i.getPath().lastIndexOf('/')))
-                .collect(Collectors.toSet());
+        scripts.sort(Comparator.comparing(GitLabCommit::getPath));
+        log.debug("Rescanned {} folder(s) from mirror, {} still hold a script", folders.size(), scripts.size());
+
+        if (changeDetection == ChangeDetection.COMMIT) {
+            return fetchCommits(projectId, ref, scripts);
+        }
+        return scripts;
     }
 
-    private List<GitLabTreeItem> scanEntireRepository(long projectId, String ref) {
+    private List<GitLabTreeItem> listDirectory(long projectId, String ref, String path) {
         List<GitLabTreeItem> all = new ArrayList<>();
         int page = 1;
 
-        while (true) {
-            List<GitLabTreeItem> items =
-                    gitLabApiClient.getRepositoryTree(page, projectId, ref);
-            all.addAll(items);
-            if (items.isEmpty() || items.size() < gitlabPerPageRecords) {
-                break;
+        try {
+            while (true) {
+                List<GitLabTreeItem> items = gitLabApiClient.getRepositoryDirectory(page, projectId, ref, path);
+                all.addAll(items);
+                if (items.isEmpty() || items.size() < gitlabPerPageRecords) {
+                    break;
+                }
+                page++;
             }
-            page++;
+        } catch (ResourceNotFoundException e) {
+            log.debug("Directory {} not found at {}", path, ref);
         }
 
         return all;
     }
 
-    private void shutdownExecutor(ExecutorService executor) {
-        executor.shutdown();
+    private boolean containsUsrFile(List<GitLabTreeItem> items) {
+        return items.stream().anyMatch(i -> "blob".equals(i.getType()) && i.getName().endsWith(".usr"));
+    }
+
+    public boolean isFingerprintMode() {
+        return changeDetection == ChangeDetection.FINGERPRINT;
+    }
+
+    /**
+     * Fills in commit metadata for scripts that do not carry a commit SHA yet.
+     */
+    public void resolveMissingCommits(long projectId, String ref, List<GitLabCommit> scripts) {
+        List<GitLabCommit> missing = scripts.stream()
+                .filter(s -> s.getSha() == null || s.getSha().isBlank())
+                .toList();
+
+        if (missing.isEmpty()) return;
+
+        log.debug("Resolving latest commit for {} script folder(s)", missing.size());
+        List<GitLabCommit> resolved = fetchCommits(projectId, ref, missing);
+
+        if (resolved.size() < missing.size()) {
+            log.warn("Could not resolve latest commit for {} script folder(s)", missing.size() - resolved.size());
+        }
+    }
+
+    /**
+     * Copies the latest commit of each script folder onto the script in place.
+     *
+     * @return the scripts for which a commit was found
+     */
+    private List<GitLabCommit> fetchCommits(long projectId, String ref, List<GitLabCommit> scripts) {
+        if (mirrorService.canServe(projectId, ref)) {
+            return fetchCommitsPerPath(projectId, ref, scripts, true);
+        }
+        return commitLookup == CommitLookup.GRAPHQL
+                ? fetchCommitsBatched(projectId, ref, scripts)
+                : fetchCommitsPerPath(projectId, ref, scripts, false);
+    }
+
+    /**
+     * One GraphQL request per batch of paths; a batch that fails is retried over REST.
+     */
+    private List<GitLabCommit> fetchCommitsBatched(long projectId, String ref, List<GitLabCommit> scripts) {
+        List<List<GitLabCommit>> batches = new ArrayList<>();
+        for (int i = 0; i < scripts.size(); i += graphqlBatchSize) {
+            batches.add(scripts.subList(i, Math.min(i + graphqlBatchSize, scripts.size())));
+        }
+
+        List<Callable<List<GitLabCommit>>> tasks = batches.stream()
+                .<Callable<List<GitLabCommit>>>map(batch -> () -> applyLatestCommits(projectId, ref, batch))
+                .toList();
+
+        List<Future<List<GitLabCommit>>> futures;
+        try {
+            futures = fanOutExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LreException("Interrupted while fetching script commits", e);
+        }
+
+        List<GitLabCommit> resolved = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                resolved.addAll(futures.get(i).get());
+            } catch (Exception e) {
+                log.warn("GraphQL commit lookup failed for a batch of {} path(s), retrying over REST: {}",
+                        batches.get(i).size(), e.getMessage());
+                resolved.addAll(fetchCommitsPerPath(projectId, ref, batches.get(i), false));
+            }
+        }
+        return resolved;
+    }
+
+    private List<GitLabCommit> applyLatestCommits(long projectId, String ref, List<GitLabCommit> batch) {
+        List<String> paths = batch.stream().map(GitLabCommit::getPath).toList();
+        Map<String, GitLabCommit> commits = graphQlApiClient.getLatestCommits(projectId, ref, paths);
+
+        List<GitLabCommit> resolved = new ArrayList<>(batch.size());
+        for (GitLabCommit script : batch) {
+            GitLabCommit commit = commits.get(script.getPath());
+            if (commit == null || commit.isEmpty()) continue;
+
+            copyCommit(commit, script);
+            resolved.add(script);
+        }
+        return resolved;
+    }
+
+    private List<GitLabCommit> fetchCommitsPerPath(long projectId, String ref, List<GitLabCommit> scripts,
+                                                   boolean fromMirror) {
+        List<Callable<Boolean>> tasks = scripts.stream()
+                .<Callable<Boolean>>map(script -> () -> applyLatestCommit(projectId, ref, script, fromMirror))
+                .toList();
+
+        List<Future<Boolean>> futures;
+        try {
+            futures = fanOutExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LreException("Interrupted while fetching script commits", e);
+        }
+
+        List<GitLabCommit> resolved = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                if (Boolean.TRUE.equals(futures.get(i).get())) {
+                    resolved.add(scripts.get(i));
+                }
+            } catch (Exception e) {
+                log.warn("Failed to fetch commit for script path", e);
+            }
+        }
+
+        return resolved;
+    }
+
+    private boolean applyLatestCommit(long projectId, String ref, GitLabCommit script, boolean fromMirror) {
+        GitLabCommit commit = fromMirror
+                ? mirrorService.latestCommit(projectId, ref, script.getPath())
+                : gitLabApiClient.getLatestCommitForPath(projectId, ref, script.getPath());
+        if (commit.isEmpty()) {
+            return false;
+        }
+        copyCommit(commit, script);
+        return true;
+    }
+
+    private void copyCommit(GitLabCommit commit, GitLabCommit script) {
+        script.setSha(commit.getSha());
+        script.setCommittedDate(commit.getCommittedDate());
+        script.setMessage(commit.getMessage());
+    }
+
+    private GitLabCommit newScript(String path, String treeSha) {
+        GitLabCommit script = new GitLabCommit();
+        script.setPath(path);
+        script.setFingerprint(treeSha);
+        return script;
+    }
+
+    /**
+     * @return script folder path to its tree SHA, sorted by path
+     */
+    private Map<String, String> findScriptFolders(long projectId, String ref, List<String> roots) {
+        if (mirrorService.canServe(projectId, ref)) {
+            return findScriptFoldersInMirror(projectId, ref, roots);
+        }
+
+        // A null root stands for the repository root
+        List<String> scanRoots = roots.isEmpty() ? Collections.singletonList(null) : roots;
+
+        Map<String, String> scriptFolders = indexTrees(projectId, ref, scanRoots).scriptFolders();
+
+        // A scoped listing does not contain the tree entry of its own root
+        scriptFolders.replaceAll((folder, treeSha) ->
+                treeSha.isEmpty() ? findTreeSha(projectId, ref, folder) : treeSha);
+        return scriptFolders;
+    }
+
+    private Map<String, String> findScriptFoldersInMirror(long projectId, String ref, List<String> roots) {
+        GitLabTreeIndex index = mirrorService.indexTree(projectId, ref, roots);
+        assertSomeRootExists((int) roots.stream().filter(root -> !index.containsTree(root)).count(), roots, ref);
+        return index.scriptFolders();
+    }
+
+    private String findTreeSha(long projectId, String ref, String folder) {
+        for (GitLabTreeItem item : listDirectory(projectId, ref, ScriptFolderMapper.parentOf(folder))) {
+            if ("tree".equals(item.getType()) && folder.equals(item.getPath())) return item.getId();
+        }
+        return "";
+    }
+
+    /**
+     * Tree pages are parsed as they stream in and only folder SHAs and .usr folders are
+     * kept, so memory grows with the number of directories, not files.
+     */
+    private GitLabTreeIndex indexTrees(long projectId, String ref, List<String> roots) {
+        if (treePagination == TreePagination.PARALLEL) {
+            return scanInParallel(projectId, ref, roots);
+        }
+
+        GitLabTreeIndex index = new GitLabTreeIndex();
+        int missing = 0;
+        for (String root : roots) {
+            GitLabTreeIndex rootIndex = scanSerially(projectId, ref, root);
+            if (rootIndex == null) {
+                missing++;
+            } else {
+                index.merge(rootIndex);
+            }
+        }
+        assertSomeRootExists(missing, roots, ref);
+        return index;
+    }
+
+    /**
+     * A single missing root is a configuration slip; all of them missing more likely
+     * means a bad ref, which must not be mistaken for a repository without scripts.
+     */
+    private void assertSomeRootExists(int missing, List<String> roots, String ref) {
+        if (missing > 0 && missing == roots.size()) {
+            throw new ResourceNotFoundException(
+                    "None of the script roots " + roots + " exist at " + ref, HttpStatus.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Fetches the first page of every root concurrently, then all remaining pages of all
+     * roots as one batch using X-Total-Pages. GitLab omits the header on very large
+     * listings; those roots are walked with keyset pagination.
+     */
+    private GitLabTreeIndex scanInParallel(long projectId, String ref, List<String> roots) {
+        List<Callable<GitLabTreePage>> firstPageTasks = new ArrayList<>(roots.size());
+        for (String root : roots) {
+            firstPageTasks.add(() -> firstTreePage(projectId, ref, root));
+        }
+        List<GitLabTreePage> firstPages = invokeAll(firstPageTasks, treePageParallelism);
+
+        GitLabTreeIndex index = new GitLabTreeIndex();
+        List<Callable<GitLabTreeIndex>> pageTasks = new ArrayList<>();
+        List<String> keysetRoots = new ArrayList<>();
+        int missing = 0;
+
+        for (int i = 0; i < roots.size(); i++) {
+            String root = roots.get(i);
+            GitLabTreePage first = firstPages.get(i);
+            if (first == null) {
+                missing++;
+                continue;
+            }
+            index.merge(first.index());
+
+            if (first.totalPages() == null) {
+                if (first.itemCount() >= gitlabPerPageRecords) keysetRoots.add(root);
+                continue;
+            }
+
+            for (int page = 2; page <= first.totalPages(); page++) {
+                int p = page;
+                pageTasks.add(() -> gitLabApiClient.getRepositoryTreePage(p, projectId, ref, root).index());
+            }
+        }
+
+        assertSomeRootExists(missing, roots, ref);
+
+        if (!pageTasks.isEmpty()) {
+            log.debug("Fetching {} more repository tree page(s) with parallelism {}",
+                    pageTasks.size(), treePageParallelism);
+            invokeAll(pageTasks, treePageParallelism).forEach(index::merge);
+        }
+
+        for (String root : keysetRoots) {
+            log.debug("No X-Total-Pages header for project {}, switching to keyset pagination", projectId);
+            index.merge(scanWithKeyset(projectId, ref, root));
+        }
+        return index;
+    }
+
+    /**
+     * @return null when the script root does not exist at the ref
+     */
+    private GitLabTreePage firstTreePage(long projectId, String ref, String root) {
+        try {
+            return gitLabApiClient.getRepositoryTreePage(1, projectId, ref, root);
+        } catch (ResourceNotFoundException e) {
+            if (root == null) throw e;
+            log.warn("Script root {} not found at {} in project {}", root, ref, projectId);
+            return null;
+        }
+    }
+
+    /**
+     * @return results in task order
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks, int window) {
         try {
-            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
+            List<Future<T>> futures = fanOutExecutor.invokeAll(tasks, window);
+
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
             }
-        } catch (InterruptedException ie) {
+            return results;
+
+        } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            executor.shutdownNow();
+            throw new LreException("Interrupted while scanning repository tree", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re
+                    ? re
+                    : new LreException("Failed to scan repository tree", e.getCause());
+        }
+    }
+
+    private GitLabTreeIndex scanWithKeyset(long projectId, String ref, String root) {
+        GitLabTreeIndex index = new GitLabTreeIndex();
+        String pageToken = null;
+
+        try {
+            do {
+                GitLabTreePage page = gitLabApiClient.getRepositoryTreeKeysetPage(projectId, ref, root, pageToken);
+                index.merge(page.index());
+                pageToken = page.nextPageToken();
+            } while (pageToken != null);
+
+        } catch (ClientErrorException e) {
+            // Older GitLab versions reject pagination=keyset on the tree endpoint
+            log.warn("Keyset pagination not supported for project {}, falling back to serial scan: {}",
+                    projectId, e.getMessage());
+            return Objects.requireNonNullElseGet(scanSerially(projectId, ref, root), GitLabTreeIndex::new);
+        }
+
+        return index;
+    }
+
+    /**
+     * @return null when the script root does not exist at the ref
+     */
+    private GitLabTreeIndex scanSerially(long projectId, String ref, String root) {
+        GitLabTreeIndex index = new GitLabTreeIndex();
+        int page = 1;
+
+        while (true) {
+            GitLabTreePage treePage = page == 1
+                    ? firstTreePage(projectId, ref, root)
+                    : gitLabApiClient.getRepositoryTreePage(page, projectId, ref, root);
+            if (treePage == null) return null;
+            index.merge(treePage.index());
+            if (treePage.itemCount() == 0 || treePage.itemCount() < gitlabPerPageRecords) {
+                break;
+            }
+            page++;
         }
+
+        return index;
     }
 }
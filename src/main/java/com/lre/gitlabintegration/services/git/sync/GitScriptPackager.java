@@ -1,34 +1,372 @@
 package com.lre.gitlabintegration.services.git.sync;
 
 import com.lre.gitlabintegration.client.api.GitLabApiClient;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
 import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
 import com.lre.gitlabintegration.exceptions.LreException;
+import com.lre.gitlabintegration.services.git.mirror.GitMirrorService;
 import com.lre.gitlabintegration.util.io.FileUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 @Slf4j
 @Service
 public class GitScriptPackager {
 
     private final GitLabApiClient gitLabApiClient;
+    private final GitMirrorService mirrorService;
     private final Path rootSyncDir;
+    private final int bulkArchiveThreshold;
+    private final Map<String, SharedPackages> sharedPackages = new ConcurrentHashMap<>();
 
-    public GitScriptPackager(GitLabApiClient gitLabApiClient) {
+    public GitScriptPackager(GitLabApiClient gitLabApiClient,
+                             GitMirrorService mirrorService,
+                             GitLabProperties gitLabProperties) {
         this.gitLabApiClient = gitLabApiClient;
+        this.mirrorService = mirrorService;
         this.rootSyncDir = Paths.get(System.getProperty("java.io.tmpdir"), "lre_sync");
+        this.bulkArchiveThreshold = gitLabProperties.getBulkArchiveThreshold();
     }
 
     public record PackagedScript(Path zipPath, Path tempDir) {
     }
 
+    /**
+     * Starts packaging for one upload batch. From bulkArchiveThreshold scripts on, the
+     * archive of sourceRef is downloaded once per script root (or once for the whole
+     * ref) and every script is cut out of it locally; smaller batches, or a failed bulk
+     * download, fall back to one archive per script. Mirrored projects always build a
+     * single archive locally from the mirror.
+     */
+    public PackagingSession openSession(long projectId, String sourceRef, List<GitLabCommit> commits,
+                                        List<String> scriptRoots) {
+        SharedPackages shared = sourceRef == null ? null : sharedPackages.get(sharedKey(projectId, sourceRef));
+        if (shared != null) {
+            shared.open(commits, scriptRoots);
+            return new PackagingSession(shared);
+        }
+        return openOwnSession(projectId, sourceRef, commits, scriptRoots, false);
+    }
+
+    /**
+     * From now until the returned scope is closed, every session opened for
+     * projectId at sha packages each script only once and reuses the zip. The first
+     * session to package decides between bulk and per-script download; a mirror
+     * archive then covers the script roots, since later sessions package other folders.
+     */
+    public SharedPackages sharePackages(long projectId, String sha) {
+        SharedPackages shared = new SharedPackages(projectId, sha);
+        if (sharedPackages.putIfAbsent(sharedKey(projectId, sha), shared) != null) {
+            throw new LreException("Packages of project " + projectId + " at " + sha + " are already shared");
+        }
+        return shared;
+    }
+
+    private static String sharedKey(long projectId, String sha) {
+        return projectId + "@" + sha;
+    }
+
+    /**
+     * @param shared the session serves other batches too, so it must not be cut to this batch's folders
+     */
+    private PackagingSession openOwnSession(long projectId, String sourceRef, List<GitLabCommit> commits,
+                                            List<String> scriptRoots, boolean shared) {
+        if (!commits.isEmpty() && mirrorService.canServe(projectId, sourceRef)) {
+            PackagingSession session = openMirrorSession(projectId, sourceRef, commits, scriptRoots, shared);
+            if (session != null) return session;
+        }
+
+        if (bulkArchiveThreshold <= 0 || commits.size() < bulkArchiveThreshold || sourceRef == null) {
+            return new PackagingSession(projectId, null, List.of());
+        }
+
+        Path sessionDir = rootSyncDir.resolve("bulk-" + System.nanoTime());
+        List<String> roots = scriptRoots == null || scriptRoots.isEmpty()
+                ? Collections.singletonList(null)
+                : scriptRoots;
+
+        List<BulkArchive> archives = new ArrayList<>(roots.size());
+        try {
+            Files.createDirectories(sessionDir);
+            for (int i = 0; i < roots.size(); i++) {
+                Path archivePath = sessionDir.resolve("archive-" + i + ".zip");
+                gitLabApiClient.streamRepositoryArchive(projectId, sourceRef, roots.get(i), archivePath);
+                archives.add(BulkArchive.open(archivePath));
+            }
+
+            log.info("Bulk packaging {} scripts from {} archive(s) of {}", commits.size(), archives.size(), sourceRef);
+            return new PackagingSession(projectId, sessionDir, archives);
+
+        } catch (Exception e) {
+            log.warn("Bulk archive download failed for project {} at {}, packaging per script: {}",
+                    projectId, sourceRef, e.getMessage());
+            archives.forEach(BulkArchive::closeQuietly);
+            FileUtils.deleteFolder(sessionDir);
+            return new PackagingSession(projectId, null, List.of());
+        }
+    }
+
+    /**
+     * Small batches archive just their script folders; larger ones and shared sessions
+     * the script roots, which also keeps the git command line short.
+     *
+     * @return null when the mirror could not produce the archive
+     */
+    private PackagingSession openMirrorSession(long projectId, String sourceRef, List<GitLabCommit> commits,
+                                               List<String> scriptRoots, boolean shared) {
+        List<String> paths = !shared && commits.size() < Math.max(1, bulkArchiveThreshold)
+                ? commits.stream().map(GitLabCommit::getPath).toList()
+                : Objects.requireNonNullElse(scriptRoots, List.of());
+
+        Path sessionDir = rootSyncDir.resolve("mirror-" + System.nanoTime());
+        try {
+            Files.createDirectories(sessionDir);
+            Path archivePath = sessionDir.resolve("archive.zip");
+            mirrorService.archive(projectId, sourceRef, paths, archivePath);
+
+            log.info("Packaging {} scripts from mirror of project {} at {}", commits.size(), projectId, sourceRef);
+            return new PackagingSession(projectId, sessionDir, List.of(BulkArchive.open(archivePath)));
+
+        } catch (Exception e) {
+            log.warn("Mirror archive failed for project {} at {}: {}", projectId, sourceRef, e.getMessage());
+            FileUtils.deleteFolder(sessionDir);
+            return null;
+        }
+    }
+
+    /**
+     * Packaged zips of one project revision shared by several upload batches.
+     * Zips are keyed by path and commit SHA and deleted when the scope closes.
+     */
+    public final class SharedPackages implements AutoCloseable {
+
+        private final long projectId;
+        private final String sha;
+        private final Map<String, CompletableFuture<PackagedScript>> packaged = new ConcurrentHashMap<>();
+        private PackagingSession delegate;
+
+        private SharedPackages(long projectId, String sha) {
+            this.projectId = projectId;
+            this.sha = sha;
+        }
+
+        private synchronized void open(List<GitLabCommit> commits, List<String> scriptRoots) {
+            if (delegate == null) {
+                delegate = openOwnSession(projectId, sha, commits, scriptRoots, true);
+            }
+        }
+
+        private PackagedScript prepare(GitLabCommit commit) throws IOException {
+            String key = commit.getPath() + "@" + commit.getSha();
+            CompletableFuture<PackagedScript> created = new CompletableFuture<>();
+            CompletableFuture<PackagedScript> existing = packaged.putIfAbsent(key, created);
+
+            if (existing == null) {
+                try {
+                    created.complete(packageOnce(commit));
+                } catch (IOException | RuntimeException e) {
+                    packaged.remove(key, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+
+            try {
+                // The zip belongs to this scope, so callers get it without a temp dir to clean up
+                return new PackagedScript((existing != null ? existing : created).get().zipPath(), null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LreException("Interrupted while waiting for script package: " + commit.getPath(), e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                throw new LreException("Failed to package script: " + commit.getPath(), e.getCause());
+            }
+        }
+
+        private PackagedScript packageOnce(GitLabCommit commit) throws IOException {
+            PackagingSession session;
+            synchronized (this) {
+                session = delegate;
+            }
+            return session.prepare(commit);
+        }
+
+        @Override
+        public void close() {
+            sharedPackages.remove(sharedKey(projectId, sha), this);
+            packaged.values().forEach(f -> {
+                if (!f.isCompletedExceptionally()) cleanUp(f.getNow(null));
+            });
+            synchronized (this) {
+                if (delegate != null) delegate.close();
+            }
+        }
+    }
+
+    /**
+     * Packages scripts of one upload batch, either from shared archives or one by one.
+     */
+    public final class PackagingSession implements AutoCloseable {
+
+        private final long projectId;
+        private final Path sessionDir;
+        private final List<BulkArchive> archives;
+        private final SharedPackages shared;
+
+        private PackagingSession(long projectId, Path sessionDir, List<BulkArchive> archives) {
+            this.projectId = projectId;
+            this.sessionDir = sessionDir;
+            this.archives = archives;
+            this.shared = null;
+        }
+
+        private PackagingSession(SharedPackages shared) {
+            this.projectId = shared.projectId;
+            this.sessionDir = null;
+            this.archives = List.of();
+            this.shared = shared;
+        }
+
+        public PackagedScript prepare(GitLabCommit commit) throws IOException {
+            if (shared != null) {
+                return shared.prepare(commit);
+            }
+            if (archives.isEmpty()) {
+                return GitScriptPackager.this.prepare(projectId, commit);
+            }
+
+            for (BulkArchive archive : archives) {
+                if (archive.contains(commit.getPath())) {
+                    return cutFromArchive(archive, commit);
+                }
+            }
+
+            // e.g. a shared session whose archives were scoped by another batch
+            log.debug("Script folder {} not in the session's archives, packaging it on its own", commit.getPath());
+            return GitScriptPackager.this.prepare(projectId, commit);
+        }
+
+        @Override
+        public void close() {
+            if (shared != null) return;
+            archives.forEach(BulkArchive::closeQuietly);
+            if (sessionDir != null) FileUtils.deleteFolder(sessionDir);
+        }
+    }
+
+    private PackagedScript cutFromArchive(BulkArchive archive, GitLabCommit commit) throws IOException {
+        if (commit.getSha() == null || commit.getSha().isBlank()) {
+            throw new LreException("No commit resolved for script: " + commit.getPath());
+        }
+
+        Path commitTempDir = createCommitTempDir(commit);
+        Path packagedDir = commitTempDir.resolve("packaged");
+        Files.createDirectories(packagedDir);
+
+        try {
+            Path packagedZip = packagedDir.resolve(generateZipFileName(commit));
+            archive.writeFolder(commit.getPath(), packagedZip);
+
+            log.debug("Cut {} out of bulk archive into {} ({} bytes)",
+                    commit.getPath(), packagedZip, Files.size(packagedZip));
+
+            return new PackagedScript(packagedZip, commitTempDir);
+
+        } catch (Exception e) {
+            FileUtils.deleteFolder(commitTempDir);
+            throw e;
+        }
+    }
+
+    /**
+     * Repository archive indexed by its central directory. GitLab prefixes every entry
+     * with a "project-sha[-path]/" folder, which is stripped from the indexed names.
+     */
+    private record BulkArchive(ZipFile zipFile, NavigableMap<String, ZipEntry> entriesByPath) {
+
+        static BulkArchive open(Path archivePath) throws IOException {
+            ZipFile zipFile = new ZipFile(archivePath.toFile());
+            NavigableMap<String, ZipEntry> entries = new TreeMap<>();
+
+            Enumeration<? extends ZipEntry> all = zipFile.entries();
+            while (all.hasMoreElements()) {
+                ZipEntry entry = all.nextElement();
+                int slash = entry.getName().indexOf('/');
+                if (slash < 0 || slash == entry.getName().length() - 1) continue;
+                entries.put(entry.getName().substring(slash + 1), entry);
+            }
+            return new BulkArchive(zipFile, entries);
+        }
+
+        boolean contains(String folder) {
+            return !folderEntries(folder).isEmpty();
+        }
+
+        /**
+         * Writes the folder's entries relative to the folder, the same layout the
+         * per-script path produces from an extracted archive.
+         */
+        void writeFolder(String folder, Path target) throws IOException {
+            NavigableMap<String, ZipEntry> entries = folderEntries(folder);
+            String prefix = folder + "/";
+
+            try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(target))) {
+                zos.putNextEntry(new ZipEntry("/"));
+                zos.closeEntry();
+
+                for (var e : entries.entrySet()) {
+                    zos.putNextEntry(new ZipEntry(e.getKey().substring(prefix.length())));
+                    if (!e.getValue().isDirectory()) {
+                        try (InputStream in = zipFile.getInputStream(e.getValue())) {
+                            in.transferTo(zos);
+                        }
+                    }
+                    zos.closeEntry();
+                }
+            }
+        }
+
+        private NavigableMap<String, ZipEntry> folderEntries(String folder) {
+            String prefix = folder + "/";
+            // '0' is the character right after '/', so this range holds exactly the folder's entries
+            return entriesByPath.subMap(prefix, false, folder + "0", false);
+        }
+
+        void closeQuietly() {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                log.debug("Failed to close archive {}: {}", zipFile.getName(), e.getMessage());
+            }
+        }
+    }
+
     public PackagedScript prepare(long projectId, GitLabCommit commit) throws IOException {
 
+        if (commit.getSha() == null || commit.getSha().isBlank()) {
+            throw new LreException("No commit resolved for script: " + commit.getPath());
+        }
+
         Files.createDirectories(rootSyncDir);
 
         Path commitTempDir = createCommitTempDir(commit);
@@ -140,7 +478,7 @@ public class GitScriptPackager {
     }
 
     public void cleanUp(PackagedScript packagedScript) {
-        if (packagedScript != null) {
+        if (packagedScript != null && packagedScript.tempDir() != null) {
             FileUtils.deleteFolder(packagedScript.tempDir());
         }
     }
@@ -1,8 +1,10 @@
 package com.lre.gitlabintegration.services.git.sync;
 
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
 import com.lre.gitlabintegration.dto.sync.SyncContext;
 import com.lre.gitlabintegration.dto.sync.SyncRequest;
 import com.lre.gitlabintegration.dto.sync.SyncResponse;
+import com.lre.gitlabintegration.repository.SyncHeadRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -20,13 +22,55 @@ public class GitSyncService {
     private final SyncModeResolver modeResolver;
     private final InitialSyncProcessor initialSyncProcessor;
     private final IncrementalSyncProcessor incrementalSyncProcessor;
+    private final SyncHeadRepository headRepository;
+    private final SyncCoalescer coalescer;
+    private final SyncJournal journal;
 
     public SyncResponse sync(SyncRequest request) {
+        return sync(request, null);
+    }
+
+    /**
+     * Requests for a target already syncing on this instance join that sync when it is
+     * at the same HEAD, or queue behind it otherwise, instead of failing on the lock.
+     *
+     * @param shared scan shared with other targets of a multi-target sync, or null
+     */
+    public SyncResponse sync(SyncRequest request, SharedScan shared) {
+        // Same scope the resolver will use, so joined requests really ask for the same sync
+        request.setScriptRoots(modeResolver.scriptRoots(request));
+        String headSha = shared != null ? shared.headSha() : modeResolver.resolveHead(request);
+
+        return coalescer.run(request, headSha, () -> execute(request, shared, headSha));
+    }
+
+    private SyncResponse execute(SyncRequest request, SharedScan shared, String headSha) {
         return executionManager.execute(request, () -> {
-            SyncContext ctx = modeResolver.resolve(request);
+            SyncContext ctx = modeResolver.resolve(request, shared, headSha);
+
+            if (ctx.headUnchanged()) {
+                log.info("No changes for project {}: ref {} already synced at {}",
+                        request.getLreProject(), request.getRef(), ctx.headSha());
+                return SyncResponseBuilder.noChanges(SyncResponseBuilder.buildUnchangedList(ctx.current()));
+            }
+
+            SyncControl.current().checkpoint("uploading");
+
             String mode = ctx.isInitial() ? "INITIAL" : "INCREMENTAL";
             log.info("Starting Git-LRE sync for project: {} in {} mode", request.getLreProject(), mode);
-            return processByMode(ctx);
+
+            journal.open(request, ctx.headSha());
+            boolean finished = false;
+            SyncResponse response;
+            try {
+                response = processByMode(ctx);
+                finished = true;
+            } finally {
+                journal.close(request, finished);
+            }
+
+            recordHead(ctx, response);
+            return response;
         });
     }
 
@@ -37,4 +81,18 @@ public class GitSyncService {
                 : incrementalSyncProcessor.process(ctx);
     }
 
+    /**
+     * Only a fully successful sync may mark the HEAD as synced; after partial
+     * failures the next run has to rescan so the failed scripts are retried.
+     */
+    private void recordHead(SyncContext ctx, SyncResponse response) {
+        if (ctx.headSha() == null) return;
+
+        if (response.success()) {
+            headRepository.save(ctx.request(), ctx.headSha());
+        } else {
+            headRepository.clear(ctx.request());
+        }
+    }
+
 }
@@ -2,16 +2,16 @@ package com.lre.gitlabintegration.services.git.sync;
 
 import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
 import com.lre.gitlabintegration.dto.sync.*;
+import com.lre.gitlabintegration.repository.SyncStateRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static com.lre.gitlabintegration.services.git.sync.SyncResponseBuilder.incremental;
-import static com.lre.gitlabintegration.util.constants.AppConstants.STATUS_FAILED;
-import static com.lre.gitlabintegration.util.constants.AppConstants.STATUS_SUCCESS;
 
 @Slf4j
 @Component
@@ -21,6 +21,9 @@ public class IncrementalSyncProcessor {
     private final SyncAnalyzer analyzer;
     private final LreSyncService lreSyncService;
     private final SyncStateUpdater stateUpdater;
+    private final GitRepositoryScanner scanner;
+    private final ShardedSyncExecutor shardedExecutor;
+    private final SyncStateRepository stateRepository;
 
     public SyncResponse process(SyncContext ctx) {
         List<SyncStateEntry> previous = ctx.previous();
@@ -33,61 +36,58 @@ public class IncrementalSyncProcessor {
         if (!result.hasChanges()) {
             List<ScriptChange> unchangedChanges = SyncResponseBuilder.buildUnchangedList(result.unchangedScripts());
             log.info("No changes detected");
+            if (hasEntriesWithoutFingerprint(previous)) {
+                stateUpdater.updateStateWithPartialSuccess(ctx, result, List.of(), List.of(), List.of());
+            }
             return SyncResponseBuilder.noChanges(unchangedChanges);
         }
 
         logSyncSummary(result);
 
-        List<ScriptChange> uploadChanges = lreSyncService.uploadScripts(req, result.scriptsToUpload());
+        scanner.resolveMissingCommits(req.getGitlabProjectId(), ctx.sourceRef(), result.scriptsToUpload());
+
+        ChangeGroups sharded = shardedExecutor.execute(req, ctx.sourceRef(), result);
+        if (sharded != null) {
+            // shards commit their own state rows; only backfill fingerprints here
+            if (hasEntriesWithoutFingerprint(previous)) {
+                stateRepository.upsertCommits(req, result.unchangedScripts(), Map.of());
+            }
+            return incremental(sharded.uploadedSuccess(), sharded.deletedSuccess(), sharded.movedSuccess(),
+                    SyncResponseBuilder.buildUnchangedList(result.unchangedScripts()), sharded.failed());
+        }
+
+        List<ScriptChange> uploadChanges = lreSyncService.uploadScripts(req, ctx.sourceRef(), result.scriptsToUpload());
+        List<ScriptChange> moveChanges = lreSyncService.moveScripts(req, ctx.sourceRef(), result.scriptsToMove());
         List<ScriptChange> deleteChanges = lreSyncService.deleteScripts(req, result.scriptsToDelete());
 
         List<ScriptChange> unchangedChanges = SyncResponseBuilder.buildUnchangedList(result.unchangedScripts());
 
-        ChangeGroups groups = categorize(uploadChanges, deleteChanges);
+        ChangeGroups groups = SyncResponseBuilder.categorize(uploadChanges, deleteChanges, moveChanges);
 
-        stateUpdater.updateStateWithPartialSuccess(ctx, result, groups.uploadedSuccess(), groups.deletedSuccess());
+        stateUpdater.updateStateWithPartialSuccess(
+                ctx, result, groups.uploadedSuccess(), groups.deletedSuccess(), moveChanges);
 
-        List<ScriptChange> allChanges = new ArrayList<>(uploadChanges.size() + deleteChanges.size());
+        List<ScriptChange> allChanges = new ArrayList<>(uploadChanges.size() + deleteChanges.size() + moveChanges.size());
         allChanges.addAll(uploadChanges);
+        allChanges.addAll(moveChanges);
         allChanges.addAll(deleteChanges);
         lreSyncService.logSyncSummary(allChanges);
 
-        return incremental(groups.uploadedSuccess(), groups.deletedSuccess(), unchangedChanges, groups.failed());
+        return incremental(groups.uploadedSuccess(), groups.deletedSuccess(), groups.movedSuccess(),
+                unchangedChanges, groups.failed());
+    }
+
+    private boolean hasEntriesWithoutFingerprint(List<SyncStateEntry> previous) {
+        return previous.stream().anyMatch(e -> e.fingerprint() == null || e.fingerprint().isBlank());
     }
 
     private void logSyncSummary(SyncResult result) {
-        log.info("SYNC SUMMARY: total={} | upload={} | delete={} | unchanged={}",
+        log.info("SYNC SUMMARY: total={} | upload={} | delete={} | move={} | unchanged={}",
                 result.totalScripts(),
                 result.scriptsToUpload().size(),
                 result.scriptsToDelete().size(),
+                result.scriptsToMove().size(),
                 result.unchangedScripts().size());
     }
 
-    private ChangeGroups categorize(List<ScriptChange> uploads, List<ScriptChange> deletes) {
-
-        List<ScriptChange> uploadedSuccess = new ArrayList<>();
-        List<ScriptChange> deletedSuccess = new ArrayList<>();
-        List<ScriptChange> failed = new ArrayList<>();
-
-        // Process uploads
-        for (ScriptChange c : uploads) {
-            if (STATUS_SUCCESS.equals(c.status())) {
-                uploadedSuccess.add(c);
-            } else if (STATUS_FAILED.equals(c.status())) {
-                failed.add(c);
-            }
-        }
-
-        // Process deletes
-        for (ScriptChange c : deletes) {
-            if (STATUS_SUCCESS.equals(c.status())) {
-                deletedSuccess.add(c);
-            } else if (STATUS_FAILED.equals(c.status())) {
-                failed.add(c);
-            }
-        }
-
-        return new ChangeGroups(uploadedSuccess, deletedSuccess, failed);
-    }
-
 }
@@ -1,10 +1,12 @@
 package com.lre.gitlabintegration.services.git.sync;
 
 import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.ChangeGroups;
 import com.lre.gitlabintegration.dto.sync.ScriptChange;
 import com.lre.gitlabintegration.dto.sync.SyncContext;
 import com.lre.gitlabintegration.dto.sync.SyncRequest;
 import com.lre.gitlabintegration.dto.sync.SyncResponse;
+import com.lre.gitlabintegration.dto.sync.SyncResult;
 import com.lre.gitlabintegration.repository.SyncStateRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,6 +29,8 @@ public class InitialSyncProcessor {
 
     private final LreSyncService lreSyncService;
     private final SyncStateRepository stateRepository;
+    private final GitRepositoryScanner scanner;
+    private final ShardedSyncExecutor shardedExecutor;
 
     public SyncResponse process(SyncContext ctx) {
         List<GitLabCommit> current = ctx.current();
@@ -35,7 +39,15 @@ public class InitialSyncProcessor {
         log.info("Starting INITIAL sync for project {} ({} scripts)",
                 req.getLreProject(), current.size());
 
-        List<ScriptChange> uploadChanges = lreSyncService.uploadScripts(req, current);
+        scanner.resolveMissingCommits(req.getGitlabProjectId(), ctx.sourceRef(), current);
+
+        ChangeGroups sharded = shardedExecutor.execute(
+                req, ctx.sourceRef(), new SyncResult(current, List.of(), List.of()));
+        if (sharded != null) {
+            return SyncResponseBuilder.initialSync(sharded.uploadedSuccess(), sharded.failed());
+        }
+
+        List<ScriptChange> uploadChanges = lreSyncService.uploadScripts(req, ctx.sourceRef(), current);
 
         Map<String, List<ScriptChange>> grouped = uploadChanges.stream()
                 .collect(Collectors.groupingBy(ScriptChange::status));
@@ -50,6 +50,14 @@ public class LreScriptManager {
         log.debug("Deleted script: {} / {}", folderPath, scriptName);
     }
 
+    /**
+     * Deletes a script by its stored id, skipping the script listing lookup.
+     */
+    public void deleteById(String domain, String project, int scriptId) {
+        scriptApiClient.deleteScript(domain, project, scriptId);
+        log.debug("Deleted script id {}", scriptId);
+    }
+
     public Script findScriptByName(String domain, String project, String testFolderPath, String scriptName) {
         String normalizedPath = PathUtils.normalizePathWithSubject(testFolderPath).toLowerCase(Locale.ROOT);
         String normalizedName = scriptName.toLowerCase(Locale.ROOT);
@@ -69,6 +77,15 @@ public class LreScriptManager {
         throw new LreException(msg);
     }
 
+    /**
+     * Creates the test plan folder and any missing parents.
+     *
+     * @return the normalized folder path
+     */
+    public String ensureTestPlanFolder(String domain, String project, String folderPath, List<TestPlan> testPlans) {
+        return validateAndEnsureTestPlanPath(domain, project, PathUtils.normalizePathWithSubject(folderPath), testPlans);
+    }
+
     private String validateAndEnsureTestPlanPath(String domain, String project, String inputFolderPath, List<TestPlan> currentTestPlans) {
         Set<String> existingPathStrings = currentTestPlans.stream()
                 .map(plan -> PathUtils.normalizePathWithSubject(plan.getFullPath()).toLowerCase())
@@ -1,9 +1,11 @@
 package com.lre.gitlabintegration.services.git.sync;
 
 import com.lre.gitlabintegration.client.api.LreTestPlanApiClient;
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
 import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
 import com.lre.gitlabintegration.dto.lrescript.Script;
 import com.lre.gitlabintegration.dto.sync.ScriptChange;
+import com.lre.gitlabintegration.dto.sync.ScriptMove;
 import com.lre.gitlabintegration.dto.sync.SyncRequest;
 import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
 import com.lre.gitlabintegration.dto.testplan.TestPlan;
@@ -29,20 +31,47 @@ public class LreSyncService {
     private final GitScriptPackager scriptPackager;
     private final LreScriptManager scriptManager;
     private final LreTestPlanApiClient testPlanApiClient;
+    private final SyncJournal journal;
+    private final ScriptDriftReconciler driftReconciler;
 
     private static final int MESSAGE_LIMIT = 200;
     private static final String ACTION_UPLOAD = "UPLOAD";
     private static final String ACTION_DELETE = "DELETE";
+    private static final String SKIPPED = "Skipped, sync stopped: ";
 
 
     /**
      * Uploads scripts from Git to LRE
      *
+     * @param sourceRef revision the scripts were scanned at; bulk packaging downloads its archive
      * @return List of script changes with status
      */
     public List<ScriptChange> uploadScripts(
             SyncRequest req,
+            String sourceRef,
             List<GitLabCommit> commits
+    ) {
+        return uploadScripts(req, sourceRef, commits, null);
+    }
+
+    /**
+     * @param folderPrefix test plan folder the scripts' Git folders are placed under, or null for Subject
+     */
+    public List<ScriptChange> uploadScripts(
+            SyncRequest req,
+            String sourceRef,
+            List<GitLabCommit> commits,
+            String folderPrefix
+    ) {
+        return uploadScripts(req, sourceRef, commits, folderPrefix, true);
+    }
+
+    private List<ScriptChange> uploadScripts(
+            SyncRequest req,
+            String sourceRef,
+            List<GitLabCommit> commits,
+            String folderPrefix,
+            boolean reportEach
     ) {
         if (commits == null || commits.isEmpty()) {
             log.info("No commits to upload");
@@ -60,45 +89,62 @@ public class LreSyncService {
 
         List<ScriptChange> changes = new ArrayList<>();
 
-        for (GitLabCommit commit : commits) {
-            TestPlanCreationRequest info = PathUtils.fromGitPath(commit.getPath());
-
-            String folderPath = normalizePathWithSubject(info.getPath());
+        try (GitScriptPackager.PackagingSession packaging = scriptPackager.openSession(
+                req.getGitlabProjectId(), sourceRef, commits, req.getScriptRoots())) {
+            for (GitLabCommit commit : commits) {
+                ScriptChange change = uploadScript(req, commit, packaging, testPlans, folderPrefix);
+                if (reportEach) report(change);
+                changes.add(change);
+            }
+        }
 
-            String scriptName = info.getName();
-            String commitSha = shortSha(commit.getSha());
-            GitScriptPackager.PackagedScript packagedScript = null;
+        Counts counts = countStatuses(changes);
 
-            try {
-                log.debug("Preparing script for upload: {}", commit.getPath());
-                packagedScript = scriptPackager.prepare(req.getGitlabProjectId(), commit);
-                Script script = scriptManager.upload(domain, project, folderPath, packagedScript.zipPath(), testPlans);
+        log.info("Upload complete: {} succeeded, {} failed", counts.success(), counts.failed());
 
-                changes.add(ScriptChange.success(commit.getPath(), scriptName, commitSha, ACTION_UPLOAD, folderPath, script.getId()));
+        return changes;
+    }
 
-                log.debug("Successfully uploaded script: {}", scriptName);
+    private ScriptChange uploadScript(SyncRequest req, GitLabCommit commit,
+                                      GitScriptPackager.PackagingSession packaging, List<TestPlan> testPlans,
+                                      String folderPrefix) {
+        TestPlanCreationRequest info = PathUtils.fromGitPath(commit.getPath());
 
-            } catch (Exception e) {
-                String msg = truncate(rootMessage(e), MESSAGE_LIMIT);
+        String folderPath = testFolderPath(info, folderPrefix);
 
-                log.error("Failed to upload script '{}' (commit {}): {}", commit.getPath(), commitSha, msg, e);
+        String scriptName = info.getName();
+        String commitSha = shortSha(commit.getSha());
+        GitScriptPackager.PackagedScript packagedScript = null;
 
-                changes.add(
-                        ScriptChange.failure(
-                                commit.getPath(), scriptName, commitSha, ACTION_UPLOAD, msg, folderPath)
-                );
-            } finally {
-                if (packagedScript != null) {
-                    scriptPackager.cleanUp(packagedScript);
-                }
-            }
+        String stop = SyncControl.current().stopReason();
+        if (stop != null) {
+            return ScriptChange.failure(commit.getPath(), scriptName, commitSha, ACTION_UPLOAD, SKIPPED + stop, folderPath);
         }
 
-        Counts counts = countStatuses(changes);
+        try {
+            log.debug("Preparing script for upload: {}", commit.getPath());
+            packagedScript = packaging.prepare(commit);
+            Script script = scriptManager.upload(
+                    req.getLreDomain(), req.getLreProject(), folderPath, packagedScript.zipPath(), testPlans);
 
-        log.info("Upload complete: {} succeeded, {} failed", counts.success(), counts.failed());
+            log.debug("Successfully uploaded script: {}", scriptName);
+            journal.recordUpload(req, commit, script.getId());
+            // staged preview copies are not the synced scripts the drift check watches
+            if (folderPrefix == null) driftReconciler.recordUpload(req, commit, script);
 
-        return changes;
+            return ScriptChange.success(commit.getPath(), scriptName, commitSha, ACTION_UPLOAD, folderPath, script.getId());
+
+        } catch (Exception e) {
+            String msg = truncate(rootMessage(e), MESSAGE_LIMIT);
+
+            log.error("Failed to upload script '{}' (commit {}): {}", commit.getPath(), commitSha, msg, e);
+
+            return ScriptChange.failure(commit.getPath(), scriptName, commitSha, ACTION_UPLOAD, msg, folderPath);
+        } finally {
+            if (packagedScript != null) {
+                scriptPackager.cleanUp(packagedScript);
+            }
+        }
     }
 
     /**
@@ -107,6 +153,16 @@ public class LreSyncService {
      * @return List of script changes with status
      */
     public List<ScriptChange> deleteScripts(SyncRequest req, List<SyncStateEntry> commits) {
+        return deleteScripts(req, commits, null);
+    }
+
+    /**
+     * Scripts under a folder prefix were uploaded by this service, so they are deleted
+     * by their recorded id when there is one.
+     *
+     * @param folderPrefix test plan folder the scripts were uploaded under, or null for Subject
+     */
+    public List<ScriptChange> deleteScripts(SyncRequest req, List<SyncStateEntry> commits, String folderPrefix) {
         if (commits == null || commits.isEmpty()) {
             log.info("No scripts to delete");
             return List.of();
@@ -123,15 +179,27 @@ public class LreSyncService {
 
             TestPlanCreationRequest info = PathUtils.fromGitPath(stateEntry.path());
 
-            String folderPath = normalizePathWithSubject(info.getPath());
+            String folderPath = testFolderPath(info, folderPrefix);
 
             String scriptName = info.getName();
 
+            String stop = SyncControl.current().stopReason();
+            if (stop != null) {
+                changes.add(report(ScriptChange.failure(
+                        stateEntry.path(), scriptName, commitSha, ACTION_DELETE, SKIPPED + stop, folderPath)));
+                continue;
+            }
+
             try {
-                scriptManager.delete(req.getLreDomain(), req.getLreProject(), folderPath, scriptName);
+                if (folderPrefix != null && stateEntry.lreScriptId() != null) {
+                    scriptManager.deleteById(req.getLreDomain(), req.getLreProject(), stateEntry.lreScriptId());
+                } else {
+                    scriptManager.delete(req.getLreDomain(), req.getLreProject(), folderPath, scriptName);
+                }
+                journal.recordDelete(req, stateEntry.path());
 
-                changes.add(
-                        ScriptChange.success(stateEntry.path(), scriptName, commitSha, ACTION_DELETE, folderPath, null));
+                changes.add(report(
+                        ScriptChange.success(stateEntry.path(), scriptName, commitSha, ACTION_DELETE, folderPath, null)));
 
                 log.debug("Successfully deleted script: {}", scriptName);
 
@@ -140,7 +208,8 @@ public class LreSyncService {
 
                 log.error("Failed to delete script '{}' (commit {}): {}", stateEntry.path(), commitSha, msg, e);
 
-                changes.add(ScriptChange.failure(stateEntry.path(), scriptName, commitSha, ACTION_DELETE, msg, folderPath));
+                changes.add(report(
+                        ScriptChange.failure(stateEntry.path(), scriptName, commitSha, ACTION_DELETE, msg, folderPath)));
             }
         }
 
@@ -152,6 +221,72 @@ public class LreSyncService {
         return changes;
     }
 
+    /**
+     * Moves scripts whose folder was moved or renamed in Git. LRE has no API to relocate
+     * a script, so each one is uploaded to its new folder before the old script is
+     * deleted. The old script stays if the upload fails.
+     *
+     * @return one MOVE change per move; a failed change still carries the new script id
+     * when only the delete of the old script failed
+     */
+    public List<ScriptChange> moveScripts(SyncRequest req, String sourceRef, List<ScriptMove> moves) {
+        if (moves == null || moves.isEmpty()) {
+            return List.of();
+        }
+
+        log.info("Moving {} scripts in LRE", moves.size());
+
+        // Reported once as MOVE below, not as an upload of their new path
+        List<ScriptChange> uploads = uploadScripts(
+                req, sourceRef, moves.stream().map(ScriptMove::to).toList(), null, false);
+        List<ScriptChange> changes = new ArrayList<>(moves.size());
+
+        for (int i = 0; i < moves.size(); i++) {
+            changes.add(report(completeMove(req, moves.get(i), uploads.get(i))));
+        }
+
+        Counts counts = countStatuses(changes);
+        log.info("Move complete: {} succeeded, {} failed", counts.success(), counts.failed());
+        return changes;
+    }
+
+    private ScriptChange completeMove(SyncRequest req, ScriptMove move, ScriptChange upload) {
+        String from = move.from().path();
+
+        if (!STATUS_SUCCESS.equals(upload.status())) {
+            return ScriptChange.moved(upload.path(), from, upload.scriptName(), upload.commitSha(),
+                    STATUS_FAILED, upload.message(), upload.testFolderPath(), null);
+        }
+
+        try {
+            deleteOldScript(req, move.from());
+            journal.recordDelete(req, from);
+            return ScriptChange.moved(upload.path(), from, upload.scriptName(), upload.commitSha(),
+                    STATUS_SUCCESS, "Moved from " + from, upload.testFolderPath(), upload.lreScriptId());
+
+        } catch (Exception e) {
+            String msg = truncate("Uploaded, but old script not deleted: " + rootMessage(e), MESSAGE_LIMIT);
+            log.error("Failed to delete moved script '{}': {}", from, msg, e);
+            return ScriptChange.moved(upload.path(), from, upload.scriptName(), upload.commitSha(),
+                    STATUS_FAILED, msg, upload.testFolderPath(), upload.lreScriptId());
+        }
+    }
+
+    private void deleteOldScript(SyncRequest req, SyncStateEntry entry) {
+        if (entry.lreScriptId() != null) {
+            scriptManager.deleteById(req.getLreDomain(), req.getLreProject(), entry.lreScriptId());
+            return;
+        }
+
+        TestPlanCreationRequest info = PathUtils.fromGitPath(entry.path());
+        scriptManager.delete(req.getLreDomain(), req.getLreProject(),
+                normalizePathWithSubject(info.getPath()), info.getName());
+    }
+
+    private static String testFolderPath(TestPlanCreationRequest info, String folderPrefix) {
+        return normalizePathWithSubject(folderPrefix == null ? info.getPath() : folderPrefix + "/" + info.getPath());
+    }
+
     /**
      * Logs a summary of sync operations
      */
@@ -201,7 +336,17 @@ public class LreSyncService {
     }
 
 
+    /**
+     * Hands a finished change to the progress listener of the running sync, if any.
+     */
+    private static ScriptChange report(ScriptChange change) {
+        SyncControl.current().report(change);
+        return change;
+    }
+
+
     private record Counts(long success, long failed) {
     }
 
+
 }
@@ -0,0 +1,186 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.client.api.GitLabApiClient;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCompareResult;
+import com.lre.gitlabintegration.dto.gitlab.GitLabMergeRequest;
+import com.lre.gitlabintegration.dto.sync.ChangeGroups;
+import com.lre.gitlabintegration.dto.sync.ScriptChange;
+import com.lre.gitlabintegration.dto.sync.ScriptMove;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncResponse;
+import com.lre.gitlabintegration.dto.sync.SyncResult;
+import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
+import com.lre.gitlabintegration.exceptions.LreException;
+import com.lre.gitlabintegration.repository.PreviewStateRepository;
+import com.lre.gitlabintegration.repository.SyncStateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stages the scripts a merge request changes in an isolated LRE test folder so a
+ * feature branch can be smoke-tested without a full sync. Only the script folders in
+ * the MR diff are scanned and packaged, and their state is kept apart from the
+ * mainline sync state.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MergeRequestPreviewService {
+
+    private final SyncExecutionManager executionManager;
+    private final SyncModeResolver modeResolver;
+    private final SyncAnalyzer analyzer;
+    private final GitRepositoryScanner scanner;
+    private final LreSyncService lreSyncService;
+    private final GitLabApiClient gitLabApiClient;
+    private final SyncStateRepository stateRepository;
+    private final PreviewStateRepository previewRepository;
+    private final GitLabProperties gitLabProperties;
+    private final LreProperties lreProperties;
+
+    /**
+     * Brings the staging folder of the MR in line with its current head: changed
+     * scripts are uploaded again, scripts the MR no longer touches are removed.
+     */
+    public SyncResponse preview(SyncRequest req, long mergeRequestIid) {
+        return executionManager.execute(req, () -> {
+            long projectId = req.getGitlabProjectId();
+            GitLabMergeRequest mr = gitLabApiClient.getMergeRequest(projectId, mergeRequestIid);
+            if (mr == null || mr.sha() == null) {
+                throw new LreException("Merge request !" + mergeRequestIid + " not found");
+            }
+            if (!mr.isOpen()) {
+                throw new LreException("Merge request !" + mergeRequestIid + " is " + mr.state());
+            }
+
+            List<SyncStateEntry> staged = previewRepository.findStaged(req, mergeRequestIid);
+            List<GitLabCommit> current = scanChangedScripts(req, mergeRequestIid, mr.sha(), staged);
+
+            SyncResult result = analyzer.analyze(staged, current);
+            String folder = stagingFolder(req, mergeRequestIid);
+
+            log.info("Preview of !{} at {} into {}: upload={}, delete={}, unchanged={}",
+                    mergeRequestIid, mr.sha(), folder, result.scriptsToUpload().size() + result.scriptsToMove().size(),
+                    result.scriptsToDelete().size() + result.scriptsToMove().size(), result.unchangedScripts().size());
+
+            // A staged copy is cheap to replace, so moves are staged as upload plus delete
+            List<GitLabCommit> uploads = new ArrayList<>(result.scriptsToUpload());
+            List<SyncStateEntry> deletes = new ArrayList<>(result.scriptsToDelete());
+            for (ScriptMove move : result.scriptsToMove()) {
+                uploads.add(move.to());
+                deletes.add(move.from());
+            }
+
+            scanner.resolveMissingCommits(projectId, mr.sha(), uploads);
+
+            List<ScriptChange> uploadChanges = lreSyncService.uploadScripts(req, mr.sha(), uploads, folder);
+            List<ScriptChange> deleteChanges = lreSyncService.deleteScripts(req, deletes, folder);
+            ChangeGroups groups = SyncResponseBuilder.categorize(uploadChanges, deleteChanges, List.of());
+
+            saveStaged(req, mergeRequestIid, uploads, groups);
+
+            return SyncResponseBuilder.incremental(groups.uploadedSuccess(), groups.deletedSuccess(), List.of(),
+                    SyncResponseBuilder.buildUnchangedList(result.unchangedScripts()), groups.failed());
+        });
+    }
+
+    /**
+     * Removes every script staged for the MR, e.g. once it is merged or closed.
+     */
+    public SyncResponse cleanup(SyncRequest req, long mergeRequestIid) {
+        return executionManager.execute(req, () -> {
+            List<SyncStateEntry> staged = previewRepository.findStaged(req, mergeRequestIid);
+            if (staged.isEmpty()) {
+                log.info("Nothing staged for !{} in {}", mergeRequestIid, req.getLreProject());
+                return SyncResponseBuilder.noChanges(List.of());
+            }
+
+            List<ScriptChange> deleteChanges =
+                    lreSyncService.deleteScripts(req, staged, stagingFolder(req, mergeRequestIid));
+            ChangeGroups groups = SyncResponseBuilder.categorize(List.of(), deleteChanges, List.of());
+
+            previewRepository.deleteStaged(req, mergeRequestIid,
+                    groups.deletedSuccess().stream().map(ScriptChange::path).toList());
+
+            return SyncResponseBuilder.incremental(
+                    List.of(), groups.deletedSuccess(), List.of(), List.of(), groups.failed());
+        });
+    }
+
+    /**
+     * Script folders touched by the MR diff, at the MR head. Folders known from the
+     * mainline state or an earlier preview catch changes to files other than the .usr.
+     */
+    private List<GitLabCommit> scanChangedScripts(SyncRequest req, long mergeRequestIid, String headSha,
+                                                  List<SyncStateEntry> staged) {
+        long projectId = req.getGitlabProjectId();
+        List<String> changedPaths = changedPaths(projectId, mergeRequestIid);
+
+        Set<String> knownFolders = new HashSet<>();
+        stateRepository.findPreviousState(req).forEach(e -> knownFolders.add(e.path()));
+        staged.forEach(e -> knownFolders.add(e.path()));
+        knownFolders.remove(null);
+
+        List<String> roots = modeResolver.scriptRoots(req);
+        Set<String> affected = ScriptFolderMapper.affectedFolders(changedPaths, knownFolders);
+        affected.removeIf(folder -> !ScriptFolderMapper.isUnderAny(folder, roots));
+
+        log.info("Merge request !{} changes {} path(s) in {} script folder(s)",
+                mergeRequestIid, changedPaths.size(), affected.size());
+
+        return affected.isEmpty() ? List.of() : scanner.scanScriptFolders(projectId, headSha, affected);
+    }
+
+    private List<String> changedPaths(long projectId, long mergeRequestIid) {
+        List<String> paths = new ArrayList<>();
+        int page = 1;
+
+        while (true) {
+            List<GitLabCompareResult.GitLabDiff> diffs =
+                    gitLabApiClient.getMergeRequestDiffs(page, projectId, mergeRequestIid);
+            for (GitLabCompareResult.GitLabDiff diff : diffs) {
+                paths.add(diff.oldPath());
+                paths.add(diff.newPath());
+            }
+            if (diffs.isEmpty() || diffs.size() < gitLabProperties.getPerPageRecords()) {
+                break;
+            }
+            page++;
+        }
+        return paths;
+    }
+
+    private void saveStaged(SyncRequest req, long mergeRequestIid, List<GitLabCommit> uploads, ChangeGroups groups) {
+        Map<String, GitLabCommit> uploadsByPath = new HashMap<>();
+        uploads.forEach(c -> uploadsByPath.put(c.getPath(), c));
+
+        List<GitLabCommit> written = new ArrayList<>();
+        Map<String, Integer> idsByPath = new HashMap<>();
+        for (ScriptChange change : groups.uploadedSuccess()) {
+            GitLabCommit commit = uploadsByPath.get(change.path());
+            if (commit == null) continue;
+            written.add(commit);
+            if (change.lreScriptId() != null) idsByPath.put(change.path(), change.lreScriptId());
+        }
+
+        previewRepository.upsertStaged(req, mergeRequestIid, written, idsByPath);
+        previewRepository.deleteStaged(req, mergeRequestIid,
+                groups.deletedSuccess().stream().map(ScriptChange::path).toList());
+    }
+
+    private String stagingFolder(SyncRequest req, long mergeRequestIid) {
+        return lreProperties.getPreview().getStagingFolder()
+                + "/" + req.getGitlabProjectId() + "/MR-" + mergeRequestIid;
+    }
+}
@@ -0,0 +1,108 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncResponse;
+import com.lre.gitlabintegration.exceptions.LreException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.lre.gitlabintegration.services.git.sync.SyncResponseBuilder.failureResponse;
+
+/**
+ * Syncs one GitLab project/ref to several LRE projects. HEAD, scan and script packages
+ * are shared, while every target keeps its own lock, state and result.
+ */
+@Slf4j
+@Service
+public class MultiTargetSyncService {
+
+    private final GitSyncService gitSyncService;
+    private final SyncModeResolver modeResolver;
+    private final GitScriptPackager scriptPackager;
+    private final ThreadPoolExecutor executor;
+
+    public MultiTargetSyncService(GitSyncService gitSyncService,
+                                  SyncModeResolver modeResolver,
+                                  GitScriptPackager scriptPackager,
+                                  LreProperties lreProperties) {
+        this.gitSyncService = gitSyncService;
+        this.modeResolver = modeResolver;
+        this.scriptPackager = scriptPackager;
+
+        int parallelism = Math.max(1, lreProperties.getMaxParallelTargets());
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("sync-target-"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param requests targets of the same GitLab project and ref
+     * @return one response per request, in request order
+     */
+    public List<SyncResponse> syncAll(List<SyncRequest> requests) {
+        SyncRequest first = requests.get(0);
+        SharedScan shared = modeResolver.shareScan(first);
+        String headSha = shared.headSha();
+
+        log.info("Multi-target sync of project {} ref {} to {} LRE project(s)",
+                first.getGitlabProjectId(), first.getRef(), requests.size());
+
+        GitScriptPackager.SharedPackages packages = sharePackages(first.getGitlabProjectId(), headSha);
+        try {
+            List<Future<SyncResponse>> futures = new ArrayList<>(requests.size());
+            for (SyncRequest request : requests) {
+                futures.add(executor.submit(() -> gitSyncService.sync(request, shared)));
+            }
+            return collect(requests, futures);
+        } finally {
+            if (packages != null) packages.close();
+        }
+    }
+
+    /**
+     * @return null when nothing can be shared; targets then package on their own
+     */
+    private GitScriptPackager.SharedPackages sharePackages(long projectId, String headSha) {
+        if (headSha == null) return null;
+        try {
+            return scriptPackager.sharePackages(projectId, headSha);
+        } catch (LreException e) {
+            log.info("{}; packaging per target", e.getMessage());
+            return null;
+        }
+    }
+
+    private List<SyncResponse> collect(List<SyncRequest> requests, List<Future<SyncResponse>> futures) {
+        List<SyncResponse> responses = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            SyncRequest request = requests.get(i);
+            try {
+                responses.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                responses.add(failureResponse("SYNC_INTERRUPTED", e, request));
+            } catch (ExecutionException e) {
+                log.error("Sync failed for project: {}", request.getLreProject(), e.getCause());
+                responses.add(failureResponse("SYNC_EXCEPTION", new LreException("Sync failed", e.getCause()), request));
+            }
+        }
+        return responses;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
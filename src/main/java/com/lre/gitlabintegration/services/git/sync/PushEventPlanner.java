@@ -0,0 +1,115 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.gitlab.GitLabPushEvent;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
+import com.lre.gitlabintegration.repository.SyncHeadRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Precomputes sync plans for every LRE target registered for a pushed ref, so the CI
+ * job's sync call finds the scan already done.
+ */
+@Slf4j
+@Service
+public class PushEventPlanner {
+
+    private final SyncModeResolver modeResolver;
+    private final SyncPlanCache planCache;
+    private final SyncHeadRepository headRepository;
+    private final int compareMaxFiles;
+    private final ThreadPoolExecutor executor;
+
+    public PushEventPlanner(SyncModeResolver modeResolver,
+                            SyncPlanCache planCache,
+                            SyncHeadRepository headRepository,
+                            GitLabProperties gitLabProperties) {
+        this.modeResolver = modeResolver;
+        this.planCache = planCache;
+        this.headRepository = headRepository;
+        this.compareMaxFiles = gitLabProperties.getCompareMaxFiles();
+
+        // Planning is best effort: when the queue is full the oldest push is dropped
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, gitLabProperties.getWebhook().getQueueCapacity())),
+                new CustomizableThreadFactory("sync-plan-"),
+                new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    /**
+     * @return false when the event is not something a plan can be computed for
+     */
+    public boolean submit(GitLabPushEvent event) {
+        if (event.projectId() == null || event.refName() == null || event.isRefDeleted()) {
+            return false;
+        }
+
+        try {
+            executor.execute(() -> planTargets(event));
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Sync planner is shut down, ignoring push to {} of project {}", event.ref(), event.projectId());
+            return false;
+        }
+    }
+
+    private void planTargets(GitLabPushEvent event) {
+        List<SyncRequest> targets = headRepository.findTargets(event.projectId(), event.refName());
+        if (targets.isEmpty()) {
+            log.debug("No synced targets for ref {} of project {}", event.refName(), event.projectId());
+            return;
+        }
+
+        for (SyncRequest target : targets) {
+            try {
+                planTarget(target, event);
+            } catch (Exception e) {
+                log.warn("Failed to precompute sync plan for {}/{} at {}: {}",
+                        target.getLreDomain(), target.getLreProject(), event.after(), e.getMessage());
+            }
+        }
+    }
+
+    private void planTarget(SyncRequest target, GitLabPushEvent event) {
+        String headSha = event.after();
+        target.setScriptRoots(modeResolver.scriptRoots(target));
+        SyncHeadRepository.SyncHead synced = modeResolver.syncedHead(target);
+        if (synced == null || headSha.equals(synced.headSha()) || planCache.contains(target, headSha)) {
+            return;
+        }
+
+        List<SyncStateEntry> previous = modeResolver.previousInScope(target);
+        if (previous.isEmpty()) return;
+
+        // The event's file lists are only complete for a push straight on top of the synced HEAD
+        List<String> changedPaths = null;
+        if (event.listsAllCommits() && synced.headSha().equals(event.before())) {
+            List<String> paths = event.changedPaths();
+            if (paths.size() < compareMaxFiles) changedPaths = paths;
+        }
+
+        long started = System.currentTimeMillis();
+        List<GitLabCommit> current = modeResolver.plan(target, synced.headSha(), headSha, previous, changedPaths);
+        planCache.put(target, synced.headSha(), headSha, current);
+
+        log.info("Precomputed sync plan for {}/{} at {} ({} scripts, {} ms, from {})",
+                target.getLreDomain(), target.getLreProject(), headSha, current.size(),
+                System.currentTimeMillis() - started, changedPaths != null ? "push event" : "repository");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,270 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.client.api.LreScriptApiClient;
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.lrescript.Script;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
+import com.lre.gitlabintegration.repository.ScriptDriftRepository;
+import com.lre.gitlabintegration.repository.ScriptDriftRepository.Observation;
+import com.lre.gitlabintegration.repository.SyncHeadRepository;
+import com.lre.gitlabintegration.repository.SyncLockRepository;
+import com.lre.gitlabintegration.repository.SyncStateRepository;
+import com.lre.gitlabintegration.services.lre.authsession.LreSessionManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.lre.gitlabintegration.repository.ScriptDriftRepository.DRIFT_DELETED;
+import static com.lre.gitlabintegration.repository.ScriptDriftRepository.DRIFT_MODIFIED;
+
+/**
+ * Detects scripts that were edited or deleted directly in LRE. Each synced LRE
+ * project's script list is fetched once per run and compared by id and
+ * LastModifyDate with what was seen right after the last upload. The upload records
+ * that baseline itself; a script without one, such as one uploaded while the check was
+ * off, is baselined by the next run.
+ * <p>
+ * Runs on its own small pool and skips LRE projects that are being synced, so it
+ * never competes with interactive syncs for locks or LRE sessions.
+ */
+@Slf4j
+@Service
+public class ScriptDriftReconciler {
+
+    private static final String REQUEUED = "REQUEUED";
+
+    private final LreScriptApiClient scriptApiClient;
+    private final LreSessionManager lreSessionManager;
+    private final SyncStateRepository stateRepository;
+    private final SyncHeadRepository headRepository;
+    private final SyncLockRepository lockRepository;
+    private final ScriptDriftRepository driftRepository;
+    private final MeterRegistry meterRegistry;
+    private final LreProperties.Drift drift;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public ScriptDriftReconciler(LreScriptApiClient scriptApiClient,
+                                 LreSessionManager lreSessionManager,
+                                 SyncStateRepository stateRepository,
+                                 SyncHeadRepository headRepository,
+                                 SyncLockRepository lockRepository,
+                                 ScriptDriftRepository driftRepository,
+                                 MeterRegistry meterRegistry,
+                                 LreProperties lreProperties) {
+        this.scriptApiClient = scriptApiClient;
+        this.lreSessionManager = lreSessionManager;
+        this.stateRepository = stateRepository;
+        this.headRepository = headRepository;
+        this.lockRepository = lockRepository;
+        this.driftRepository = driftRepository;
+        this.meterRegistry = meterRegistry;
+        this.drift = lreProperties.getDrift();
+
+        int parallelism = Math.max(1, drift.getMaxParallel());
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("lre-drift-"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Scheduled(
+            initialDelayString = "${lre.drift.initial-delay-ms:60000}",
+            fixedDelayString = "${lre.drift.fixed-delay-ms:3600000}"
+    )
+    public void reconcile() {
+        if (!drift.isEnabled()) return;
+        if (!running.compareAndSet(false, true)) {
+            log.info("Skipping LRE drift check (previous run still running)");
+            return;
+        }
+
+        try {
+            Map<String, List<SyncRequest>> byLreProject = new LinkedHashMap<>();
+            for (SyncRequest target : stateRepository.findSyncedTargets()) {
+                String key = (target.getLreDomain() + "/" + target.getLreProject()).toLowerCase(Locale.ROOT);
+                byLreProject.computeIfAbsent(key, k -> new ArrayList<>()).add(target);
+            }
+
+            List<Callable<Integer>> tasks = new ArrayList<>(byLreProject.size());
+            byLreProject.values().forEach(targets -> tasks.add(() -> reconcileLreProject(targets)));
+
+            int drifted = 0;
+            for (var future : executor.invokeAll(tasks)) {
+                try {
+                    drifted += future.get();
+                } catch (Exception e) {
+                    log.warn("LRE drift check failed: {}", e.getMessage());
+                }
+            }
+            log.info("LRE drift check done: {} LRE project(s), {} drifted script(s)", byLreProject.size(), drifted);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("LRE drift check failed", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Takes the baseline of a script the sync just uploaded, so an LRE edit made before
+     * the next run is flagged instead of being taken as the baseline. Best effort: the
+     * next run baselines the script when this fails.
+     *
+     * @param script the upload response
+     */
+    public void recordUpload(SyncRequest request, GitLabCommit commit, Script script) {
+        if (!drift.isEnabled() || script == null || script.getId() == null) return;
+
+        String version = stateVersion(commit.getFingerprint(), commit.getSha());
+        if (version == null) return;
+
+        try {
+            String lastModifyDate = script.getLastModifyDate();
+            if (lastModifyDate == null) {
+                Script uploaded = scriptApiClient.getScriptById(
+                        request.getLreDomain(), request.getLreProject(), script.getId());
+                if (uploaded == null || uploaded.getLastModifyDate() == null) return;
+                lastModifyDate = uploaded.getLastModifyDate();
+            }
+            driftRepository.saveAll(request, List.of(
+                    new Observation(commit.getPath(), script.getId(), version, lastModifyDate, null)));
+        } catch (Exception e) {
+            log.warn("Could not record drift baseline of {}: {}", commit.getPath(), e.getMessage());
+        }
+    }
+
+    /**
+     * @param targets GitLab projects synced into the same LRE project
+     * @return number of newly drifted scripts
+     */
+    private int reconcileLreProject(List<SyncRequest> targets) {
+        SyncRequest first = targets.get(0);
+        String domain = first.getLreDomain();
+        String project = first.getLreProject();
+
+        if (lockRepository.isLocked(domain, project)) {
+            log.debug("Skipping drift check of {}/{}: sync in progress", domain, project);
+            return 0;
+        }
+
+        lreSessionManager.ensureAuthenticated(domain, project);
+        List<Script> scripts = scriptApiClient.getAllScripts(domain, project);
+
+        Map<Integer, Script> byId = new HashMap<>();
+        if (scripts != null) {
+            scripts.stream().filter(s -> s.getId() != null).forEach(s -> byId.put(s.getId(), s));
+        }
+
+        int drifted = 0;
+        for (SyncRequest target : targets) {
+            // A sync may have started while the list was fetched; its state is about to change
+            if (lockRepository.isLocked(domain, project)) return drifted;
+            drifted += reconcileTarget(target, byId);
+        }
+        return drifted;
+    }
+
+    private int reconcileTarget(SyncRequest target, Map<Integer, Script> lreScripts) {
+        Map<String, Observation> seen = new HashMap<>();
+        driftRepository.findByTarget(target).forEach(o -> seen.put(o.path(), o));
+
+        List<Observation> updates = new ArrayList<>();
+        List<String> driftedPaths = new ArrayList<>();
+
+        for (SyncStateEntry entry : stateRepository.findPreviousState(target)) {
+            if (entry.isEmpty() || entry.lreScriptId() == null) continue;
+
+            String version = stateVersion(entry.fingerprint(), entry.commitSha());
+            if (version == null) continue; // already waiting for a re-upload
+
+            Observation previous = seen.get(entry.path());
+            Script script = lreScripts.get(entry.lreScriptId());
+
+            if (script == null) {
+                if (previous == null || !DRIFT_DELETED.equals(previous.driftType())) {
+                    driftedPaths.add(entry.path());
+                    updates.add(new Observation(entry.path(), entry.lreScriptId(), version, null, DRIFT_DELETED));
+                }
+                continue;
+            }
+
+            boolean rebaseline = previous == null
+                    || previous.lreScriptId() != entry.lreScriptId()
+                    || !version.equals(previous.stateVersion());
+            if (rebaseline) {
+                updates.add(new Observation(entry.path(), entry.lreScriptId(), version, script.getLastModifyDate(), null));
+            } else if (previous.driftType() == null
+                    && !Objects.equals(previous.lastModifyDate(), script.getLastModifyDate())) {
+                driftedPaths.add(entry.path());
+                updates.add(new Observation(entry.path(), entry.lreScriptId(), version,
+                        previous.lastModifyDate(), DRIFT_MODIFIED));
+            }
+        }
+
+        if (!driftedPaths.isEmpty()) {
+            log.warn("{} script(s) of {}/{} changed outside of Git: {}",
+                    driftedPaths.size(), target.getLreDomain(), target.getLreProject(), driftedPaths);
+            updates.forEach(o -> {
+                if (o.driftType() != null) {
+                    meterRegistry.counter("lre.drift.detected", "type", o.driftType()).increment();
+                }
+            });
+            if (drift.isRequeue()) updates = requeue(target, driftedPaths, updates);
+        }
+
+        driftRepository.saveAll(target, updates);
+        driftRepository.deleteOrphans(target);
+        return driftedPaths.size();
+    }
+
+    /**
+     * The next sync rescans the ref and uploads the drifted scripts again. Their
+     * baseline is retaken once the new upload shows up in the sync state.
+     */
+    private List<Observation> requeue(SyncRequest target, List<String> paths, List<Observation> updates) {
+        stateRepository.markForReupload(target, paths);
+        headRepository.clear(target);
+
+        return updates.stream()
+                .map(o -> o.driftType() == null ? o
+                        : new Observation(o.path(), o.lreScriptId(), REQUEUED, o.lastModifyDate(), o.driftType()))
+                .toList();
+    }
+
+    /**
+     * Same for a sync state row and the commit it was saved from.
+     *
+     * @return null for a row whose version was cleared for a re-upload
+     */
+    private static String stateVersion(String fingerprint, String commitSha) {
+        if (fingerprint != null && !fingerprint.isBlank()) return fingerprint;
+        if (commitSha != null && !commitSha.isBlank()) return commitSha;
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
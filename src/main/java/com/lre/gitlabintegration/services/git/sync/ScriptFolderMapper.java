@@ -0,0 +1,111 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maps changed file paths onto the script folders they belong to.
+ */
+@UtilityClass
+public class ScriptFolderMapper {
+
+    /**
+     * A changed path affects a known script folder when it lies anywhere below it,
+     * and creates or removes a script folder when it is a .usr file.
+     *
+     * @param changedPaths       repository-relative file paths, old and new names alike
+     * @param knownScriptFolders script folders from the last synced state
+     * @return the affected folders, sorted
+     */
+    public static Set<String> affectedFolders(Collection<String> changedPaths, Collection<String> knownScriptFolders) {
+        Set<String> known = new HashSet<>(knownScriptFolders);
+        Set<String> affected = new TreeSet<>();
+
+        for (String path : changedPaths) {
+            if (path == null || path.isBlank()) continue;
+
+            if (path.endsWith(".usr") && path.lastIndexOf('/') > 0) {
+                affected.add(parentOf(path));
+            }
+
+            String folder = parentOf(path);
+            while (folder != null) {
+                if (known.contains(folder)) {
+                    affected.add(folder);
+                    break;
+                }
+                folder = parentOf(folder);
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Trims slashes, drops blanks and roots nested in another root.
+     *
+     * @return distinct roots, sorted; empty when the whole repository is to be scanned
+     */
+    public static List<String> normalizeRoots(Collection<String> roots) {
+        if (roots == null || roots.isEmpty()) return List.of();
+
+        Set<String> sorted = new TreeSet<>();
+        for (String root : roots) {
+            if (root == null) continue;
+            String trimmed = root.trim().replaceAll("^/+|/+$", "");
+            if (trimmed.isEmpty()) return List.of(); // the repository root covers everything
+            sorted.add(trimmed);
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String root : sorted) {
+            if (result.isEmpty() || !isUnderAny(root, result)) result.add(root);
+        }
+        return result;
+    }
+
+    /**
+     * True when no roots are given or the path equals or lies below one of them.
+     */
+    public static boolean isUnderAny(String path, Collection<String> roots) {
+        if (roots.isEmpty()) return true;
+        for (String root : roots) {
+            if (path.equals(root) || path.startsWith(root + "/")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Top-level script folder the path belongs to: the first folder below its script
+     * root, or below the repository root. Scripts directly in the repository root share
+     * the empty key because they all land in the same LRE test folder.
+     */
+    public static String shardKey(String path, Collection<String> roots) {
+        String prefix = "";
+        String rest = path;
+        for (String root : roots) {
+            if (path.startsWith(root + "/")) {
+                prefix = root + "/";
+                rest = path.substring(prefix.length());
+                break;
+            }
+        }
+
+        int slash = rest.indexOf('/');
+        if (slash > 0) return prefix + rest.substring(0, slash);
+        return prefix.isEmpty() ? "" : prefix + rest;
+    }
+
+    /**
+     * @return the parent folder, or null for a top-level entry
+     */
+    public static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : null;
+    }
+}
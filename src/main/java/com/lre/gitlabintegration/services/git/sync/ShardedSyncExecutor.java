@@ -0,0 +1,378 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.lre.gitlabintegration.client.api.LreTestPlanApiClient;
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.ChangeGroups;
+import com.lre.gitlabintegration.dto.sync.ScriptChange;
+import com.lre.gitlabintegration.dto.sync.ScriptMove;
+import com.lre.gitlabintegration.dto.sync.ShardScript;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncResult;
+import com.lre.gitlabintegration.dto.sync.SyncShard;
+import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
+import com.lre.gitlabintegration.dto.testplan.TestPlan;
+import com.lre.gitlabintegration.exceptions.LreException;
+import com.lre.gitlabintegration.repository.SyncShardRepository;
+import com.lre.gitlabintegration.repository.SyncShardRepository.ShardResult;
+import com.lre.gitlabintegration.repository.SyncShardRepository.ShardRow;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.lre.gitlabintegration.repository.SyncShardRepository.STATUS_DONE;
+import static com.lre.gitlabintegration.repository.SyncShardRepository.STATUS_FAILED;
+
+/**
+ * Splits the changes of a large sync into shards by top-level script folder. Shards
+ * go into a shared work table where local worker threads, and with remote workers
+ * enabled other instances, claim and run them. The calling sync waits for all shards
+ * and merges their results.
+ */
+@Slf4j
+@Service
+public class ShardedSyncExecutor {
+
+    private final SyncShardRepository shardRepository;
+    private final SyncShardWorker worker;
+    private final LreScriptManager scriptManager;
+    private final LreTestPlanApiClient testPlanApiClient;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader shardReader;
+    private final ObjectReader resultReader;
+    private final GitLabProperties.Sharding sharding;
+    private final ThreadPoolExecutor executor;
+    private final String workerId;
+    private final SyncShutdownCoordinator shutdownCoordinator;
+    private final AtomicBoolean polling = new AtomicBoolean(false);
+
+    public ShardedSyncExecutor(SyncShardRepository shardRepository,
+                               SyncShardWorker worker,
+                               LreScriptManager scriptManager,
+                               LreTestPlanApiClient testPlanApiClient,
+                               ObjectMapper objectMapper,
+                               GitLabProperties gitLabProperties,
+                               SyncShutdownCoordinator shutdownCoordinator) {
+        this.shardRepository = shardRepository;
+        this.shutdownCoordinator = shutdownCoordinator;
+        this.worker = worker;
+        this.scriptManager = scriptManager;
+        this.testPlanApiClient = testPlanApiClient;
+        this.objectMapper = objectMapper;
+        this.shardReader = objectMapper.readerFor(SyncShard.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.resultReader = objectMapper.readerFor(ChangeGroups.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.sharding = gitLabProperties.getSharding();
+        this.workerId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+        int threads = Math.max(1, sharding.getWorkerThreads());
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("sync-shard-"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the changes of result as shards and commits state per shard.
+     *
+     * @return the merged results, or null when sharding is off or the sync is too small
+     */
+    public ChangeGroups execute(SyncRequest req, String sourceRef, SyncResult result) {
+        if (!sharding.isEnabled() || workSize(result) < sharding.getMinScripts()) return null;
+
+        Map<String, ShardBuilder> byFolder = groupByFolder(req, result);
+        List<SyncShard> shards = pack(req, sourceRef, byFolder);
+        if (shards.size() < 2) return null;
+
+        prepareFolders(req, byFolder.keySet());
+
+        String jobId = UUID.randomUUID().toString();
+        try {
+            for (int i = 0; i < shards.size(); i++) {
+                shardRepository.insert(jobId, i, shards.get(i).key(), toJson(shards.get(i)));
+            }
+            log.info("Sync of project {} split into {} shard(s), job {}", req.getLreProject(), shards.size(), jobId);
+
+            runLocally(jobId, Math.min(sharding.getWorkerThreads(), shards.size()));
+            awaitRemaining(jobId);
+            return mergeResults(jobId);
+
+        } finally {
+            shardRepository.deleteJob(jobId);
+        }
+    }
+
+    /**
+     * Lets this instance work on shards created by other instances. They run on the
+     * shard workers, so the shared scheduler thread is free for other tasks.
+     */
+    @Scheduled(fixedDelayString = "${gitlab.sharding.poll-interval:PT2S}")
+    public void runPendingShards() {
+        if (!sharding.isEnabled() || !sharding.isRemoteWorkers()) return;
+        if (!shutdownCoordinator.isAccepting()) return;
+        if (!polling.compareAndSet(false, true)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    drain(null);
+                } catch (Exception e) {
+                    log.warn("Polling for sync shards failed: {}", e.getMessage());
+                } finally {
+                    polling.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            polling.set(false);
+        }
+    }
+
+    private static int workSize(SyncResult result) {
+        return result.scriptsToUpload().size() + result.scriptsToDelete().size() + result.scriptsToMove().size();
+    }
+
+    /**
+     * Groups changes by top-level script folder. A move belongs to its new folder.
+     */
+    private static Map<String, ShardBuilder> groupByFolder(SyncRequest req, SyncResult result) {
+        List<String> roots = req.getScriptRoots() == null ? List.of() : req.getScriptRoots();
+        Map<String, ShardBuilder> byKey = new TreeMap<>();
+
+        for (GitLabCommit upload : result.scriptsToUpload()) {
+            builder(byKey, upload.getPath(), roots).uploads.add(ShardScript.of(upload));
+        }
+        for (SyncStateEntry delete : result.scriptsToDelete()) {
+            builder(byKey, delete.path(), roots).deletes.add(delete);
+        }
+        for (ScriptMove move : result.scriptsToMove()) {
+            builder(byKey, move.to().getPath(), roots).moves.add(new SyncShard.Move(move.from(), ShardScript.of(move.to())));
+        }
+        return byKey;
+    }
+
+    /**
+     * Packs neighbouring folders into shards of about scriptsPerShard changes. A folder
+     * is never split, so two shards never write into the same test folder.
+     */
+    private List<SyncShard> pack(SyncRequest req, String sourceRef, Map<String, ShardBuilder> byFolder) {
+        int target = Math.max(1, sharding.getScriptsPerShard());
+        List<SyncShard> shards = new ArrayList<>();
+        ShardBuilder current = null;
+
+        for (Map.Entry<String, ShardBuilder> entry : byFolder.entrySet()) {
+            if (current == null || current.size() >= target) {
+                if (current != null) shards.add(current.build(req, sourceRef));
+                current = new ShardBuilder();
+            }
+            current.add(entry.getKey(), entry.getValue());
+        }
+        if (current != null) shards.add(current.build(req, sourceRef));
+        return shards;
+    }
+
+    private static ShardBuilder builder(Map<String, ShardBuilder> byKey, String path, List<String> roots) {
+        return byKey.computeIfAbsent(ScriptFolderMapper.shardKey(path, roots), k -> new ShardBuilder());
+    }
+
+    /**
+     * Shards create test plan folders below their own top-level folder only; folders
+     * above it (such as a script root's) are shared and created up front so that two
+     * shards never race to create the same one.
+     */
+    private void prepareFolders(SyncRequest req, Collection<String> folders) {
+        TreeSet<String> parents = new TreeSet<>();
+        for (String folder : folders) {
+            String parent = ScriptFolderMapper.parentOf(folder);
+            if (parent != null) parents.add(parent);
+        }
+        if (parents.isEmpty()) return;
+
+        List<TestPlan> testPlans = new ArrayList<>(testPlanApiClient.fetchAllTestPlans(req.getLreDomain(), req.getLreProject()));
+        for (String parent : parents) {
+            scriptManager.ensureTestPlanFolder(req.getLreDomain(), req.getLreProject(), parent, testPlans);
+        }
+    }
+
+    private void runLocally(String jobId, int workers) {
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(SyncControl.propagate(() -> drain(jobId))));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new LreException("Interrupted while running sync shards", e);
+        } catch (ExecutionException e) {
+            throw new LreException("Sync shard worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * Waits for shards still running on other instances. Shards whose claim timed out
+     * are taken back and run here. Stops waiting once the sync is cancelled or out of
+     * time; shards not finished by then are reported as failed.
+     */
+    private void awaitRemaining(String jobId) {
+        while (shardRepository.countOpen(jobId) > 0) {
+            if (SyncControl.current().stopReason() != null) return;
+
+            long staleBefore = System.currentTimeMillis() - sharding.getClaimTimeout().toMillis();
+            int released = shardRepository.releaseStale(jobId, staleBefore);
+            if (released > 0) {
+                log.warn("Reclaimed {} stale shard(s) of job {}", released, jobId);
+                drain(jobId);
+                continue;
+            }
+
+            try {
+                Thread.sleep(sharding.getPollInterval().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LreException("Interrupted while waiting for sync shards", e);
+            }
+        }
+    }
+
+    /**
+     * Claims and runs shards until none is pending.
+     *
+     * @param jobId shards of this job only, or of any job when null
+     */
+    private void drain(String jobId) {
+        ShardRow row;
+        while (SyncControl.current().stopReason() == null
+                && (row = shardRepository.claimNext(jobId, workerId)) != null) {
+            runShard(row);
+        }
+    }
+
+    private void runShard(ShardRow row) {
+        ChangeGroups groups;
+        String status;
+        try {
+            SyncShard shard = shardReader.readValue(row.payload());
+            groups = SyncControl.current() == SyncControl.NONE
+                    // claimed from another instance's sync; keep to its deadline
+                    ? runClaimed(shard)
+                    : worker.run(shard);
+            status = STATUS_DONE;
+        } catch (Exception e) {
+            log.error("Shard '{}' of job {} failed", row.shardKey(), row.jobId(), e);
+            groups = shardFailure(row.shardKey(), e.getMessage());
+            status = STATUS_FAILED;
+        }
+        shardRepository.complete(row.jobId(), row.shardNo(), status, toJson(groups));
+    }
+
+    /**
+     * Runs under its own control, which a shutdown of this instance cancels like a sync.
+     */
+    private ChangeGroups runClaimed(SyncShard shard) throws Exception {
+        SyncControl control = new SyncControl(shard.request().getDeadline());
+        SyncShutdownCoordinator.Tracked tracked = shutdownCoordinator.track(control);
+        try {
+            return control.callWith(() -> worker.run(shard));
+        } finally {
+            tracked.close();
+        }
+    }
+
+    private ChangeGroups mergeResults(String jobId) {
+        List<ScriptChange> uploaded = new ArrayList<>();
+        List<ScriptChange> deleted = new ArrayList<>();
+        List<ScriptChange> moved = new ArrayList<>();
+        List<ScriptChange> failed = new ArrayList<>();
+
+        for (ShardResult result : shardRepository.findResults(jobId)) {
+            ChangeGroups groups = readResult(result);
+            uploaded.addAll(groups.uploadedSuccess());
+            deleted.addAll(groups.deletedSuccess());
+            moved.addAll(groups.movedSuccess());
+            failed.addAll(groups.failed());
+        }
+
+        log.info("Sharded sync job {} done: uploaded={}, deleted={}, moved={}, failed={}",
+                jobId, uploaded.size(), deleted.size(), moved.size(), failed.size());
+        return new ChangeGroups(uploaded, deleted, moved, failed);
+    }
+
+    private ChangeGroups readResult(ShardResult result) {
+        if (result.result() == null) {
+            return shardFailure(result.shardKey(), "Shard ended with status " + result.status());
+        }
+        try {
+            return resultReader.readValue(result.result());
+        } catch (Exception e) {
+            return shardFailure(result.shardKey(), "Unreadable shard result: " + e.getMessage());
+        }
+    }
+
+    private static ChangeGroups shardFailure(String shardKey, String message) {
+        ScriptChange failure = ScriptChange.failure(
+                "SHARD:" + shardKey, shardKey, "-", "SHARD", message, null);
+        return new ChangeGroups(List.of(), List.of(), List.of(), List.of(failure));
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new LreException("Failed to serialize sync shard", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static final class ShardBuilder {
+        private final List<String> keys = new ArrayList<>();
+        private final List<ShardScript> uploads = new ArrayList<>();
+        private final List<SyncStateEntry> deletes = new ArrayList<>();
+        private final List<SyncShard.Move> moves = new ArrayList<>();
+
+        int size() {
+            return uploads.size() + deletes.size() + moves.size();
+        }
+
+        void add(String key, ShardBuilder other) {
+            keys.add(key);
+            uploads.addAll(other.uploads);
+            deletes.addAll(other.deletes);
+            moves.addAll(other.moves);
+        }
+
+        SyncShard build(SyncRequest req, String sourceRef) {
+            String label = keys.size() == 1 ? keys.get(0) : keys.get(0) + " .. " + keys.get(keys.size() - 1);
+            return new SyncShard(label, req, sourceRef, uploads, deletes, moves);
+        }
+    }
+}
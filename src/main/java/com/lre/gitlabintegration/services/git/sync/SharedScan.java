@@ -0,0 +1,55 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * HEAD and full scan of one GitLab project/ref, computed at most once and shared by
+ * the targets of a multi-target sync. Every caller gets its own copies of the scanned
+ * scripts because the sync mutates them (commit carry-over, commit lookups).
+ */
+public class SharedScan {
+
+    private final Supplier<String> headResolver;
+    private final Function<String, List<GitLabCommit>> scanner;
+    private final String ref;
+
+    private boolean headResolved;
+    private String headSha;
+    private List<GitLabCommit> scripts;
+
+    SharedScan(String ref, Supplier<String> headResolver, Function<String, List<GitLabCommit>> scanner) {
+        this.ref = ref;
+        this.headResolver = headResolver;
+        this.scanner = scanner;
+    }
+
+    public synchronized String headSha() {
+        if (!headResolved) {
+            headSha = headResolver.get();
+            headResolved = true;
+        }
+        return headSha;
+    }
+
+    public synchronized List<GitLabCommit> scripts() {
+        if (scripts == null) {
+            String sourceRef = headSha() != null ? headSha() : ref;
+            scripts = List.copyOf(scanner.apply(sourceRef));
+        }
+        return scripts.stream().map(SharedScan::copy).toList();
+    }
+
+    private static GitLabCommit copy(GitLabCommit source) {
+        GitLabCommit commit = new GitLabCommit();
+        commit.setSha(source.getSha());
+        commit.setCommittedDate(source.getCommittedDate());
+        commit.setPath(source.getPath());
+        commit.setMessage(source.getMessage());
+        commit.setFingerprint(source.getFingerprint());
+        return commit;
+    }
+}
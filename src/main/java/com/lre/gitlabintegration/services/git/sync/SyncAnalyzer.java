@@ -1,6 +1,7 @@
 package com.lre.gitlabintegration.services.git.sync;
 
 import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.ScriptMove;
 import com.lre.gitlabintegration.dto.sync.SyncResult;
 import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
 import lombok.extern.slf4j.Slf4j;
@@ -25,14 +26,16 @@ public class SyncAnalyzer {
 
         List<SyncStateEntry> toDelete = findDeletes(prevList, currByPath);
         Changes changes = findUploadsAndUnchanged(currList, prevByPath);
+        List<ScriptMove> toMove = findMoves(changes.toUpload(), toDelete, prevByPath);
 
-        log.info("Analysis complete: upload={}, delete={}, unchanged={}",
+        log.info("Analysis complete: upload={}, delete={}, move={}, unchanged={}",
                 changes.toUpload().size(),
                 toDelete.size(),
+                toMove.size(),
                 changes.unchanged().size()
         );
 
-        return new SyncResult(changes.toUpload(), toDelete, changes.unchanged());
+        return new SyncResult(changes.toUpload(), toDelete, changes.unchanged(), toMove);
     }
 
 
@@ -74,15 +77,66 @@ public class SyncAnalyzer {
             if (cur == null || cur.getPath() == null) continue;
             SyncStateEntry prev = prevByPath.get(cur.getPath());
             boolean upload = prev == null || hasChanged(prev, cur);
-            if (upload) toUpload.add(cur);
-            else unchanged.add(cur);
+            if (upload) {
+                toUpload.add(cur);
+            } else {
+                carryOverCommit(prev, cur);
+                unchanged.add(cur);
+            }
 
         }
 
         return new Changes(toUpload, unchanged);
     }
 
+    /**
+     * Pairs new paths with deleted ones that had the same tree SHA, i.e. folders that were
+     * moved or renamed without content changes. Matched entries are taken out of
+     * toUpload and toDelete. Identical copies pair up in path order.
+     */
+    private List<ScriptMove> findMoves(List<GitLabCommit> toUpload,
+                                       List<SyncStateEntry> toDelete,
+                                       Map<String, SyncStateEntry> prevByPath) {
+        Map<String, Deque<SyncStateEntry>> deletedByFingerprint = new HashMap<>();
+        for (SyncStateEntry deleted : toDelete) {
+            if (isBlank(deleted.fingerprint())) continue;
+            deletedByFingerprint.computeIfAbsent(deleted.fingerprint(), k -> new ArrayDeque<>()).add(deleted);
+        }
+        if (deletedByFingerprint.isEmpty()) return List.of();
+
+        List<ScriptMove> moves = new ArrayList<>();
+        Iterator<GitLabCommit> uploads = toUpload.iterator();
+        while (uploads.hasNext()) {
+            GitLabCommit cur = uploads.next();
+            // Only brand-new paths; a changed script at a known path stays an upload
+            if (prevByPath.containsKey(cur.getPath()) || isBlank(cur.getFingerprint())) continue;
+
+            Deque<SyncStateEntry> candidates = deletedByFingerprint.get(cur.getFingerprint());
+            if (candidates == null || candidates.isEmpty()) continue;
+
+            SyncStateEntry from = candidates.poll();
+            carryOverCommit(from, cur);
+            moves.add(new ScriptMove(from, cur));
+            uploads.remove();
+            toDelete.remove(from);
+            log.debug("Detected move {} -> {}", from.path(), cur.getPath());
+        }
+        return moves;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
     private boolean hasChanged(SyncStateEntry previous, GitLabCommit current) {
+        String prevFingerprint = previous.fingerprint();
+        String curFingerprint = current.getFingerprint();
+
+        if (prevFingerprint != null && !prevFingerprint.isBlank()
+                && curFingerprint != null && !curFingerprint.isBlank()) {
+            return !prevFingerprint.equals(curFingerprint);
+        }
+
         String prevSha = previous.commitSha();
         String curSha = current.getSha();
 
@@ -92,6 +146,17 @@ public class SyncAnalyzer {
         return !prevSha.equals(curSha);
     }
 
+    /**
+     * Fingerprint-only scans carry no commit metadata; unchanged scripts keep the
+     * commit recorded at their last sync.
+     */
+    private void carryOverCommit(SyncStateEntry previous, GitLabCommit current) {
+        if (current.getSha() != null && !current.getSha().isBlank()) return;
+
+        current.setSha(Objects.requireNonNullElse(previous.commitSha(), ""));
+        current.setCommittedDate(Objects.requireNonNullElse(previous.committedDate(), ""));
+    }
+
     private record Changes(List<GitLabCommit> toUpload, List<GitLabCommit> unchanged) {
     }
 }
@@ -0,0 +1,260 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncResponse;
+import com.lre.gitlabintegration.exceptions.LreException;
+import com.lre.gitlabintegration.exceptions.SyncCancelledException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.lre.gitlabintegration.services.git.sync.SyncResponseBuilder.failureResponse;
+
+/**
+ * Single flight per sync target on this instance. A request for the HEAD and script
+ * roots already being synced waits for that sync and gets its response. A request for
+ * another HEAD queues behind it; only the latest queued one runs, and the requests it
+ * replaced get its response once it starts.
+ * <p>
+ * Each caller waits until its own deadline or until its CI job watch cancels it. When
+ * every caller of the queued flight has left, the newest flight it replaced that still
+ * has callers is queued again, so those callers are not left without a sync.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SyncCoalescer {
+
+    private final SyncControlRegistry controlRegistry;
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    /**
+     * @param headSha HEAD the sync will run at, or null when unknown; unknown never joins
+     */
+    public SyncResponse run(SyncRequest request, String headSha, Supplier<SyncResponse> sync) {
+        String key = key(request);
+        List<String> roots = roots(request);
+        CompletableFuture<Boolean> turn = new CompletableFuture<>();
+
+        Flight flight;
+        synchronized (flights) {
+            Flight running = flights.get(key);
+            if (running == null) {
+                flight = new Flight(headSha, roots);
+                flights.put(key, flight);
+                turn.complete(true);
+            } else if (running.covers(headSha, roots)) {
+                flight = running;
+                turn.complete(false);
+            } else if (running.next != null && running.next.covers(headSha, roots)) {
+                flight = running.next;
+                flight.waiters.add(turn);
+            } else {
+                flight = new Flight(headSha, roots);
+                flight.replaced = running.next;
+                flight.waiters.add(turn);
+                running.next = flight;
+            }
+        }
+
+        if (!turn.isDone()) {
+            log.info("Queued sync of {}/{} at {} behind a running sync",
+                    request.getLreDomain(), request.getLreProject(), headSha);
+        } else if (!turn.join()) {
+            log.info("Joining sync of {}/{} at {} already in flight",
+                    request.getLreDomain(), request.getLreProject(), headSha);
+        }
+
+        CompletableFuture<String> cancelled = new CompletableFuture<>();
+        Consumer<String> cancel = cancelled::complete;
+        controlRegistry.registerCaller(request, cancel);
+        try {
+            if (!awaitTurn(key, flight, turn, cancelled, request)) {
+                return stopped(request, cancelled, "queued behind a running sync");
+            }
+            if (!turn.join()) {
+                SyncResponse response = await(flight.result, cancelled, request);
+                return response != null ? response : stopped(request, cancelled, "waiting for a running sync");
+            }
+        } finally {
+            controlRegistry.unregisterCaller(request, cancel);
+        }
+
+        try {
+            SyncResponse response = sync.get();
+            flight.result.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            startNext(key, flight);
+        }
+    }
+
+    /**
+     * @return false when the caller left the queue before its turn was decided
+     */
+    private boolean awaitTurn(String key, Flight flight, CompletableFuture<Boolean> turn,
+                              CompletableFuture<String> cancelled, SyncRequest request) {
+        try {
+            if (await(turn, cancelled, request) != null) return true;
+        } catch (RuntimeException e) {
+            if (!leaveQueue(key, flight, turn) && turn.join()) {
+                // picked to run just now; let the flight's other callers know
+                flight.result.completeExceptionally(e);
+                startNext(key, flight);
+            }
+            throw e;
+        }
+        return !leaveQueue(key, flight, turn);
+    }
+
+    /**
+     * @return false when the flight's turn was decided meanwhile and it must follow that
+     */
+    private boolean leaveQueue(String key, Flight flight, CompletableFuture<Boolean> turn) {
+        synchronized (flights) {
+            if (!turn.complete(false)) return false;
+
+            flight.waiters.remove(turn);
+            Flight running = flights.get(key);
+            if (flight.waiters.isEmpty() && running != null && running.next == flight) {
+                running.next = flight.fallback();
+            }
+            return true;
+        }
+    }
+
+    private void startNext(String key, Flight finished) {
+        synchronized (flights) {
+            Flight next = finished.next;
+            if (next != null && next.waiters.isEmpty()) next = next.fallback();
+            if (next != null) {
+                flights.put(key, next);
+                next.start();
+            } else {
+                flights.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Waits until the request's deadline or its cancellation.
+     *
+     * @return null when the deadline passed or the request was cancelled first
+     */
+    private static <T> T await(CompletableFuture<T> future, CompletableFuture<String> cancelled,
+                               SyncRequest request) {
+        await(CompletableFuture.anyOf(future, cancelled), request);
+        return future.isDone() ? await(future, request) : null;
+    }
+
+    /**
+     * Waits until the request's deadline.
+     *
+     * @return null when the deadline passed first
+     */
+    private static <T> T await(Future<T> future, SyncRequest request) {
+        try {
+            Instant deadline = request.getDeadline();
+            if (deadline == null) return future.get();
+
+            long millis = Math.max(0, Duration.between(Instant.now(), deadline).toMillis());
+            return future.get(millis, TimeUnit.MILLISECONDS);
+
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LreException("Interrupted while waiting for a running sync", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new LreException("Coalesced sync failed", e.getCause());
+        }
+    }
+
+    private static SyncResponse stopped(SyncRequest request, CompletableFuture<String> cancelled, String stage) {
+        String reason = cancelled.getNow(null);
+        String message = (reason != null ? reason : "Deadline exceeded") + " while " + stage;
+        return failureResponse("SYNC_CANCELLED", new SyncCancelledException(message), request);
+    }
+
+    private static List<String> roots(SyncRequest request) {
+        return request.getScriptRoots() == null ? List.of() : List.copyOf(request.getScriptRoots());
+    }
+
+    private static String key(SyncRequest request) {
+        return (request.getGitlabProjectId() + "/" + request.getLreDomain() + "/" + request.getLreProject())
+                .toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Guarded by the flights lock, except for its result.
+     */
+    private static final class Flight {
+        private final String headSha;
+        private final List<String> roots;
+        /** turns of the callers waiting for the flight to start: true to run it, false to await its result */
+        private final List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+        private final CompletableFuture<SyncResponse> result = new CompletableFuture<>();
+        private Flight next;
+        /** queued flight this one replaced; its callers get this flight's result once it starts */
+        private Flight replaced;
+
+        Flight(String headSha, List<String> roots) {
+            this.headSha = headSha;
+            this.roots = roots;
+        }
+
+        boolean covers(String headSha, List<String> roots) {
+            return headSha != null && headSha.equals(this.headSha) && Objects.equals(roots, this.roots);
+        }
+
+        /**
+         * @return the newest replaced flight that still has callers, or null
+         */
+        Flight fallback() {
+            Flight older = replaced;
+            while (older != null && older.waiters.isEmpty()) older = older.replaced;
+            return older;
+        }
+
+        /**
+         * The longest waiting caller runs the flight; everyone else, including the
+         * callers of the flights it replaced, gets its result.
+         */
+        void start() {
+            for (Flight older = replaced; older != null; older = older.replaced) {
+                CompletableFuture<SyncResponse> olderResult = older.result;
+                result.whenComplete((response, error) -> {
+                    if (error != null) olderResult.completeExceptionally(error);
+                    else olderResult.complete(response);
+                });
+                older.waiters.forEach(waiter -> waiter.complete(false));
+                older.waiters.clear();
+            }
+            replaced = null;
+
+            waiters.remove(0).complete(true);
+            waiters.forEach(waiter -> waiter.complete(false));
+            waiters.clear();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Controls of the syncs running on this instance, by target, so a cancel call can
+ * reach them. The CI job watch cancels by caller instead: a request that joined or
+ * queued behind another caller's sync only ends its own wait.
+ */
+@Slf4j
+@Component
+public class SyncControlRegistry {
+
+    private final Map<String, SyncControl> running = new ConcurrentHashMap<>();
+    private final Map<SyncRequest, Consumer<String>> callers = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    public void register(SyncRequest request, SyncControl control) {
+        running.put(key(request), control);
+    }
+
+    public void unregister(SyncRequest request, SyncControl control) {
+        running.remove(key(request), control);
+    }
+
+    /**
+     * @return false when no sync of the target is running here
+     */
+    public boolean cancel(SyncRequest request, String reason) {
+        SyncControl control = running.get(key(request));
+        if (control == null) return false;
+
+        log.info("Cancelling sync of {}/{} for project {}: {}",
+                request.getLreDomain(), request.getLreProject(), request.getGitlabProjectId(), reason);
+        control.cancel(reason);
+        return true;
+    }
+
+    /**
+     * @param cancel stops what the caller is doing right now: its sync, or its wait for another one
+     */
+    public void registerCaller(SyncRequest caller, Consumer<String> cancel) {
+        callers.put(caller, cancel);
+    }
+
+    public void unregisterCaller(SyncRequest caller, Consumer<String> cancel) {
+        callers.remove(caller, cancel);
+    }
+
+    /**
+     * @return false when the caller is neither syncing nor waiting here
+     */
+    public boolean cancelCaller(SyncRequest caller, String reason) {
+        Consumer<String> cancel = callers.get(caller);
+        if (cancel == null) return false;
+
+        log.info("Cancelling sync request of {}/{} for project {}: {}",
+                caller.getLreDomain(), caller.getLreProject(), caller.getGitlabProjectId(), reason);
+        cancel.accept(reason);
+        return true;
+    }
+
+    private static String key(SyncRequest request) {
+        return (request.getGitlabProjectId() + "/" + request.getLreDomain() + "/" + request.getLreProject())
+                .toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,14 +1,19 @@
 package com.lre.gitlabintegration.services.git.sync;
 
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
+import com.lre.gitlabintegration.config.concurrency.SyncScheduler;
 import com.lre.gitlabintegration.dto.sync.SyncRequest;
 import com.lre.gitlabintegration.dto.sync.SyncResponse;
 import com.lre.gitlabintegration.exceptions.LreException;
+import com.lre.gitlabintegration.exceptions.SyncCancelledException;
+import com.lre.gitlabintegration.repository.SyncHeadRepository;
 import com.lre.gitlabintegration.repository.SyncLockRepository;
 import com.lre.gitlabintegration.services.lre.authsession.LreSessionManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static com.lre.gitlabintegration.services.git.sync.SyncResponseBuilder.failureResponse;
@@ -22,12 +27,39 @@ public class SyncExecutionManager {
 
     private final LreSessionManager lreSessionManager;
 
+    private final SyncControlRegistry controlRegistry;
+
+    private final SyncScheduler scheduler;
+
+    private final SyncHeadRepository headRepository;
+
+    private final SyncShutdownCoordinator shutdownCoordinator;
+
+    /**
+     * Runs the action under the target's lock with a {@link SyncControl} built from the
+     * request's deadline, which cancel calls can reach through the registry. A caller
+     * that already runs under a control, such as an asynchronous job, keeps its own.
+     * The sync first waits for a slot from the {@link SyncScheduler}; a target without
+     * a synced HEAD needs a full scan and waits as a bulk sync. While the instance
+     * shuts down the sync counts as in flight and is cancelled with the rest.
+     */
     public SyncResponse execute(SyncRequest request, Supplier<SyncResponse> action) {
 
         boolean locked = false;
+        SyncScheduler.Slot slot = null;
+        SyncControl control = SyncControl.current() != SyncControl.NONE
+                ? SyncControl.current()
+                : new SyncControl(request.getDeadline());
+        Consumer<String> cancel = control::cancel;
+        controlRegistry.registerCaller(request, cancel);
+        SyncShutdownCoordinator.Tracked tracked = shutdownCoordinator.track(control);
 
         try {
 
+            slot = scheduler.acquire(request, headRepository.find(request) == null, control);
+
+            control.checkpoint("locking");
+
             locked = lockRepository.acquireLock(request);
 
             if (!locked) {
@@ -37,9 +69,17 @@ public class SyncExecutionManager {
                 return failureResponse("LOCK_NOT_ACQUIRED", new LreException("Could not acquire lock"), request);
             }
 
+            controlRegistry.register(request, control);
+
             lreSessionManager.ensureAuthenticated(request.getLreDomain(), request.getLreProject());
 
-            return action.get();
+            return control.callWith(action::get);
+
+        } catch (SyncCancelledException e) {
+
+            log.warn("Sync cancelled for project: {}: {}", request.getLreProject(), e.getMessage());
+
+            return failureResponse("SYNC_CANCELLED", e, request);
 
         } catch (Exception e) {
 
@@ -49,7 +89,13 @@ public class SyncExecutionManager {
 
         } finally {
 
-            if (locked) lockRepository.releaseLock(request);
+            controlRegistry.unregisterCaller(request, cancel);
+            if (locked) {
+                controlRegistry.unregister(request, control);
+                lockRepository.releaseLock(request);
+            }
+            if (slot != null) slot.close();
+            tracked.close();
 
         }
     }
@@ -0,0 +1,314 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.dto.sync.ScriptChange;
+import com.lre.gitlabintegration.dto.sync.SyncJobStatus;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncResponse;
+import com.lre.gitlabintegration.exceptions.ClientErrorException;
+import com.lre.gitlabintegration.exceptions.ResourceNotFoundException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.lre.gitlabintegration.services.git.sync.SyncResponseBuilder.failureResponse;
+
+/**
+ * Runs syncs in the background so the caller gets a job id right away instead of
+ * holding a request open for the whole sync. Progress is streamed per script as
+ * server-sent events; the final response stays available until the result TTL ends.
+ * Events are written on a separate pool, so a slow client never holds up the sync.
+ * <p>
+ * Jobs live in memory on the instance that accepted them.
+ */
+@Slf4j
+@Service
+public class SyncJobService {
+
+    public static final String STATE_QUEUED = "QUEUED";
+    public static final String STATE_RUNNING = "RUNNING";
+    public static final String STATE_DONE = "DONE";
+
+    private static final String EVENT_CHANGE = "change";
+    private static final String EVENT_RESULT = "result";
+
+    private final LreProperties.Jobs jobs;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor streamExecutor;
+    private final Map<String, Job> byId = new ConcurrentHashMap<>();
+
+    public SyncJobService(LreProperties lreProperties) {
+        this.jobs = lreProperties.getJobs();
+
+        int threads = Math.max(1, jobs.getMaxConcurrent());
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(jobs.getQueueCapacity()),
+                new CustomizableThreadFactory("sync-job-"));
+        this.executor.allowCoreThreadTimeOut(true);
+
+        int streamThreads = Math.max(1, jobs.getStreamThreads());
+        this.streamExecutor = new ThreadPoolExecutor(streamThreads, streamThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("sync-job-stream-"));
+        this.streamExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the sync. Its response goes to onDone before the job is marked DONE, so
+     * a client that sees DONE also sees the sync audited.
+     *
+     * @return status of the queued job
+     */
+    public SyncJobStatus submit(SyncRequest request, Supplier<SyncResponse> sync, Consumer<SyncResponse> onDone) {
+        Job job = new Job(UUID.randomUUID().toString(), request, streamExecutor);
+        byId.put(job.id, job);
+
+        try {
+            executor.execute(() -> run(job, sync, onDone));
+        } catch (RejectedExecutionException e) {
+            byId.remove(job.id);
+            throw new ClientErrorException("Too many sync jobs queued, retry later", HttpStatus.TOO_MANY_REQUESTS, e);
+        }
+
+        log.info("Queued sync job {} for project {}/{}", job.id, request.getLreDomain(), request.getLreProject());
+        return job.status();
+    }
+
+    /**
+     * @param gitlabProjectId the caller's project; jobs of other projects are not found
+     */
+    public SyncJobStatus status(String jobId, long gitlabProjectId) {
+        return find(jobId, gitlabProjectId).status();
+    }
+
+    /**
+     * Streams the job's script changes, starting with those already done, then its
+     * response. The stream ends with the job or at the stream timeout.
+     */
+    public SseEmitter subscribe(String jobId, long gitlabProjectId) {
+        return subscribe(jobId, gitlabProjectId, new SseEmitter(jobs.getStreamTimeout().toMillis()));
+    }
+
+    SseEmitter subscribe(String jobId, long gitlabProjectId, SseEmitter emitter) {
+        find(jobId, gitlabProjectId).attach(emitter);
+        return emitter;
+    }
+
+    private void run(Job job, Supplier<SyncResponse> sync, Consumer<SyncResponse> onDone) {
+        job.startedAt = Instant.now();
+        job.state = STATE_RUNNING;
+
+        SyncResponse response;
+        try {
+            SyncControl control = new SyncControl(job.request.getDeadline()).onProgress(job::publish);
+            response = control.callWith(sync::get);
+        } catch (Exception e) {
+            log.error("Sync job {} failed", job.id, e);
+            response = failureResponse("SYNC_EXCEPTION", e, job.request);
+        }
+
+        try {
+            onDone.accept(response);
+        } catch (Exception e) {
+            log.warn("Completion of sync job {} failed: {}", job.id, e.getMessage());
+        }
+        job.finish(response);
+        log.info("Sync job {} done: success={}", job.id, response.success());
+    }
+
+    private Job find(String jobId, long gitlabProjectId) {
+        Job job = jobId == null ? null : byId.get(jobId);
+        if (job == null || job.request.getGitlabProjectId() != gitlabProjectId) {
+            throw new ResourceNotFoundException("Sync job not found: " + jobId, HttpStatus.NOT_FOUND);
+        }
+        return job;
+    }
+
+    /**
+     * Jobs queued or still running.
+     */
+    public int pendingCount() {
+        return executor.getQueue().size() + executor.getActiveCount();
+    }
+
+    /**
+     * Ends the event streams still open so they do not hold up the web server's
+     * shutdown; their clients can poll the job status instead.
+     */
+    public void closeStreams() {
+        byId.values().forEach(job -> job.streams.forEach(Stream::close));
+    }
+
+    @Scheduled(fixedDelayString = "${lre.jobs.evict-interval-ms:60000}")
+    public void evictExpired() {
+        Instant cutoff = Instant.now().minus(jobs.getResultTtl());
+        int before = byId.size();
+        byId.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+
+        int evicted = before - byId.size();
+        if (evicted > 0) log.debug("Evicted {} finished sync job(s)", evicted);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        closeStreams();
+        streamExecutor.shutdownNow();
+    }
+
+    private static final class Job {
+        private final String id;
+        private final SyncRequest request;
+        private final Instant submittedAt = Instant.now();
+        private final List<ScriptChange> changes = new CopyOnWriteArrayList<>();
+        private final List<Stream> streams = new CopyOnWriteArrayList<>();
+        private final Executor streamExecutor;
+
+        private volatile String state = STATE_QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile SyncResponse response;
+
+        Job(String id, SyncRequest request, Executor streamExecutor) {
+            this.id = id;
+            this.request = request;
+            this.streamExecutor = streamExecutor;
+        }
+
+        /**
+         * The stream replays the changes so far, then follows new ones.
+         */
+        void attach(SseEmitter emitter) {
+            Stream stream = new Stream(this, emitter);
+            emitter.onCompletion(stream::closed);
+            emitter.onTimeout(stream::closed);
+            emitter.onError(e -> stream.closed());
+
+            streams.add(stream);
+            stream.signal();
+        }
+
+        /**
+         * Called on the sync's threads; only records the change and wakes the streams.
+         */
+        void publish(ScriptChange change) {
+            changes.add(change);
+            streams.forEach(Stream::signal);
+        }
+
+        void finish(SyncResponse result) {
+            this.response = result;
+            this.finishedAt = Instant.now();
+            this.state = STATE_DONE;
+            streams.forEach(Stream::signal);
+        }
+
+        SyncJobStatus status() {
+            return SyncJobStatus.builder()
+                    .jobId(id)
+                    .state(state)
+                    .domain(request.getLreDomain())
+                    .project(request.getLreProject())
+                    .ref(request.getRef())
+                    .submittedAt(submittedAt)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .processed(changes.size())
+                    .result(response)
+                    .build();
+        }
+    }
+
+    /**
+     * One client's event stream. It keeps its own position in the job's changes, so a
+     * slow client only falls behind; at most one stream thread writes to it at a time.
+     */
+    private static final class Stream {
+        private final Job job;
+        private final SseEmitter emitter;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private volatile boolean closed;
+        private int sent;
+
+        Stream(Job job, SseEmitter emitter) {
+            this.job = job;
+            this.emitter = emitter;
+        }
+
+        void signal() {
+            if (closed || !scheduled.compareAndSet(false, true)) return;
+            try {
+                job.streamExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        private void drain() {
+            do {
+                while (!closed && pending()) {
+                    if (sent < job.changes.size()) {
+                        if (!send(EVENT_CHANGE, job.changes.get(sent))) return;
+                        sent++;
+                    } else {
+                        if (send(EVENT_RESULT, job.response)) close();
+                        return;
+                    }
+                }
+                scheduled.set(false);
+            } while (!closed && pending() && scheduled.compareAndSet(false, true));
+        }
+
+        /**
+         * The response is set only after the last change, so it goes out after all of them.
+         */
+        private boolean pending() {
+            return sent < job.changes.size() || job.response != null;
+        }
+
+        /**
+         * @return false when the client is gone; the stream is then dropped
+         */
+        private boolean send(String event, Object data) {
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                closed();
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+
+        void close() {
+            closed();
+            emitter.complete();
+        }
+
+        void closed() {
+            closed = true;
+            job.streams.remove(this);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.repository.SyncHeadRepository;
+import com.lre.gitlabintegration.repository.SyncJournalRepository;
+import com.lre.gitlabintegration.repository.SyncLockRepository;
+import com.lre.gitlabintegration.repository.SyncStateRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.lre.gitlabintegration.repository.SyncJournalRepository.ACTION_DELETE;
+import static com.lre.gitlabintegration.repository.SyncJournalRepository.ACTION_UPLOAD;
+
+/**
+ * Writes down each script a sync uploads or deletes as soon as LRE confirms it. The
+ * sync state is otherwise only saved when a sync ends, so a crash used to lose the
+ * record of everything already done and the next sync did it all again.
+ * <p>
+ * A finished sync drops its journal. One that failed, or was left behind by a crash
+ * and found at startup, is folded into the sync state first and the target's HEAD is
+ * cleared, so the next sync rescans and redoes only the scripts not recorded.
+ */
+@Slf4j
+@Component
+public class SyncJournal {
+
+    private final SyncJournalRepository journalRepository;
+    private final SyncStateRepository stateRepository;
+    private final SyncHeadRepository headRepository;
+    private final SyncLockRepository lockRepository;
+    private final LreProperties.Journal config;
+    private final String owner;
+
+    /** Open journal ids by sync control and target; a control may sync several targets. */
+    private final Map<Key, String> open = new ConcurrentHashMap<>();
+
+    public SyncJournal(SyncJournalRepository journalRepository,
+                       SyncStateRepository stateRepository,
+                       SyncHeadRepository headRepository,
+                       SyncLockRepository lockRepository,
+                       LreProperties lreProperties) {
+        this.journalRepository = journalRepository;
+        this.stateRepository = stateRepository;
+        this.headRepository = headRepository;
+        this.lockRepository = lockRepository;
+        this.config = lreProperties.getJournal();
+        this.owner = config.getOwner().isBlank() ? hostName() : config.getOwner();
+    }
+
+    /**
+     * Starts the journal of the sync bound to the current thread. Without a journal the
+     * sync still runs; it only loses crash recovery.
+     */
+    public void open(SyncRequest request, String headSha) {
+        SyncControl control = SyncControl.current();
+        if (control == SyncControl.NONE) return;
+
+        String journalId = UUID.randomUUID().toString();
+        try {
+            journalRepository.open(journalId, request, headSha, owner);
+            open.put(new Key(control, target(request)), journalId);
+        } catch (Exception e) {
+            log.warn("Could not open sync journal for {}/{}: {}",
+                    request.getLreDomain(), request.getLreProject(), e.getMessage());
+        }
+    }
+
+    /**
+     * @param finished false when the sync ended with an exception; its recorded
+     *                 scripts are then saved to the sync state before the journal goes
+     */
+    public void close(SyncRequest request, boolean finished) {
+        String journalId = open.remove(new Key(SyncControl.current(), target(request)));
+        if (journalId == null) return;
+
+        try {
+            if (!finished) apply(journalId, request);
+            journalRepository.delete(journalId);
+        } catch (Exception e) {
+            // left for the startup recovery
+            log.warn("Could not close sync journal {}: {}", journalId, e.getMessage());
+        }
+    }
+
+    public void recordUpload(SyncRequest request, GitLabCommit commit, Integer lreScriptId) {
+        String journalId = journalId(request);
+        if (journalId == null) return;
+
+        try {
+            journalRepository.recordUpload(journalId, commit, lreScriptId);
+        } catch (Exception e) {
+            log.warn("Could not journal upload of {}: {}", commit.getPath(), e.getMessage());
+        }
+    }
+
+    public void recordDelete(SyncRequest request, String path) {
+        String journalId = journalId(request);
+        if (journalId == null) return;
+
+        try {
+            journalRepository.recordDelete(journalId, path);
+        } catch (Exception e) {
+            log.warn("Could not journal delete of {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Folds the journals of syncs that died into the sync state: this owner's, since
+     * none of its syncs can be running yet, and other owners' once they are stale.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        List<SyncJournalRepository.Journal> unfinished;
+        try {
+            unfinished = journalRepository.findUnfinished(owner, LocalDateTime.now().minus(config.getStaleAfter()));
+        } catch (Exception e) {
+            log.error("Sync journal recovery failed: {}", e.getMessage());
+            return;
+        }
+
+        for (SyncJournalRepository.Journal journal : unfinished) {
+            SyncRequest request = journal.request();
+            try {
+                int recorded = apply(journal.journalId(), request);
+                if (lockRepository.releaseStaleLock(request, journal.startedAt())) {
+                    log.info("Released sync lock of {}/{} left by the interrupted sync",
+                            request.getLreDomain(), request.getLreProject());
+                }
+                journalRepository.delete(journal.journalId());
+
+                log.info("Recovered interrupted sync of {}/{} at {} (owner {}): {} script(s) kept",
+                        request.getLreDomain(), request.getLreProject(), journal.headSha(), journal.owner(), recorded);
+            } catch (Exception e) {
+                log.error("Could not recover sync journal {} of {}/{}: {}", journal.journalId(),
+                        request.getLreDomain(), request.getLreProject(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return number of journaled scripts written to the sync state
+     */
+    private int apply(String journalId, SyncRequest request) {
+        List<SyncJournalRepository.Entry> entries = journalRepository.findEntries(journalId);
+
+        List<GitLabCommit> uploaded = new ArrayList<>();
+        Map<String, Integer> lreIdByPath = new HashMap<>();
+        List<String> deleted = new ArrayList<>();
+
+        for (SyncJournalRepository.Entry entry : entries) {
+            if (ACTION_UPLOAD.equals(entry.action())) {
+                uploaded.add(entry.commit());
+                if (entry.lreScriptId() != null) lreIdByPath.put(entry.path(), entry.lreScriptId());
+            } else if (ACTION_DELETE.equals(entry.action())) {
+                deleted.add(entry.path());
+            }
+        }
+
+        if (!uploaded.isEmpty()) stateRepository.upsertCommits(request, uploaded, lreIdByPath);
+        if (!deleted.isEmpty()) stateRepository.deletePaths(request, deleted);
+
+        // The HEAD was not fully synced; the next sync must rescan against the state
+        headRepository.clear(request);
+        return entries.size();
+    }
+
+    private String journalId(SyncRequest request) {
+        return open.get(new Key(SyncControl.current(), target(request)));
+    }
+
+    private static String target(SyncRequest request) {
+        return (request.getGitlabProjectId() + "/" + request.getLreDomain() + "/" + request.getLreProject())
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    private record Key(SyncControl control, String target) {
+    }
+}
@@ -1,15 +1,28 @@
 package com.lre.gitlabintegration.services.git.sync;
 
+import com.lre.gitlabintegration.client.api.GitLabApiClient;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCompareResult;
 import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
 import com.lre.gitlabintegration.dto.sync.SyncContext;
 import com.lre.gitlabintegration.dto.sync.SyncRequest;
 import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
+import com.lre.gitlabintegration.repository.ScriptRootRepository;
+import com.lre.gitlabintegration.repository.SyncHeadRepository;
 import com.lre.gitlabintegration.repository.SyncStateRepository;
+import com.lre.gitlabintegration.services.git.mirror.GitMirrorService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -18,15 +31,77 @@ public class SyncModeResolver {
 
     private final GitRepositoryScanner scanner;
     private final SyncStateRepository stateRepository;
+    private final SyncHeadRepository headRepository;
+    private final GitLabApiClient gitLabApiClient;
+    private final GitLabProperties gitLabProperties;
+    private final SyncPlanCache planCache;
+    private final ScriptRootRepository scriptRootRepository;
+    private final GitMirrorService mirrorService;
 
     public SyncContext resolve(SyncRequest syncRequest) {
-        List<GitLabCommit> current =
-                scanner.scanScripts(syncRequest.getGitlabProjectId(), syncRequest.getRef());
-        List<SyncStateEntry> previous =
-                stateRepository.findPreviousState(syncRequest);
+        return resolve(syncRequest, null);
+    }
+
+    /**
+     * @param shared HEAD and scan shared with other targets of the same project/ref;
+     *               when given, a changed target takes the shared scan instead of a compare
+     */
+    public SyncContext resolve(SyncRequest syncRequest, SharedScan shared) {
+        return resolve(syncRequest, shared, null);
+    }
+
+    /**
+     * @param knownHead HEAD already looked up for this sync, or null to look it up here
+     */
+    public SyncContext resolve(SyncRequest syncRequest, SharedScan shared, String knownHead) {
+        // Effective roots travel with the request so packaging sees the same scope
+        syncRequest.setScriptRoots(scriptRoots(syncRequest));
+
+        List<SyncStateEntry> previous = previousInScope(syncRequest);
+        String headSha = shared != null ? shared.headSha()
+                : knownHead != null ? knownHead
+                : resolveHead(syncRequest);
+        SyncHeadRepository.SyncHead synced =
+                previous.isEmpty() || headSha == null ? null : syncedHead(syncRequest);
+
+        if (synced != null && headSha.equals(synced.headSha())) {
+            log.info("Ref {} of project {} still at {}, skipping scan",
+                    syncRequest.getRef(), syncRequest.getLreProject(), headSha);
+            return new SyncContext(syncRequest, previous, toCommits(previous), false, headSha, true);
+        }
+
+        String baseSha = synced != null ? synced.headSha() : null;
+        List<GitLabCommit> planned = planCache.take(syncRequest, baseSha, headSha);
+        if (planned != null) {
+            log.info("Using precomputed plan for project {} ({}..{})",
+                    syncRequest.getLreProject(), baseSha == null ? "none" : shortSha(baseSha), shortSha(headSha));
+            if (!previous.isEmpty() && scanner.isFingerprintMode()) {
+                resolveLegacyEntries(syncRequest, headSha, previous, planned);
+            }
+            return new SyncContext(syncRequest, previous, planned, previous.isEmpty(), headSha, false);
+        }
+
+        if (synced != null && shared == null && gitLabProperties.isCompareIncremental()) {
+            List<GitLabCommit> current = scanChangedSince(syncRequest, synced.headSha(), headSha, previous);
+            if (current != null) {
+                if (scanner.isFingerprintMode()) {
+                    resolveLegacyEntries(syncRequest, headSha, previous, current);
+                }
+                return new SyncContext(syncRequest, previous, current, false, headSha, false);
+            }
+        }
+
+        String sourceRef = headSha != null ? headSha : syncRequest.getRef();
+        List<GitLabCommit> current = shared != null
+                ? shared.scripts()
+                : scanner.scanScripts(syncRequest.getGitlabProjectId(), sourceRef, scriptRoots(syncRequest));
 
         boolean initial = previous.isEmpty();
 
+        if (!initial && scanner.isFingerprintMode()) {
+            resolveLegacyEntries(syncRequest, sourceRef, previous, current);
+        }
+
         log.info("Resolved sync mode for project {}: {} sync (current={}, previous={})",
                 syncRequest.getLreProject(),
                 initial ? "INITIAL" : "INCREMENTAL",
@@ -34,6 +109,236 @@ public class SyncModeResolver {
                 previous.size()
         );
 
-        return new SyncContext(syncRequest, previous, current, initial);
+        return new SyncContext(syncRequest, previous, current, initial, headSha, false);
+    }
+
+    /**
+     * Computes the current scripts at headSha ahead of the sync itself. Known changed
+     * paths (e.g. from a push event) avoid the compare call; without them the compare
+     * API is used, and a full scan when neither can be trusted.
+     */
+    public List<GitLabCommit> plan(SyncRequest syncRequest, String baseSha, String headSha,
+                                   List<SyncStateEntry> previous, List<String> changedPaths) {
+        syncRequest.setScriptRoots(scriptRoots(syncRequest));
+
+        List<GitLabCommit> current = null;
+        if (changedPaths != null) {
+            current = rescanAffected(syncRequest, headSha, previous, changedPaths);
+        } else if (gitLabProperties.isCompareIncremental()) {
+            current = scanChangedSince(syncRequest, baseSha, headSha, previous);
+        }
+
+        return current != null
+                ? current
+                : scanner.scanScripts(syncRequest.getGitlabProjectId(), headSha, scriptRoots(syncRequest));
+    }
+
+    /**
+     * One HEAD lookup and at most one scan for several targets of the same project/ref.
+     */
+    public SharedScan shareScan(SyncRequest template) {
+        SyncRequest scope = new SyncRequest(template.getGitlabProjectId(), template.getRef(), null, null,
+                scriptRoots(template));
+        return new SharedScan(template.getRef(),
+                () -> resolveHead(scope),
+                sourceRef -> scanner.scanScripts(scope.getGitlabProjectId(), sourceRef, scope.getScriptRoots()));
+    }
+
+    /**
+     * The target's last synced state under the request's roots. Scripts under other
+     * roots are neither compared nor deleted, so a sync of one root leaves the others
+     * alone.
+     */
+    List<SyncStateEntry> previousInScope(SyncRequest syncRequest) {
+        List<String> roots = syncRequest.getScriptRoots();
+        return stateRepository.findPreviousState(syncRequest).stream()
+                .filter(e -> e.path() != null && ScriptFolderMapper.isUnderAny(e.path(), roots))
+                .toList();
+    }
+
+    /**
+     * The last fully synced HEAD of the target, when it was synced with the request's
+     * roots; otherwise null, so the folders now in scope are scanned.
+     */
+    SyncHeadRepository.SyncHead syncedHead(SyncRequest syncRequest) {
+        SyncHeadRepository.SyncHead synced = headRepository.find(syncRequest);
+        if (synced == null || synced.syncedWith(syncRequest.getScriptRoots())) return synced;
+
+        log.info("Ref {} of project {} was last synced with other script roots, rescanning",
+                syncRequest.getRef(), syncRequest.getLreProject());
+        return null;
+    }
+
+    /**
+     * Roots sent with the request win over the ones stored for the project.
+     */
+    List<String> scriptRoots(SyncRequest syncRequest) {
+        List<String> requested = syncRequest.getScriptRoots();
+        if (requested != null && !requested.isEmpty()) return requested;
+
+        return ScriptFolderMapper.normalizeRoots(scriptRootRepository.findRoots(syncRequest.getGitlabProjectId()));
+    }
+
+    /**
+     * One commits call telling which commit the ref points to now; for mirrored
+     * projects the mirror is fetched instead. A failed lookup is not fatal; the sync
+     * then scans the ref by name.
+     */
+    String resolveHead(SyncRequest syncRequest) {
+        if (mirrorService.isEnabledFor(syncRequest.getGitlabProjectId())) {
+            try {
+                return mirrorService.fetch(syncRequest.getGitlabProjectId(), syncRequest.getRef());
+            } catch (Exception e) {
+                log.warn("Mirror fetch failed for project {}, using the REST API: {}",
+                        syncRequest.getGitlabProjectId(), e.getMessage());
+            }
+        }
+
+        try {
+            GitLabCommit head = gitLabApiClient.getHeadCommit(syncRequest.getGitlabProjectId(), syncRequest.getRef());
+            return head.isEmpty() ? null : head.getSha();
+        } catch (Exception e) {
+            log.warn("Could not resolve HEAD of ref {} for project {}: {}",
+                    syncRequest.getRef(), syncRequest.getGitlabProjectId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Builds the current state from the last synced one plus a rescan of only the
+     * script folders touched between the two HEADs.
+     *
+     * @return null when the compare cannot be trusted and a full scan is needed
+     */
+    private List<GitLabCommit> scanChangedSince(SyncRequest syncRequest, String baseSha, String headSha,
+                                                List<SyncStateEntry> previous) {
+        long projectId = syncRequest.getGitlabProjectId();
+
+        if (mirrorService.canServe(projectId, baseSha) && mirrorService.canServe(projectId, headSha)) {
+            List<String> changedPaths = changedPathsFromMirror(projectId, baseSha, headSha);
+            return changedPaths == null ? null : rescanAffected(syncRequest, headSha, previous, changedPaths);
+        }
+
+        GitLabCompareResult compare;
+        try {
+            compare = gitLabApiClient.compare(projectId, baseSha, headSha);
+        } catch (Exception e) {
+            log.warn("Compare {}..{} failed for project {}, falling back to full scan: {}",
+                    baseSha, headSha, projectId, e.getMessage());
+            return null;
+        }
+
+        // GitLab answers with an empty result rather than 404 when the base is gone, e.g. after a force-push
+        if (compare == null || compare.commit() == null || compare.diffs() == null || compare.compareTimeout()) {
+            log.info("Base {} not comparable for project {}, falling back to full scan", baseSha, projectId);
+            return null;
+        }
+
+        if (compare.diffs().size() >= gitLabProperties.getCompareMaxFiles()) {
+            log.info("Compare {}..{} touches {} files, falling back to full scan",
+                    baseSha, headSha, compare.diffs().size());
+            return null;
+        }
+
+        List<String> changedPaths = new ArrayList<>(compare.diffs().size() * 2);
+        for (GitLabCompareResult.GitLabDiff diff : compare.diffs()) {
+            changedPaths.add(diff.oldPath());
+            changedPaths.add(diff.newPath());
+        }
+
+        log.info("Compare {}..{}: {} changed file(s)", shortSha(baseSha), shortSha(headSha), compare.diffs().size());
+        return rescanAffected(syncRequest, headSha, previous, changedPaths);
+    }
+
+    /**
+     * Keeps the previous entries of untouched folders and rescans only the script
+     * folders the changed paths fall into. Folders outside the script roots are left
+     * out, exactly as a full scan would.
+     */
+    private List<GitLabCommit> rescanAffected(SyncRequest syncRequest, String headSha,
+                                              List<SyncStateEntry> previous, List<String> changedPaths) {
+        long projectId = syncRequest.getGitlabProjectId();
+        List<String> roots = scriptRoots(syncRequest);
+
+        List<String> knownFolders = previous.stream().map(SyncStateEntry::path).filter(Objects::nonNull).toList();
+        Set<String> affected = ScriptFolderMapper.affectedFolders(changedPaths, knownFolders);
+        affected.removeIf(folder -> !ScriptFolderMapper.isUnderAny(folder, roots));
+
+        log.info("{} changed path(s) affect {} script folder(s)", changedPaths.size(), affected.size());
+
+        List<GitLabCommit> current = new ArrayList<>(toCommits(previous.stream()
+                .filter(e -> e.path() != null && !affected.contains(e.path()))
+                .filter(e -> ScriptFolderMapper.isUnderAny(e.path(), roots))
+                .toList()));
+
+        if (!affected.isEmpty()) {
+            current.addAll(scanner.scanScriptFolders(projectId, headSha, affected));
+        }
+
+        current.sort(Comparator.comparing(GitLabCommit::getPath));
+        return current;
+    }
+
+    private List<String> changedPathsFromMirror(long projectId, String baseSha, String headSha) {
+        List<String> changedPaths;
+        try {
+            changedPaths = mirrorService.changedPaths(projectId, baseSha, headSha);
+        } catch (Exception e) {
+            log.warn("Mirror diff {}..{} failed for project {}, falling back to full scan: {}",
+                    baseSha, headSha, projectId, e.getMessage());
+            return null;
+        }
+
+        if (changedPaths.size() >= gitLabProperties.getCompareMaxFiles() * 2) {
+            log.info("Diff {}..{} touches {} paths, falling back to full scan",
+                    baseSha, headSha, changedPaths.size());
+            return null;
+        }
+
+        log.info("Mirror diff {}..{}: {} changed path(s)", shortSha(baseSha), shortSha(headSha), changedPaths.size());
+        return changedPaths;
+    }
+
+    private static String shortSha(String sha) {
+        return sha.substring(0, Math.min(8, sha.length()));
+    }
+
+    private List<GitLabCommit> toCommits(List<SyncStateEntry> previous) {
+        return previous.stream()
+                .filter(e -> e != null && !e.isEmpty())
+                .map(e -> {
+                    GitLabCommit commit = new GitLabCommit();
+                    commit.setPath(e.path());
+                    commit.setSha(Objects.requireNonNullElse(e.commitSha(), ""));
+                    commit.setCommittedDate(Objects.requireNonNullElse(e.committedDate(), ""));
+                    commit.setFingerprint(Objects.requireNonNullElse(e.fingerprint(), ""));
+                    return commit;
+                })
+                .toList();
+    }
+
+    /**
+     * State rows written before fingerprints were stored can only be compared by
+     * commit SHA, so those folders get a one-off commit lookup.
+     */
+    private void resolveLegacyEntries(SyncRequest syncRequest,
+                                      String sourceRef,
+                                      List<SyncStateEntry> previous,
+                                      List<GitLabCommit> current) {
+        Map<String, SyncStateEntry> previousByPath = previous.stream()
+                .filter(e -> e.path() != null)
+                .collect(Collectors.toMap(SyncStateEntry::path, Function.identity(), (a, b) -> a));
+
+        List<GitLabCommit> legacy = current.stream()
+                .filter(c -> {
+                    SyncStateEntry prev = previousByPath.get(c.getPath());
+                    return prev != null && (prev.fingerprint() == null || prev.fingerprint().isBlank());
+                })
+                .toList();
+
+        if (legacy.isEmpty()) return;
+
+        log.info("Resolving commits for {} script(s) without a stored fingerprint", legacy.size());
+        scanner.resolveMissingCommits(syncRequest.getGitlabProjectId(), sourceRef, legacy);
     }
 }
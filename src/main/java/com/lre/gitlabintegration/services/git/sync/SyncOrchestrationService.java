@@ -1,10 +1,18 @@
 package com.lre.gitlabintegration.services.git.sync;
 
 import com.lre.gitlabintegration.client.api.GitLabApiClient;
+import com.lre.gitlabintegration.config.properties.LreProperties;
 import com.lre.gitlabintegration.dto.audit.AuditContext;
 import com.lre.gitlabintegration.dto.gitlab.GitLabProjectInfo;
+import com.lre.gitlabintegration.dto.sync.MultiTargetSyncRequest;
+import com.lre.gitlabintegration.dto.sync.MultiTargetSyncResponse;
+import com.lre.gitlabintegration.dto.sync.SyncJobStatus;
+import com.lre.gitlabintegration.dto.sync.SyncPlanResponse;
 import com.lre.gitlabintegration.dto.sync.SyncRequest;
 import com.lre.gitlabintegration.dto.sync.SyncResponse;
+import com.lre.gitlabintegration.dto.sync.SyncTarget;
+import com.lre.gitlabintegration.dto.sync.TargetSyncResponse;
+import com.lre.gitlabintegration.exceptions.LreException;
 import com.lre.gitlabintegration.repository.GitLabProjectCacheRepository;
 import com.lre.gitlabintegration.security.GitLabCiPrincipal;
 import com.lre.gitlabintegration.services.audit.AuditService;
@@ -15,6 +23,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -26,11 +43,282 @@ public class SyncOrchestrationService {
     private final AuditService auditService;
     private final GitLabProjectCacheRepository projectCacheRepo;
     private final GitLabApiClient gitLabApiClient;
+    private final MultiTargetSyncService multiTargetSyncService;
+    private final MergeRequestPreviewService previewService;
+    private final SyncControlRegistry controlRegistry;
+    private final CiJobWatchdog jobWatchdog;
+    private final LreProperties lreProperties;
+    private final SyncJobService jobService;
+    private final SyncPlanService planService;
+    private final SyncShutdownCoordinator shutdownCoordinator;
 
-    public SyncResponse handleSync(String domain, String project, Authentication authentication) {
+    public SyncResponse handleSync(String domain, String project, List<String> scriptRoots,
+                                   String deadline, Long timeoutSeconds, Authentication authentication) {
+        shutdownCoordinator.assertAccepting();
         domain = domain == null ? "" : domain.trim();
         project = project == null ? "" : project.trim();
 
+        GitLabCiPrincipal principal = requirePrincipal(domain, project, authentication);
+        AuditContext ctx = authorize(principal, lookupProjectInfo(principal), domain, project);
+
+        SyncRequest request = new SyncRequest(
+                principal.gitlabProjectId(),
+                principal.ref(),
+                domain,
+                project,
+                ScriptFolderMapper.normalizeRoots(scriptRoots)
+        );
+        request.setDeadline(resolveDeadline(deadline, timeoutSeconds, principal));
+
+        log.info("Sync request: gitlabProjectId={}, gitlabUserId={}, lreDomain={}, lreProject={}, ref={}",
+                principal.gitlabProjectId(), principal.gitlabUserId(), domain, project, principal.ref());
+
+        SyncResponse response;
+        CiJobWatchdog.Watch watch = jobWatchdog.watch(authentication, List.of(request));
+        try {
+            response = gitSyncService.sync(request);
+        } finally {
+            watch.close();
+        }
+        audit(ctx, response);
+        return response;
+    }
+
+    /**
+     * What a sync of the target would change, without changing anything. Not audited:
+     * nothing is done in LRE.
+     */
+    public SyncPlanResponse handlePlan(String domain, String project, List<String> scriptRoots,
+                                       Authentication authentication) {
+        domain = domain == null ? "" : domain.trim();
+        project = project == null ? "" : project.trim();
+
+        GitLabCiPrincipal principal = requirePrincipal(domain, project, authentication);
+        authorize(principal, lookupProjectInfo(principal), domain, project);
+
+        SyncRequest request = new SyncRequest(principal.gitlabProjectId(), principal.ref(), domain, project,
+                ScriptFolderMapper.normalizeRoots(scriptRoots));
+
+        log.info("Sync plan request: gitlabProjectId={}, gitlabUserId={}, lreDomain={}, lreProject={}, ref={}",
+                principal.gitlabProjectId(), principal.gitlabUserId(), domain, project, principal.ref());
+
+        return planService.plan(request);
+    }
+
+    /**
+     * Queues the sync as a background job. The CI job is not watched: the caller is
+     * expected to end before the sync does.
+     */
+    public SyncJobStatus handleSyncAsync(String domain, String project, List<String> scriptRoots,
+                                         String deadline, Long timeoutSeconds, Authentication authentication) {
+        shutdownCoordinator.assertAccepting();
+        domain = domain == null ? "" : domain.trim();
+        project = project == null ? "" : project.trim();
+
+        GitLabCiPrincipal principal = requirePrincipal(domain, project, authentication);
+        AuditContext ctx = authorize(principal, lookupProjectInfo(principal), domain, project);
+
+        SyncRequest request = new SyncRequest(principal.gitlabProjectId(), principal.ref(), domain, project,
+                ScriptFolderMapper.normalizeRoots(scriptRoots));
+        request.setDeadline(resolveDeadline(deadline, timeoutSeconds, principal));
+
+        log.info("Async sync request: gitlabProjectId={}, gitlabUserId={}, lreDomain={}, lreProject={}, ref={}",
+                principal.gitlabProjectId(), principal.gitlabUserId(), domain, project, principal.ref());
+
+        return jobService.submit(request, () -> gitSyncService.sync(request), response -> audit(ctx, response));
+    }
+
+    public SyncJobStatus handleJobStatus(String jobId, Authentication authentication) {
+        return jobService.status(jobId, requireJobOwner(authentication).gitlabProjectId());
+    }
+
+    public SseEmitter handleJobEvents(String jobId, Authentication authentication) {
+        return jobService.subscribe(jobId, requireJobOwner(authentication).gitlabProjectId());
+    }
+
+    /**
+     * Jobs are visible to CI jobs of the project that started them.
+     */
+    private GitLabCiPrincipal requireJobOwner(Authentication authentication) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof GitLabCiPrincipal principal)) {
+            throw new AccessDeniedException("Missing authentication");
+        }
+        return principal;
+    }
+
+    /**
+     * Stages the scripts changed by a merge request of the caller's project.
+     */
+    public SyncResponse handlePreview(String domain, String project, long mergeRequestIid, List<String> scriptRoots,
+                                      String deadline, Long timeoutSeconds, Authentication authentication) {
+        shutdownCoordinator.assertAccepting();
+        domain = domain == null ? "" : domain.trim();
+        project = project == null ? "" : project.trim();
+
+        GitLabCiPrincipal principal = requirePrincipal(domain, project, authentication);
+        AuditContext ctx = authorize(principal, lookupProjectInfo(principal), domain, project);
+
+        SyncRequest request = new SyncRequest(principal.gitlabProjectId(), principal.ref(), domain, project,
+                ScriptFolderMapper.normalizeRoots(scriptRoots));
+        request.setDeadline(resolveDeadline(deadline, timeoutSeconds, principal));
+
+        log.info("Preview request: gitlabProjectId={}, gitlabUserId={}, lreDomain={}, lreProject={}, mergeRequest=!{}",
+                principal.gitlabProjectId(), principal.gitlabUserId(), domain, project, mergeRequestIid);
+
+        SyncResponse response;
+        CiJobWatchdog.Watch watch = jobWatchdog.watch(authentication, List.of(request));
+        try {
+            response = previewService.preview(request, mergeRequestIid);
+        } finally {
+            watch.close();
+        }
+        audit(ctx, response);
+        return response;
+    }
+
+    /**
+     * Removes the scripts staged for a merge request of the caller's project.
+     */
+    public SyncResponse handlePreviewCleanup(String domain, String project, long mergeRequestIid,
+                                             Authentication authentication) {
+        shutdownCoordinator.assertAccepting();
+        domain = domain == null ? "" : domain.trim();
+        project = project == null ? "" : project.trim();
+
+        GitLabCiPrincipal principal = requirePrincipal(domain, project, authentication);
+        AuditContext ctx = authorize(principal, lookupProjectInfo(principal), domain, project);
+
+        SyncRequest request = new SyncRequest(principal.gitlabProjectId(), principal.ref(), domain, project);
+
+        log.info("Preview cleanup request: gitlabProjectId={}, gitlabUserId={}, lreDomain={}, lreProject={}, mergeRequest=!{}",
+                principal.gitlabProjectId(), principal.gitlabUserId(), domain, project, mergeRequestIid);
+
+        SyncResponse response = previewService.cleanup(request, mergeRequestIid);
+        audit(ctx, response);
+        return response;
+    }
+
+    /**
+     * Syncs the caller's project/ref to every target. All targets are authorized
+     * before any of them is synced; one denied target rejects the whole request.
+     */
+    public MultiTargetSyncResponse handleMultiSync(MultiTargetSyncRequest body, String deadline, Long timeoutSeconds,
+                                                   Authentication authentication) {
+        shutdownCoordinator.assertAccepting();
+        List<SyncTarget> targets = distinctTargets(body);
+        if (targets.isEmpty()) {
+            throw new LreException("At least one sync target is required");
+        }
+
+        List<String> scriptRoots = ScriptFolderMapper.normalizeRoots(
+                body.scriptRoots() == null ? List.of() : body.scriptRoots());
+
+        GitLabCiPrincipal principal = null;
+        GitLabProjectInfo projectInfo = null;
+        Instant until = null;
+        List<AuditContext> contexts = new ArrayList<>(targets.size());
+        List<SyncRequest> requests = new ArrayList<>(targets.size());
+
+        for (SyncTarget target : targets) {
+            principal = requirePrincipal(target.domain(), target.project(), authentication);
+            if (contexts.isEmpty()) {
+                projectInfo = lookupProjectInfo(principal);
+                until = resolveDeadline(deadline, timeoutSeconds, principal);
+            }
+
+            contexts.add(authorize(principal, projectInfo, target.domain(), target.project()));
+            SyncRequest request = new SyncRequest(
+                    principal.gitlabProjectId(), principal.ref(), target.domain(), target.project(), scriptRoots);
+            request.setDeadline(until);
+            requests.add(request);
+        }
+
+        log.info("Multi-target sync request: gitlabProjectId={}, gitlabUserId={}, ref={}, targets={}",
+                principal.gitlabProjectId(), principal.gitlabUserId(), principal.ref(), targets);
+
+        List<SyncResponse> responses;
+        CiJobWatchdog.Watch watch = jobWatchdog.watch(authentication, requests);
+        try {
+            responses = multiTargetSyncService.syncAll(requests);
+        } finally {
+            watch.close();
+        }
+
+        List<TargetSyncResponse> results = new ArrayList<>(responses.size());
+        for (int i = 0; i < responses.size(); i++) {
+            audit(contexts.get(i), responses.get(i));
+            results.add(new TargetSyncResponse(targets.get(i).domain(), targets.get(i).project(), responses.get(i)));
+        }
+
+        return MultiTargetSyncResponse.builder()
+                .success(responses.stream().allMatch(SyncResponse::success))
+                .targets(results)
+                .build();
+    }
+
+    /**
+     * Stops the caller's running sync of the target. It ends at its next checkpoint
+     * and reports what it did until then.
+     *
+     * @return false when no sync of the target is running on this instance
+     */
+    public boolean handleCancel(String domain, String project, Authentication authentication) {
+        domain = domain == null ? "" : domain.trim();
+        project = project == null ? "" : project.trim();
+
+        GitLabCiPrincipal principal = requirePrincipal(domain, project, authentication);
+        authorize(principal, lookupProjectInfo(principal), domain, project);
+
+        SyncRequest request = new SyncRequest(principal.gitlabProjectId(), principal.ref(), domain, project);
+        return controlRegistry.cancel(request, "Cancelled by " + username(principal));
+    }
+
+    /**
+     * The earlier of an explicit deadline and the CI job timeout counted from the
+     * job's start, less a margin to save state and answer.
+     *
+     * @param deadline       ISO-8601 instant, e.g. 2026-01-31T12:00:00Z
+     * @param timeoutSeconds the job timeout, e.g. $CI_JOB_TIMEOUT
+     * @return null when neither is given
+     */
+    private Instant resolveDeadline(String deadline, Long timeoutSeconds, GitLabCiPrincipal principal) {
+        Instant explicit = null;
+        if (deadline != null && !deadline.isBlank()) {
+            try {
+                explicit = Instant.parse(deadline.trim());
+            } catch (DateTimeParseException e) {
+                throw new LreException("Invalid X-Sync-Deadline, expected an ISO-8601 instant: " + deadline);
+            }
+        }
+
+        Instant fromTimeout = null;
+        if (timeoutSeconds != null) {
+            if (timeoutSeconds <= 0) {
+                throw new LreException("Invalid X-Sync-Timeout, expected a positive number of seconds: " + timeoutSeconds);
+            }
+            Instant start = principal.jobStartedAt() == null ? Instant.now() : principal.jobStartedAt();
+            fromTimeout = start.plusSeconds(timeoutSeconds).minus(lreProperties.getDeadlineMargin());
+        }
+
+        if (explicit == null) return fromTimeout;
+        if (fromTimeout == null) return explicit;
+        return explicit.isBefore(fromTimeout) ? explicit : fromTimeout;
+    }
+
+    private List<SyncTarget> distinctTargets(MultiTargetSyncRequest body) {
+        if (body == null || body.targets() == null) return List.of();
+
+        Map<String, SyncTarget> byKey = new LinkedHashMap<>();
+        for (SyncTarget target : body.targets()) {
+            if (target == null) continue;
+            String domain = target.domain() == null ? "" : target.domain().trim();
+            String project = target.project() == null ? "" : target.project().trim();
+            byKey.putIfAbsent((domain + "/" + project).toLowerCase(Locale.ROOT), new SyncTarget(domain, project));
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    private GitLabCiPrincipal requirePrincipal(String domain, String project, Authentication authentication) {
         if (authentication == null || authentication.getPrincipal() == null) {
             auditService.insertDenied(domain, project, "Missing authentication");
             throw new AccessDeniedException("Missing authentication");
@@ -41,52 +329,54 @@ public class SyncOrchestrationService {
             throw new AccessDeniedException("Invalid principal type");
         }
 
-        String username = principal.gitlabUsername() == null ? "" : principal.gitlabUsername().trim();
-        int tag = principal.tag() ? 1 : 0;
-        var ctx = new AuditContext(principal, null, username, domain, project, tag);
-
-        if (username.isEmpty()) {
-            auditService.insertAudit(ctx, AuditStatus.DENIED, "Missing username");
+        if (username(principal).isEmpty()) {
+            auditService.insertAudit(auditContext(principal, null, domain, project), AuditStatus.DENIED, "Missing username");
             throw new AccessDeniedException("Missing username");
         }
+        return principal;
+    }
 
-        // Project info is nice-to-have for audit; do not block if lookup fails
-        GitLabProjectInfo projectInfo = null;
-        try {
-            projectInfo = getGitLabProjectInfo(principal.gitlabProjectId());
-        } catch (Exception e) {
-            log.warn("Failed to resolve GitLab project info for projectId={}: {}",
-                    principal.gitlabProjectId(), e.getMessage());
-        }
-
-        ctx = new AuditContext(principal, projectInfo, username, domain, project, tag);
+    private AuditContext authorize(GitLabCiPrincipal principal, GitLabProjectInfo projectInfo,
+                                   String domain, String project) {
+        AuditContext ctx = auditContext(principal, projectInfo, domain, project);
         try {
-            lreAuthorizationService.assertUserHasProjectAccess(username, domain, project);
+            lreAuthorizationService.assertUserHasProjectAccess(ctx.username(), domain, project);
         } catch (AccessDeniedException ex) {
 
             auditService.insertAudit(ctx, AuditStatus.DENIED, ex.getMessage());
             throw ex;
         }
+        return ctx;
+    }
 
-        SyncRequest request = new SyncRequest(
-                principal.gitlabProjectId(),
-                principal.ref(),
-                domain,
-                project
-        );
+    private AuditContext auditContext(GitLabCiPrincipal principal, GitLabProjectInfo projectInfo,
+                                      String domain, String project) {
+        return new AuditContext(principal, projectInfo, username(principal), domain, project, principal.tag() ? 1 : 0);
+    }
 
-        log.info("Sync request: gitlabProjectId={}, gitlabUserId={}, lreDomain={}, lreProject={}, ref={}",
-                principal.gitlabProjectId(), principal.gitlabUserId(), domain, project, principal.ref());
+    private static String username(GitLabCiPrincipal principal) {
+        return principal.gitlabUsername() == null ? "" : principal.gitlabUsername().trim();
+    }
 
-        SyncResponse response = gitSyncService.sync(request);
+    /**
+     * Project info is nice-to-have for audit; do not block if lookup fails
+     */
+    private GitLabProjectInfo lookupProjectInfo(GitLabCiPrincipal principal) {
+        try {
+            return getGitLabProjectInfo(principal.gitlabProjectId());
+        } catch (Exception e) {
+            log.warn("Failed to resolve GitLab project info for projectId={}: {}",
+                    principal.gitlabProjectId(), e.getMessage());
+            return null;
+        }
+    }
 
+    private void audit(AuditContext ctx, SyncResponse response) {
         auditService.insertAudit(
                 ctx,
                 response.success() ? AuditStatus.SUCCESS : AuditStatus.FAIL,
                 response.success() ? null : "Sync failed"
         );
-
-        return response;
     }
 
     private GitLabProjectInfo getGitLabProjectInfo(long gitlabProjectId) {
@@ -0,0 +1,83 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Script lists computed ahead of a sync (e.g. from a push webhook or a dry run), keyed
+ * by LRE target. A plan is only valid for the exact base..head pair and script roots it
+ * was computed for; a null base stands for a target without a synced HEAD.
+ */
+@Slf4j
+@Component
+public class SyncPlanCache {
+
+    private final Map<String, SyncPlan> plans = new ConcurrentHashMap<>();
+    private final Duration ttl;
+
+    public SyncPlanCache(GitLabProperties gitLabProperties) {
+        this.ttl = gitLabProperties.getWebhook().getPlanTtl();
+    }
+
+    private record SyncPlan(String baseSha, String headSha, List<String> scriptRoots,
+                            List<GitLabCommit> current, Instant createdAt) {
+    }
+
+    public void put(SyncRequest request, String baseSha, String headSha, List<GitLabCommit> current) {
+        plans.put(key(request), new SyncPlan(baseSha, headSha, roots(request), List.copyOf(current), Instant.now()));
+        evictExpired();
+    }
+
+    /**
+     * Removes and returns the plan for the target if it was computed for baseSha..headSha
+     * and the request's script roots.
+     *
+     * @return the planned current scripts, or null when there is no usable plan
+     */
+    public List<GitLabCommit> take(SyncRequest request, String baseSha, String headSha) {
+        if (headSha == null) return null;
+
+        SyncPlan plan = plans.remove(key(request));
+        if (plan == null) return null;
+
+        if (isExpired(plan) || !Objects.equals(baseSha, plan.baseSha()) || !headSha.equals(plan.headSha())
+                || !roots(request).equals(plan.scriptRoots())) {
+            log.debug("Discarding stale sync plan for {}/{} ({}..{})",
+                    request.getLreDomain(), request.getLreProject(), plan.baseSha(), plan.headSha());
+            return null;
+        }
+        return new ArrayList<>(plan.current());
+    }
+
+    public boolean contains(SyncRequest request, String headSha) {
+        SyncPlan plan = plans.get(key(request));
+        return plan != null && !isExpired(plan) && plan.headSha().equals(headSha);
+    }
+
+    private void evictExpired() {
+        plans.values().removeIf(this::isExpired);
+    }
+
+    private boolean isExpired(SyncPlan plan) {
+        return plan.createdAt().plus(ttl).isBefore(Instant.now());
+    }
+
+    private static List<String> roots(SyncRequest request) {
+        return request.getScriptRoots() == null ? List.of() : List.copyOf(request.getScriptRoots());
+    }
+
+    private static String key(SyncRequest request) {
+        return request.getGitlabProjectId() + "|" + request.getLreDomain() + "|" + request.getLreProject();
+    }
+}
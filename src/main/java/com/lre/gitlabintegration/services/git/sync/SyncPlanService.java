@@ -0,0 +1,97 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.ScriptMove;
+import com.lre.gitlabintegration.dto.sync.SyncContext;
+import com.lre.gitlabintegration.dto.sync.SyncPlanResponse;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncResult;
+import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
+import com.lre.gitlabintegration.repository.SyncHeadRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Dry run of a sync: resolves and analyzes like a real sync but takes no lock, never
+ * talks to LRE and packages nothing. The scanned scripts are kept in the plan cache,
+ * so a sync of the same target at the same HEAD skips the scan.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SyncPlanService {
+
+    private static final String MODE_INITIAL = "INITIAL";
+    private static final String MODE_INCREMENTAL = "INCREMENTAL";
+    private static final String MODE_UNCHANGED = "UNCHANGED";
+
+    private final SyncModeResolver modeResolver;
+    private final SyncAnalyzer analyzer;
+    private final SyncPlanCache planCache;
+
+    public SyncPlanResponse plan(SyncRequest request) {
+        SyncContext ctx = modeResolver.resolve(request);
+
+        if (ctx.headUnchanged()) {
+            List<String> unchanged = paths(ctx.current());
+            return SyncPlanResponse.builder()
+                    .mode(MODE_UNCHANGED)
+                    .headSha(ctx.headSha())
+                    .unchangedCount(unchanged.size())
+                    .toUpload(List.of())
+                    .toDelete(List.of())
+                    .toMove(List.of())
+                    .unchanged(unchanged)
+                    .build();
+        }
+
+        SyncResult result = ctx.isInitial()
+                ? new SyncResult(ctx.current(), List.of(), List.of())
+                : analyzer.analyze(ctx.previous(), ctx.current());
+
+        cache(ctx);
+
+        List<SyncPlanResponse.PlannedMove> moves = result.scriptsToMove().stream()
+                .map(SyncPlanService::plannedMove)
+                .toList();
+
+        log.info("Sync plan for {}/{} at {}: upload={}, delete={}, move={}, unchanged={}",
+                request.getLreDomain(), request.getLreProject(), ctx.headSha(),
+                result.scriptsToUpload().size(), result.scriptsToDelete().size(),
+                moves.size(), result.unchangedScripts().size());
+
+        return SyncPlanResponse.builder()
+                .mode(ctx.isInitial() ? MODE_INITIAL : MODE_INCREMENTAL)
+                .headSha(ctx.headSha())
+                .uploadCount(result.scriptsToUpload().size())
+                .deleteCount(result.scriptsToDelete().size())
+                .moveCount(moves.size())
+                .unchangedCount(result.unchangedScripts().size())
+                .toUpload(paths(result.scriptsToUpload()))
+                .toDelete(result.scriptsToDelete().stream().map(SyncStateEntry::path).toList())
+                .toMove(moves)
+                .unchanged(paths(result.unchangedScripts()))
+                .build();
+    }
+
+    /**
+     * A plan is only reusable against a known HEAD; the sync checks the same base.
+     */
+    private void cache(SyncContext ctx) {
+        if (ctx.headSha() == null) return;
+
+        SyncHeadRepository.SyncHead synced = ctx.previous().isEmpty() ? null : modeResolver.syncedHead(ctx.request());
+        planCache.put(ctx.request(), synced == null ? null : synced.headSha(), ctx.headSha(), ctx.current());
+    }
+
+    private static SyncPlanResponse.PlannedMove plannedMove(ScriptMove move) {
+        return new SyncPlanResponse.PlannedMove(move.from().path(), move.to().getPath());
+    }
+
+    private static List<String> paths(List<GitLabCommit> commits) {
+        return commits.stream().map(GitLabCommit::getPath).toList();
+    }
+}
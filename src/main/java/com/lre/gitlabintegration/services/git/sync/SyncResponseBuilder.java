@@ -6,8 +6,12 @@ import com.lre.gitlabintegration.dto.testplan.TestPlanCreationRequest;
 import com.lre.gitlabintegration.util.path.PathUtils;
 import lombok.experimental.UtilityClass;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static com.lre.gitlabintegration.util.constants.AppConstants.STATUS_FAILED;
+import static com.lre.gitlabintegration.util.constants.AppConstants.STATUS_SUCCESS;
+
 @UtilityClass
 public class SyncResponseBuilder {
 
@@ -16,10 +20,10 @@ public class SyncResponseBuilder {
         boolean success = failed.isEmpty();
 
         SyncSummary summary = new SyncSummary(
-                successful.size(), 0, 0, failed.size());
+                successful.size(), 0, 0, 0, failed.size());
 
         CategorizedChanges changes = new CategorizedChanges(
-                successful, List.of(), List.of(), failed);
+                successful, List.of(), List.of(), List.of(), failed);
 
         return SyncResponse.builder()
                 .success(success)
@@ -30,16 +34,17 @@ public class SyncResponseBuilder {
 
     public static SyncResponse incremental(List<ScriptChange> updatedSuccess,
                                            List<ScriptChange> deletedSuccess,
+                                           List<ScriptChange> movedSuccess,
                                            List<ScriptChange> unchanged,
                                            List<ScriptChange> failed) {
 
         boolean success = failed.isEmpty();
 
         SyncSummary summary = new SyncSummary(
-                updatedSuccess.size(), deletedSuccess.size(), unchanged.size(), failed.size());
+                updatedSuccess.size(), deletedSuccess.size(), movedSuccess.size(), unchanged.size(), failed.size());
 
         CategorizedChanges changes = new CategorizedChanges(
-                updatedSuccess, deletedSuccess, unchanged, failed
+                updatedSuccess, deletedSuccess, movedSuccess, unchanged, failed
         );
 
         return SyncResponse.builder()
@@ -49,13 +54,51 @@ public class SyncResponseBuilder {
                 .build();
     }
 
+    public static ChangeGroups categorize(List<ScriptChange> uploads, List<ScriptChange> deletes,
+                                          List<ScriptChange> moves) {
+
+        List<ScriptChange> uploadedSuccess = new ArrayList<>();
+        List<ScriptChange> deletedSuccess = new ArrayList<>();
+        List<ScriptChange> movedSuccess = new ArrayList<>();
+        List<ScriptChange> failed = new ArrayList<>();
+
+        // Process uploads
+        for (ScriptChange c : uploads) {
+            if (STATUS_SUCCESS.equals(c.status())) {
+                uploadedSuccess.add(c);
+            } else if (STATUS_FAILED.equals(c.status())) {
+                failed.add(c);
+            }
+        }
+
+        // Process deletes
+        for (ScriptChange c : deletes) {
+            if (STATUS_SUCCESS.equals(c.status())) {
+                deletedSuccess.add(c);
+            } else if (STATUS_FAILED.equals(c.status())) {
+                failed.add(c);
+            }
+        }
+
+        // Process moves
+        for (ScriptChange c : moves) {
+            if (STATUS_SUCCESS.equals(c.status())) {
+                movedSuccess.add(c);
+            } else if (STATUS_FAILED.equals(c.status())) {
+                failed.add(c);
+            }
+        }
+
+        return new ChangeGroups(uploadedSuccess, deletedSuccess, movedSuccess, failed);
+    }
+
     public static SyncResponse noChanges(List<ScriptChange> unchanged) {
         SyncSummary summary = new SyncSummary(
-                0, 0, unchanged.size(), 0
+                0, 0, 0, unchanged.size(), 0
         );
 
         CategorizedChanges changes = new CategorizedChanges(
-                List.of(), List.of(), unchanged, List.of()
+                List.of(), List.of(), List.of(), unchanged, List.of()
         );
 
         return SyncResponse.builder()
@@ -74,11 +117,11 @@ public class SyncResponseBuilder {
         );
 
         SyncSummary summary = new SyncSummary(
-                0, 0, 0, 1
+                0, 0, 0, 0, 1
         );
 
         CategorizedChanges changes = new CategorizedChanges(
-                List.of(), List.of(), List.of(), List.of(failed)
+                List.of(), List.of(), List.of(), List.of(), List.of(failed)
         );
 
         return SyncResponse.builder()
@@ -0,0 +1,89 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.ChangeGroups;
+import com.lre.gitlabintegration.dto.sync.ScriptChange;
+import com.lre.gitlabintegration.dto.sync.ScriptMove;
+import com.lre.gitlabintegration.dto.sync.ShardScript;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncShard;
+import com.lre.gitlabintegration.repository.SyncStateRepository;
+import com.lre.gitlabintegration.services.lre.authsession.LreSessionManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.lre.gitlabintegration.util.constants.AppConstants.STATUS_SUCCESS;
+
+/**
+ * Executes one shard of a sharded sync and commits its part of the sync state.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SyncShardWorker {
+
+    private final LreSyncService lreSyncService;
+    private final SyncStateRepository stateRepository;
+    private final LreSessionManager lreSessionManager;
+
+    public ChangeGroups run(SyncShard shard) {
+        SyncRequest req = shard.request();
+        log.info("Running shard '{}' of project {} ({} change(s))", shard.key(), req.getLreProject(), shard.size());
+
+        lreSessionManager.ensureAuthenticated(req.getLreDomain(), req.getLreProject());
+
+        List<GitLabCommit> uploads = shard.uploads().stream().map(ShardScript::toCommit).toList();
+        List<ScriptMove> moves = shard.moves().stream().map(SyncShard.Move::toScriptMove).toList();
+
+        List<ScriptChange> uploadChanges = lreSyncService.uploadScripts(req, shard.sourceRef(), uploads);
+        List<ScriptChange> moveChanges = lreSyncService.moveScripts(req, shard.sourceRef(), moves);
+        List<ScriptChange> deleteChanges = lreSyncService.deleteScripts(req, shard.deletes());
+
+        ChangeGroups groups = SyncResponseBuilder.categorize(uploadChanges, deleteChanges, moveChanges);
+        commitState(req, uploads, moves, moveChanges, groups);
+        return groups;
+    }
+
+    /**
+     * Only rows of this shard's paths are written. Failed uploads and deletes keep
+     * their previous row, so the next sync retries them.
+     */
+    private void commitState(SyncRequest req, List<GitLabCommit> uploads, List<ScriptMove> moves,
+                             List<ScriptChange> moveChanges, ChangeGroups groups) {
+        Map<String, GitLabCommit> uploadsByPath = new HashMap<>();
+        uploads.forEach(c -> uploadsByPath.put(c.getPath(), c));
+
+        List<GitLabCommit> written = new ArrayList<>();
+        Map<String, Integer> idsByPath = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+
+        for (ScriptChange change : groups.uploadedSuccess()) {
+            GitLabCommit commit = uploadsByPath.get(change.path());
+            if (commit == null) continue;
+            written.add(commit);
+            if (change.lreScriptId() != null) idsByPath.put(change.path(), change.lreScriptId());
+        }
+
+        for (int i = 0; i < moves.size(); i++) {
+            ScriptChange change = moveChanges.get(i);
+            if (change.lreScriptId() != null) {
+                written.add(moves.get(i).to());
+                idsByPath.put(change.path(), change.lreScriptId());
+            }
+            if (STATUS_SUCCESS.equals(change.status())) {
+                removed.add(moves.get(i).from().path());
+            }
+        }
+
+        groups.deletedSuccess().forEach(change -> removed.add(change.path()));
+
+        stateRepository.upsertCommits(req, written, idsByPath);
+        stateRepository.deletePaths(req, removed);
+    }
+}
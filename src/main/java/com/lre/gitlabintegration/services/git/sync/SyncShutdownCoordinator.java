@@ -0,0 +1,174 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.exceptions.ServerErrorException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Drains syncs when the application shuts down, e.g. during a rolling deploy, instead
+ * of killing them mid-upload.
+ * <p>
+ * Stops first of all lifecycle beans, while the web server still answers:
+ * <ol>
+ *     <li>new syncs, jobs and previews are refused with 503 so callers retry on
+ *     another instance; job status and event streams keep working;</li>
+ *     <li>syncs already running or queued get {@code lre.shutdown.grace-period} to
+ *     finish;</li>
+ *     <li>the rest are cancelled and get {@code lre.shutdown.cancel-timeout} to stop
+ *     at a checkpoint. A cancelled sync saves what it finished to the sync state,
+ *     releases its lock and clears its HEAD, so the next sync, on any instance, picks
+ *     up the scripts it did not get to.</li>
+ * </ol>
+ * Keep {@code spring.lifecycle.timeout-per-shutdown-phase} above both durations.
+ */
+@Slf4j
+@Component
+public class SyncShutdownCoordinator implements SmartLifecycle {
+
+    private static final String SHUTDOWN_REASON = "Instance is shutting down";
+    private static final long POLL_MILLIS = 250;
+
+    private final LreProperties.Shutdown config;
+    private final SyncJobService jobService;
+
+    /** Running syncs by control, counted per track call so a control tracked twice stays until both end. */
+    private final Map<SyncControl, Integer> active = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile boolean draining;
+    private volatile boolean cancelling;
+
+    public SyncShutdownCoordinator(LreProperties lreProperties, SyncJobService jobService) {
+        this.config = lreProperties.getShutdown();
+        this.jobService = jobService;
+    }
+
+    /**
+     * Refuses work that would start a sync once shutdown has begun.
+     */
+    public void assertAccepting() {
+        if (draining) {
+            throw new ServerErrorException(SHUTDOWN_REASON + ", retry on another instance",
+                    HttpStatus.SERVICE_UNAVAILABLE, null);
+        }
+    }
+
+    public boolean isAccepting() {
+        return !draining;
+    }
+
+    /**
+     * Counts the sync as in flight until the returned handle is closed. Once the grace
+     * period is over the sync is cancelled right away.
+     */
+    public Tracked track(SyncControl control) {
+        if (control == SyncControl.NONE) return Tracked.NONE;
+
+        active.merge(control, 1, Integer::sum);
+
+        if (cancelling) control.cancel(SHUTDOWN_REASON);
+        return new Tracked(this, control);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        drain();
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        Thread thread = new Thread(() -> {
+            try {
+                drain();
+            } finally {
+                callback.run();
+            }
+        }, "sync-shutdown");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Before the web server's graceful shutdown, so blocking sync requests still get
+     * their response.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    private void drain() {
+        draining = true;
+        log.info("Shutdown: no longer accepting syncs, waiting up to {} for {} running sync(s) and {} background job(s)",
+                config.getGracePeriod(), active.size(), jobService.pendingCount());
+
+        if (!awaitIdle(config.getGracePeriod())) {
+            cancelling = true;
+            log.warn("Shutdown: grace period over, cancelling {} sync(s)", active.size());
+            active.keySet().forEach(control -> control.cancel(SHUTDOWN_REASON));
+
+            if (!awaitIdle(config.getCancelTimeout())) {
+                log.warn("Shutdown: {} sync(s) did not stop in time; their journals are recovered at the next start",
+                        active.size());
+            }
+        }
+
+        // a sync that slipped in after the drain is stopped at once
+        cancelling = true;
+        jobService.closeStreams();
+        running = false;
+        log.info("Shutdown: syncs drained");
+    }
+
+    /**
+     * @return false when syncs or jobs were still in flight at the timeout
+     */
+    private boolean awaitIdle(Duration timeout) {
+        long until = System.nanoTime() + timeout.toNanos();
+        while (!active.isEmpty() || jobService.pendingCount() > 0) {
+            if (System.nanoTime() >= until) return false;
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static final class Tracked implements AutoCloseable {
+
+        static final Tracked NONE = new Tracked(null, null);
+
+        private final SyncShutdownCoordinator coordinator;
+        private final SyncControl control;
+
+        private Tracked(SyncShutdownCoordinator coordinator, SyncControl control) {
+            this.coordinator = coordinator;
+            this.control = control;
+        }
+
+        @Override
+        public void close() {
+            if (control != null) coordinator.active.computeIfPresent(control, (c, n) -> n > 1 ? n - 1 : null);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.lre.gitlabintegration.services.git.sync;
 
 import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
 import com.lre.gitlabintegration.dto.sync.ScriptChange;
+import com.lre.gitlabintegration.dto.sync.ScriptMove;
 import com.lre.gitlabintegration.dto.sync.SyncContext;
 import com.lre.gitlabintegration.dto.sync.SyncRequest;
 import com.lre.gitlabintegration.dto.sync.SyncResult;
@@ -15,6 +16,8 @@ import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static com.lre.gitlabintegration.util.constants.AppConstants.STATUS_SUCCESS;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -26,7 +29,8 @@ public class SyncStateUpdater {
             SyncContext ctx,
             SyncResult result,
             List<ScriptChange> uploadedSuccess,
-            List<ScriptChange> deletedSuccess
+            List<ScriptChange> deletedSuccess,
+            List<ScriptChange> moveChanges
     ) {
         SyncRequest req = ctx.request();
         List<SyncStateEntry> previous = ctx.previous();
@@ -57,22 +61,24 @@ public class SyncStateUpdater {
             putCommit(commit, change.lreScriptId(), state, idsByPath, previousByPath);
         }
 
-        // 3) failed uploads
+        // 3) failed uploads keep their previous version, so the next sync uploads them again
         for (String path : failedUploadPaths(result, uploadedPaths)) {
-            GitLabCommit commit = currentByPath.get(path);
             SyncStateEntry prev = previousByPath.get(path);
-            if (prev != null) putCommit(commit, prev.lreScriptId(), state, idsByPath, previousByPath);
-
+            if (prev != null) putCommit(toCommit(prev), prev.lreScriptId(), state, idsByPath, previousByPath);
         }
 
         // 4) failed deletes
         for (String path : failedDeletePaths(result, deletedPaths)) {
-            GitLabCommit commit = currentByPath.get(path);
-            putCommit(commit, null, state, idsByPath, previousByPath);
+            SyncStateEntry prev = previousByPath.get(path);
+            if (prev == null) continue;
+            putCommit(toCommit(prev), prev.lreScriptId(), state, idsByPath, previousByPath);
             log.debug("Keeping script {} in state for delete retry", path);
         }
 
-        // 5) remove successful deletes
+        // 5) moves
+        applyMoves(result, moveChanges, state, idsByPath, previousByPath);
+
+        // 6) remove successful deletes
         for (String path : deletedPaths) {
             state.remove(path);
             idsByPath.remove(path);
@@ -84,6 +90,42 @@ public class SyncStateUpdater {
         logStateSummary(result, uploadedPaths, deletedPaths, newState);
     }
 
+    /**
+     * The new path is recorded once its upload succeeded; the old path is kept until
+     * its script is deleted, so an incomplete move is retried as a move or a delete.
+     */
+    private void applyMoves(
+            SyncResult result,
+            List<ScriptChange> moveChanges,
+            Map<String, GitLabCommit> state,
+            Map<String, Integer> idsByPath,
+            Map<String, SyncStateEntry> previousByPath
+    ) {
+        Map<String, ScriptChange> changesByPath = indexByPath(moveChanges, ScriptChange::path);
+
+        for (ScriptMove move : result.scriptsToMove()) {
+            ScriptChange change = changesByPath.get(move.to().getPath());
+            boolean uploaded = change != null && change.lreScriptId() != null;
+            boolean completed = change != null && STATUS_SUCCESS.equals(change.status());
+
+            if (uploaded) {
+                putCommit(move.to(), change.lreScriptId(), state, idsByPath, previousByPath);
+            }
+            if (!completed) {
+                putCommit(toCommit(move.from()), move.from().lreScriptId(), state, idsByPath, previousByPath);
+            }
+        }
+    }
+
+    private GitLabCommit toCommit(SyncStateEntry entry) {
+        GitLabCommit commit = new GitLabCommit();
+        commit.setPath(entry.path());
+        commit.setSha(Objects.requireNonNullElse(entry.commitSha(), ""));
+        commit.setCommittedDate(Objects.requireNonNullElse(entry.committedDate(), ""));
+        commit.setFingerprint(Objects.requireNonNullElse(entry.fingerprint(), ""));
+        return commit;
+    }
+
     private <T> Map<String, T> indexByPath(List<T> list, Function<T, String> pathExtractor) {
         return list.stream()
                 .filter(Objects::nonNull)
@@ -141,10 +183,11 @@ public class SyncStateUpdater {
         int failedDeletes = result.scriptsToDelete().size() - deletedPaths.size();
 
         log.info(
-                "Rebuilt state: {} total scripts (uploaded={}, deleted={}, unchanged={}, failedUploads={}, failedDeletes={})",
+                "Rebuilt state: {} total scripts (uploaded={}, deleted={}, moved={}, unchanged={}, failedUploads={}, failedDeletes={})",
                 newState.size(),
                 uploadedPaths.size(),
                 deletedPaths.size(),
+                result.scriptsToMove().size(),
                 result.unchangedScripts().size(),
                 failedUploads,
                 failedDeletes
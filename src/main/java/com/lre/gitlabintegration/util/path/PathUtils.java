@@ -16,7 +16,7 @@ public class PathUtils {
         String normalized = path.replace("/", "\\");
 
         // Step 2: Remove repeated backslashes with possessive quantifier
-        normalized = normalized.replaceAll("\\\\++", "\\");
+        normalized = normalized.replaceAll("\\\\++", "\\\\");
 
         // Step 3: Trim leading backslashes with possessive quantifier
         normalized = normalized.replaceAll("^\\\\++", "");
@@ -72,3 +72,132 @@ CREATE INDEX IF NOT EXISTS idx_audit_ts ON audit_gitlab_lre_usage(ts_utc);
 CREATE INDEX IF NOT EXISTS idx_audit_user ON audit_gitlab_lre_usage(gitlab_username);
 CREATE INDEX IF NOT EXISTS idx_audit_project ON audit_gitlab_lre_usage(gitlab_project_id);
 CREATE INDEX IF NOT EXISTS idx_audit_lre ON audit_gitlab_lre_usage(lre_domain, lre_project);
+
+
+-- Last synced state per script folder and LRE target
+CREATE TABLE IF NOT EXISTS gitlab_lre_sync_state (
+  gitlab_project_id     INTEGER NOT NULL,
+  lre_domain            TEXT NOT NULL COLLATE NOCASE,
+  lre_project           TEXT NOT NULL COLLATE NOCASE,
+  lre_script_id         INTEGER,
+  script_path_unix      TEXT NOT NULL,
+  commit_sha            TEXT,
+  committed_date        TEXT,
+  content_fingerprint   TEXT,             -- tree SHA of the script folder
+  last_synced_at        TEXT NOT NULL,
+  PRIMARY KEY (gitlab_project_id, lre_domain, lre_project, script_path_unix)
+);
+
+-- Existing databases: ALTER TABLE gitlab_lre_sync_state ADD COLUMN content_fingerprint TEXT;
+
+
+-- Ref HEAD that was last fully synced per LRE target
+CREATE TABLE IF NOT EXISTS gitlab_lre_sync_head (
+  gitlab_project_id     INTEGER NOT NULL,
+  lre_domain            TEXT NOT NULL COLLATE NOCASE,
+  lre_project           TEXT NOT NULL COLLATE NOCASE,
+  ref                   TEXT,
+  head_sha              TEXT NOT NULL,
+  script_roots          TEXT,              -- roots the HEAD was synced with, one per line; empty for all
+  synced_at             TEXT NOT NULL,
+  PRIMARY KEY (gitlab_project_id, lre_domain, lre_project)
+);
+
+-- Existing databases: ALTER TABLE gitlab_lre_sync_head ADD COLUMN script_roots TEXT;
+
+-- Folders that hold a project's LoadRunner scripts; scans only walk these subtrees.
+-- A project without rows is scanned from the repository root.
+CREATE TABLE IF NOT EXISTS gitlab_script_root (
+  gitlab_project_id     INTEGER NOT NULL,
+  root_path             TEXT NOT NULL,     -- repository-relative, no leading or trailing slash
+  PRIMARY KEY (gitlab_project_id, root_path)
+);
+
+
+-- Shards of a large sync. Any worker thread or instance sharing this database may
+-- claim a PENDING shard; the job that created them collects the results.
+CREATE TABLE IF NOT EXISTS gitlab_lre_sync_shard (
+  job_id                TEXT NOT NULL,
+  shard_no              INTEGER NOT NULL,
+  shard_key             TEXT NOT NULL,     -- top-level script folder(s) of the shard
+  status                TEXT NOT NULL,     -- PENDING / RUNNING / DONE / FAILED
+  payload               TEXT NOT NULL,     -- JSON: target, revision and script changes
+  result                TEXT,              -- JSON: change groups of the shard
+  claimed_by            TEXT,
+  claimed_at            INTEGER,           -- epoch millis
+  created_at            TEXT NOT NULL,
+  PRIMARY KEY (job_id, shard_no)
+);
+
+CREATE INDEX IF NOT EXISTS idx_sync_shard_status
+  ON gitlab_lre_sync_shard(status, created_at);
+
+
+-- Scripts staged in LRE by merge request previews. Kept apart from
+-- gitlab_lre_sync_state so previews never affect what the mainline sync sees.
+CREATE TABLE IF NOT EXISTS gitlab_lre_preview_state (
+  gitlab_project_id     INTEGER NOT NULL,
+  merge_request_iid     INTEGER NOT NULL,
+  lre_domain            TEXT NOT NULL COLLATE NOCASE,
+  lre_project           TEXT NOT NULL COLLATE NOCASE,
+  lre_script_id         INTEGER,
+  script_path_unix      TEXT NOT NULL,
+  commit_sha            TEXT,
+  committed_date        TEXT,
+  content_fingerprint   TEXT,
+  staged_at             TEXT NOT NULL,
+  PRIMARY KEY (gitlab_project_id, merge_request_iid, lre_domain, lre_project, script_path_unix)
+);
+
+
+-- LRE side of each synced script as last seen by the drift reconciler. Each upload
+-- writes the baseline from its response; the reconciler baselines paths without one.
+CREATE TABLE IF NOT EXISTS gitlab_lre_script_drift (
+  gitlab_project_id     INTEGER NOT NULL,
+  lre_domain            TEXT NOT NULL COLLATE NOCASE,
+  lre_project           TEXT NOT NULL COLLATE NOCASE,
+  script_path_unix      TEXT NOT NULL,
+  lre_script_id         INTEGER NOT NULL,
+  state_version         TEXT NOT NULL,     -- fingerprint or commit SHA of the synced state row
+  lre_last_modify_date  TEXT,              -- LastModifyDate reported by LRE at baseline
+  drift_type            TEXT,              -- NULL, MODIFIED or DELETED
+  checked_at            TEXT NOT NULL,
+  PRIMARY KEY (gitlab_project_id, lre_domain, lre_project, script_path_unix)
+);
+
+
+-- One row per target while a sync holds it. Syncs of the same target on this
+-- instance coalesce before reaching it; the row keeps other instances out.
+CREATE TABLE IF NOT EXISTS sync_lock (
+  gitlab_project_id     INTEGER NOT NULL,
+  lre_domain            TEXT NOT NULL COLLATE NOCASE,
+  lre_project           TEXT NOT NULL COLLATE NOCASE,
+  locked_at             TEXT NOT NULL,
+  PRIMARY KEY (gitlab_project_id, lre_domain, lre_project)
+);
+
+
+-- Script outcomes of a sync in progress, written as they happen. A journal left
+-- behind by a crash is folded into gitlab_lre_sync_state on the next start.
+CREATE TABLE IF NOT EXISTS gitlab_lre_sync_journal (
+  journal_id            TEXT PRIMARY KEY,
+  gitlab_project_id     INTEGER NOT NULL,
+  ref                   TEXT,
+  lre_domain            TEXT NOT NULL COLLATE NOCASE,
+  lre_project           TEXT NOT NULL COLLATE NOCASE,
+  head_sha              TEXT,
+  owner                 TEXT NOT NULL,     -- host that ran the sync
+  started_at            TEXT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS gitlab_lre_sync_journal_entry (
+  journal_id            TEXT NOT NULL,
+  script_path_unix      TEXT NOT NULL,
+  action                TEXT NOT NULL,     -- UPLOAD or DELETE
+  lre_script_id         INTEGER,
+  commit_sha            TEXT,
+  committed_date        TEXT,
+  content_fingerprint   TEXT,
+  recorded_at           TEXT NOT NULL,
+  PRIMARY KEY (journal_id, script_path_unix, action)
+);
@@ -0,0 +1,86 @@
+package com.lre.gitlabintegration.client.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lre.gitlabintegration.config.http.GitLabBaseApiClient;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.exceptions.LreException;
+import com.lre.gitlabintegration.support.GitLabStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GitLabGraphQlApiClientTest {
+
+    private GitLabStubServer server;
+    private GitLabGraphQlApiClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new GitLabStubServer(0);
+
+        GitLabProperties properties = new GitLabProperties();
+        properties.setUrl(server.restUrl());
+        properties.setToken(GitLabStubServer.TOKEN);
+
+        client = new GitLabGraphQlApiClient(new GitLabBaseApiClient(server.restClient()), new ObjectMapper(),
+                properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void resolvesAllPathsOfABatchInOneRequest() {
+        List<String> paths = List.of("scripts/Login", "scripts/Search", "scripts/Checkout");
+
+        Map<String, GitLabCommit> commits = client.getLatestCommits(42, "main", paths);
+
+        assertThat(server.graphqlCalls.get()).isEqualTo(1);
+        assertThat(commits).hasSize(3);
+        for (String path : paths) {
+            assertThat(commits.get(path).getSha()).isEqualTo(GitLabStubServer.shaOf(path));
+            assertThat(commits.get(path).getPath()).isEqualTo(path);
+            assertThat(commits.get(path).getCommittedDate()).isEqualTo("2026-01-01T00:00:00Z");
+        }
+    }
+
+    @Test
+    void leavesOutPathsWithoutHistory() {
+        Map<String, GitLabCommit> commits = client.getLatestCommits(42, "main",
+                List.of("scripts/Login", "scripts/missing"));
+
+        assertThat(commits).containsOnlyKeys("scripts/Login");
+    }
+
+    @Test
+    void sendsTheTokenOnceAsPrivateToken() {
+        client.getLatestCommits(42, "main", List.of("scripts/Login"));
+
+        assertThat(server.lastGraphqlHeaders).containsEntry("private-token", GitLabStubServer.TOKEN);
+        assertThat(server.lastGraphqlHeaders).doesNotContainKey("authorization");
+    }
+
+    @Test
+    void makesNoRequestForNoPaths() {
+        assertThat(client.getLatestCommits(42, "main", List.of())).isEmpty();
+        assertThat(server.graphqlCalls.get()).isZero();
+    }
+
+    @Test
+    void failsOnGraphQlErrors() {
+        server.graphqlError = "Field 'tree' doesn't exist";
+
+        assertThatThrownBy(() -> client.getLatestCommits(42, "main", List.of("scripts/Login")))
+                .isInstanceOf(LreException.class)
+                .hasMessageContaining("Field 'tree' doesn't exist");
+    }
+}
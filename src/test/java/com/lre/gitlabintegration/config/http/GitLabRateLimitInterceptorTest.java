@@ -0,0 +1,73 @@
+package com.lre.gitlabintegration.config.http;
+
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GitLabRateLimitInterceptorTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void holdsThePermitUntilTheResponseBodyIsClosed() throws Exception {
+        GitLabRateLimitInterceptor interceptor = singlePermitInterceptor();
+        ClientHttpRequestExecution execution = (request, body) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK);
+
+        ClientHttpResponse first = interceptor.intercept(request(), new byte[0], execution);
+        Future<ClientHttpResponse> second = executor.submit(() -> interceptor.intercept(request(), new byte[0], execution));
+
+        // the first body is still being read
+        assertThatThrownBy(() -> second.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        first.close();
+        assertThat(second.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void releasesThePermitOnceWhenClosedTwice() throws Exception {
+        GitLabRateLimitInterceptor interceptor = singlePermitInterceptor();
+        ClientHttpRequestExecution execution = (request, body) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK);
+
+        ClientHttpResponse first = interceptor.intercept(request(), new byte[0], execution);
+        first.close();
+        first.close();
+
+        interceptor.intercept(request(), new byte[0], execution);
+        Future<ClientHttpResponse> third = executor.submit(() -> interceptor.intercept(request(), new byte[0], execution));
+
+        assertThatThrownBy(() -> third.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+    }
+
+    private static GitLabRateLimitInterceptor singlePermitInterceptor() {
+        GitLabProperties.RateLimit properties = new GitLabProperties.RateLimit();
+        properties.setInitialPermits(1);
+        properties.setMaxPermits(1);
+        return new GitLabRateLimitInterceptor(properties, new SimpleMeterRegistry());
+    }
+
+    private static MockClientHttpRequest request() {
+        return new MockClientHttpRequest(HttpMethod.GET, URI.create("https://gitlab.example/api/v4/projects/1/repository/archive"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.lre.gitlabintegration.repository;
+
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncStateRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SyncStateRepository stateRepository;
+    private SyncHeadRepository headRepository;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:sqlite:" + tempDir.resolve("state.db"));
+        new ResourceDatabasePopulator(new ClassPathResource("scehma.sql")).execute(dataSource);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        stateRepository = new SyncStateRepository(jdbcTemplate);
+        headRepository = new SyncHeadRepository(jdbcTemplate);
+    }
+
+    @Test
+    void savingOneRootKeepsTheStateOfOtherRoots() {
+        stateRepository.saveCommits(request(List.of()),
+                commits("perf/Login", "perf/Search", "smoke/Ping", "perf_old/Legacy"), Map.of());
+
+        stateRepository.saveCommits(request(List.of("perf")), commits("perf/Checkout"), Map.of());
+
+        assertThat(paths(request(List.of())))
+                .containsExactlyInAnyOrder("perf/Checkout", "smoke/Ping", "perf_old/Legacy");
+    }
+
+    @Test
+    void savingWithoutRootsReplacesTheWholeTarget() {
+        stateRepository.saveCommits(request(List.of()), commits("perf/Login", "smoke/Ping"), Map.of());
+
+        stateRepository.saveCommits(request(List.of()), commits("perf/Login"), Map.of());
+
+        assertThat(paths(request(List.of()))).containsExactly("perf/Login");
+    }
+
+    @Test
+    void rootPatternCharactersAreMatchedLiterally() {
+        stateRepository.saveCommits(request(List.of()), commits("a_b/One", "axb/Two"), Map.of());
+
+        stateRepository.saveCommits(request(List.of("a_b")), List.of(), Map.of());
+
+        assertThat(paths(request(List.of()))).containsExactly("axb/Two");
+    }
+
+    @Test
+    void syncedHeadRemembersItsRoots() {
+        headRepository.save(request(List.of("perf", "smoke")), "abc123");
+
+        SyncHeadRepository.SyncHead synced = headRepository.find(request(List.of()));
+
+        assertThat(synced.headSha()).isEqualTo("abc123");
+        assertThat(synced.syncedWith(List.of("perf", "smoke"))).isTrue();
+        assertThat(synced.syncedWith(List.of("perf"))).isFalse();
+        assertThat(synced.syncedWith(List.of())).isFalse();
+    }
+
+    private static SyncRequest request(List<String> roots) {
+        return new SyncRequest(7L, "main", "DEFAULT", "Perf", roots);
+    }
+
+    private List<String> paths(SyncRequest request) {
+        return stateRepository.findPreviousState(request).stream().map(SyncStateEntry::path).toList();
+    }
+
+    private static List<GitLabCommit> commits(String... paths) {
+        return Arrays.stream(paths)
+                .map(path -> {
+                    GitLabCommit commit = new GitLabCommit();
+                    commit.setPath(path);
+                    commit.setSha("sha-" + path);
+                    return commit;
+                })
+                .toList();
+    }
+}
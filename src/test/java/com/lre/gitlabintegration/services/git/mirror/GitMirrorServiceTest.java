@@ -0,0 +1,188 @@
+package com.lre.gitlabintegration.services.git.mirror;
+
+import com.lre.gitlabintegration.client.api.GitLabApiClient;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.gitlab.GitLabTreeIndex;
+import com.lre.gitlabintegration.repository.GitLabProjectCacheRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the mirror against a local repository served over {@code file://}.
+ */
+class GitMirrorServiceTest {
+
+    private static final long PROJECT_ID = 1;
+
+    @TempDir
+    Path tempDir;
+
+    private Path origin;
+    private GitLabProperties properties;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        origin = tempDir.resolve("origin");
+        Files.createDirectories(origin);
+        git(origin, "init", "--quiet", "-b", "main");
+        git(origin, "config", "user.email", "sync@example.com");
+        git(origin, "config", "user.name", "Sync");
+        write("scripts/Login/Login.usr", "[General]");
+        write("scripts/Login/Action.c", "Action() { return 0; }");
+        write("README.md", "scripts");
+        commit("Add Login");
+
+        properties = new GitLabProperties();
+        properties.getMirror().setEnabled(true);
+        properties.getMirror().setDirectory(tempDir.resolve("mirrors").toString());
+        properties.getMirror().setRemoteUrlTemplate(origin.toUri().toString());
+    }
+
+    @Test
+    void clonesOnFirstFetchAndFetchesIncrementally() throws Exception {
+        GitMirrorService mirror = mirror();
+
+        String first = mirror.fetch(PROJECT_ID, "main");
+        assertThat(first).isEqualTo(head());
+        assertThat(mirror.canServe(PROJECT_ID, first)).isTrue();
+
+        write("scripts/Search/Search.usr", "[General]");
+        write("scripts/Login/Action.c", "Action() { return 1; }");
+        commit("Add Search");
+
+        String second = mirror.fetch(PROJECT_ID, "main");
+        assertThat(second).isEqualTo(head()).isNotEqualTo(first);
+        assertThat(mirror.canServe(PROJECT_ID, first)).isTrue();
+
+        assertThat(mirror.changedPaths(PROJECT_ID, first, second))
+                .containsExactlyInAnyOrder("scripts/Login/Action.c", "scripts/Search/Search.usr");
+
+        GitLabCommit latest = mirror.latestCommit(PROJECT_ID, second, "scripts/Login");
+        assertThat(latest.getSha()).isEqualTo(second);
+        assertThat(latest.getMessage()).isEqualTo("Add Search");
+    }
+
+    @Test
+    void indexesScriptFoldersWithTheirTreeShas() throws Exception {
+        GitMirrorService mirror = mirror();
+        write("scripts/Search/Search.usr", "[General]");
+        commit("Add Search");
+        String head = mirror.fetch(PROJECT_ID, "main");
+
+        GitLabTreeIndex index = mirror.indexTree(PROJECT_ID, head, List.of());
+
+        assertThat(index.scriptFolders()).containsOnlyKeys("scripts/Login", "scripts/Search");
+        assertThat(index.scriptFolders().get("scripts/Login")).isEqualTo(git(origin, "rev-parse", "HEAD:scripts/Login"));
+        assertThat(mirror.indexTree(PROJECT_ID, head, List.of("scripts/Search")).scriptFolders())
+                .containsOnlyKeys("scripts/Search");
+    }
+
+    @Test
+    void archivesFoldersUnderOneTopLevelFolder() throws Exception {
+        GitMirrorService mirror = mirror();
+        String head = mirror.fetch(PROJECT_ID, "main");
+        Path zip = tempDir.resolve("scripts.zip");
+
+        mirror.archive(PROJECT_ID, head, List.of("scripts/Login"), zip);
+
+        List<String> entries = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                if (!entry.isDirectory()) entries.add(entry.getName());
+            }
+        }
+        String prefix = PROJECT_ID + "-" + head + "/";
+        assertThat(entries).containsExactlyInAnyOrder(
+                prefix + "scripts/Login/Login.usr", prefix + "scripts/Login/Action.c");
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedMirrorOverTheDiskLimit() {
+        properties.getMirror().setMaxDiskBytes(1);
+        GitMirrorService mirror = mirror();
+        Path mirrors = tempDir.resolve("mirrors");
+
+        mirror.fetch(1, "main");
+        mirror.fetch(2, "main");
+
+        assertThat(mirrors.resolve("1.git")).doesNotExist();
+        assertThat(mirrors.resolve("2.git")).isDirectory();
+        assertThat(mirror.canServe(1, "main")).isFalse();
+
+        // a later fetch clones the evicted mirror again
+        mirror.fetch(1, "main");
+        assertThat(mirror.canServe(1, "main")).isTrue();
+        assertThat(mirrors.resolve("2.git")).doesNotExist();
+    }
+
+    @Test
+    void keepsAMirrorThatIsBeingRead() throws Exception {
+        // git that takes a while to archive, so the read is still running during the eviction
+        Path slowGit = tempDir.resolve("slow-git.sh");
+        Files.writeString(slowGit, "#!/bin/sh\n[ \"$1\" = archive ] && sleep 1\nexec git \"$@\"\n");
+        slowGit.toFile().setExecutable(true);
+        properties.getMirror().setGitExecutable(slowGit.toString());
+
+        GitMirrorService mirror = mirror();
+        String head = mirror.fetch(1, "main");
+        properties.getMirror().setMaxDiskBytes(1);
+
+        Path zip = tempDir.resolve("scripts.zip");
+        CompletableFuture<Void> archive = CompletableFuture.runAsync(
+                () -> mirror.archive(1, head, List.of("scripts/Login"), zip));
+        Thread.sleep(300);
+
+        mirror.fetch(2, "main");
+
+        archive.get(10, TimeUnit.SECONDS);
+        assertThat(zip).isNotEmptyFile();
+        assertThat(tempDir.resolve("mirrors").resolve("1.git")).isDirectory();
+    }
+
+    private GitMirrorService mirror() {
+        return new GitMirrorService(mock(GitLabApiClient.class), mock(GitLabProjectCacheRepository.class), properties);
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = origin.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+
+    private void commit(String message) throws Exception {
+        git(origin, "add", "--all");
+        git(origin, "commit", "--quiet", "-m", message);
+    }
+
+    private String head() throws Exception {
+        return git(origin, "rev-parse", "HEAD");
+    }
+
+    private static String git(Path dir, String... args) throws Exception {
+        List<String> command = new ArrayList<>(List.of("git"));
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("git " + String.join(" ", args) + " failed: " + output);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,109 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lre.gitlabintegration.client.api.GitLabApiClient;
+import com.lre.gitlabintegration.client.api.GitLabGraphQlApiClient;
+import com.lre.gitlabintegration.client.builder.GitLabUrlFactory;
+import com.lre.gitlabintegration.config.concurrency.GitLabFanOutExecutor;
+import com.lre.gitlabintegration.config.http.GitLabBaseApiClient;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.config.properties.GitLabProperties.CommitLookup;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.services.git.mirror.GitMirrorService;
+import com.lre.gitlabintegration.support.GitLabStubServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Calls of the latest-commit lookup, GraphQL batches against the REST fan-out, on a
+ * stub GitLab that answers every request after a fixed round trip. Wall times are
+ * logged for comparison, not asserted.
+ */
+@Slf4j
+class CommitLookupBenchmarkTest {
+
+    private static final int SCRIPTS = 200;
+    private static final int BATCH_SIZE = 50;
+    private static final int FAN_OUT_WINDOW = 5;
+    private static final long LATENCY_MILLIS = 15;
+
+    private GitLabStubServer server;
+    private final List<GitLabFanOutExecutor> executors = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new GitLabStubServer(LATENCY_MILLIS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executors.forEach(GitLabFanOutExecutor::shutdown);
+        server.close();
+    }
+
+    @Test
+    void graphQlBatchesNeedFarFewerCallsThanRestFanOut() {
+        List<GitLabCommit> viaRest = scripts();
+        long restNanos = timed(() -> scanner(CommitLookup.REST).resolveMissingCommits(1, "main", viaRest));
+
+        List<GitLabCommit> viaGraphQl = scripts();
+        long graphqlNanos = timed(() -> scanner(CommitLookup.GRAPHQL).resolveMissingCommits(1, "main", viaGraphQl));
+
+        log.info("Latest commit of {} scripts: REST {} call(s) in {} ms, GraphQL {} call(s) in {} ms",
+                SCRIPTS, server.restCommitCalls.get(), restNanos / 1_000_000,
+                server.graphqlCalls.get(), graphqlNanos / 1_000_000);
+
+        assertThat(server.restCommitCalls.get()).isEqualTo(SCRIPTS);
+        assertThat(server.graphqlCalls.get()).isEqualTo(SCRIPTS / BATCH_SIZE);
+
+        // both strategies resolve the same commits
+        assertThat(viaGraphQl).extracting(GitLabCommit::getSha)
+                .containsExactlyElementsOf(viaRest.stream().map(GitLabCommit::getSha).toList())
+                .doesNotContain("");
+    }
+
+    private GitRepositoryScanner scanner(CommitLookup commitLookup) {
+        GitLabProperties properties = new GitLabProperties();
+        properties.setUrl(server.restUrl());
+        properties.setToken(GitLabStubServer.TOKEN);
+        properties.setThreadPoolSize(FAN_OUT_WINDOW);
+        properties.setCommitLookup(commitLookup);
+        properties.setGraphqlBatchSize(BATCH_SIZE);
+
+        GitLabBaseApiClient baseClient = new GitLabBaseApiClient(server.restClient());
+        GitLabApiClient apiClient = new GitLabApiClient(baseClient, new GitLabUrlFactory(properties));
+        GitLabFanOutExecutor fanOutExecutor = new GitLabFanOutExecutor(properties, new SimpleMeterRegistry());
+        executors.add(fanOutExecutor);
+
+        return new GitRepositoryScanner(apiClient,
+                new GitLabGraphQlApiClient(baseClient, new ObjectMapper(), properties),
+                fanOutExecutor,
+                new GitMirrorService(apiClient, null, properties),
+                properties);
+    }
+
+    private static List<GitLabCommit> scripts() {
+        return IntStream.range(0, SCRIPTS)
+                .mapToObj(i -> {
+                    GitLabCommit script = new GitLabCommit();
+                    script.setPath("scripts/Script" + i);
+                    return script;
+                })
+                .toList();
+    }
+
+    private static long timed(Runnable action) {
+        long start = System.nanoTime();
+        action.run();
+        return System.nanoTime() - start;
+    }
+}
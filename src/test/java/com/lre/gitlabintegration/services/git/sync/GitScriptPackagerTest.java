@@ -0,0 +1,101 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.client.api.GitLabApiClient;
+import com.lre.gitlabintegration.config.properties.GitLabProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.repository.GitLabProjectCacheRepository;
+import com.lre.gitlabintegration.services.git.mirror.GitMirrorService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class GitScriptPackagerTest {
+
+    private static final long PROJECT_ID = 1;
+
+    @TempDir
+    Path tempDir;
+
+    private GitLabApiClient gitLabApiClient;
+    private GitMirrorService mirrorService;
+    private GitScriptPackager packager;
+    private String head;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path origin = tempDir.resolve("origin");
+        Files.createDirectories(origin);
+        git(origin, "init", "--quiet", "-b", "main");
+        git(origin, "config", "user.email", "sync@example.com");
+        git(origin, "config", "user.name", "Sync");
+        for (String script : List.of("scripts/Login/Login.usr", "scripts/Search/Search.usr")) {
+            Path file = origin.resolve(script);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "[General]", StandardCharsets.UTF_8);
+        }
+        git(origin, "add", "--all");
+        git(origin, "commit", "--quiet", "-m", "Add scripts");
+
+        GitLabProperties properties = new GitLabProperties();
+        properties.getMirror().setEnabled(true);
+        properties.getMirror().setDirectory(tempDir.resolve("mirrors").toString());
+        properties.getMirror().setRemoteUrlTemplate(origin.toUri().toString());
+
+        gitLabApiClient = mock(GitLabApiClient.class);
+        mirrorService = new GitMirrorService(gitLabApiClient, mock(GitLabProjectCacheRepository.class), properties);
+        packager = new GitScriptPackager(gitLabApiClient, mirrorService, properties);
+        head = mirrorService.fetch(PROJECT_ID, "main");
+    }
+
+    @Test
+    void sharedMirrorSessionServesFoldersOfLaterBatches() throws Exception {
+        try (GitScriptPackager.SharedPackages ignored = packager.sharePackages(PROJECT_ID, head);
+             GitScriptPackager.PackagingSession first = packager.openSession(
+                     PROJECT_ID, head, List.of(script("scripts/Login")), List.of());
+             GitScriptPackager.PackagingSession second = packager.openSession(
+                     PROJECT_ID, head, List.of(script("scripts/Search")), List.of())) {
+
+            assertThat(entries(first.prepare(script("scripts/Login")).zipPath())).contains("Login.usr");
+            // a fresh target syncing folders the first batch did not have
+            assertThat(entries(second.prepare(script("scripts/Search")).zipPath())).contains("Search.usr");
+        }
+
+        verifyNoInteractions(gitLabApiClient);
+    }
+
+    private GitLabCommit script(String path) {
+        GitLabCommit commit = new GitLabCommit();
+        commit.setPath(path);
+        commit.setSha(head);
+        return commit;
+    }
+
+    private static List<String> entries(Path zip) throws Exception {
+        List<String> names = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            zipFile.stream().forEach(entry -> names.add(entry.getName()));
+        }
+        return names;
+    }
+
+    private static void git(Path dir, String... args) throws Exception {
+        List<String> command = new ArrayList<>(List.of("git"));
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("git " + String.join(" ", args) + " failed: " + output);
+        }
+    }
+}
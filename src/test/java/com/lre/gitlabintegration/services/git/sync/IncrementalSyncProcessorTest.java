@@ -0,0 +1,137 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.client.api.LreTestPlanApiClient;
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.lrescript.Script;
+import com.lre.gitlabintegration.dto.sync.SyncContext;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncStateEntry;
+import com.lre.gitlabintegration.repository.SyncStateRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IncrementalSyncProcessorTest {
+
+    private static final SyncRequest TARGET = new SyncRequest(7L, "main", "DEFAULT", "Perf");
+
+    @TempDir
+    Path tempDir;
+
+    private LreScriptManager scriptManager;
+    private SyncStateRepository stateRepository;
+    private IncrementalSyncProcessor processor;
+    private SyncControl control;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:sqlite:" + tempDir.resolve("state.db"));
+        new ResourceDatabasePopulator(new ClassPathResource("scehma.sql")).execute(dataSource);
+        stateRepository = new SyncStateRepository(new JdbcTemplate(dataSource));
+
+        GitScriptPackager.PackagingSession packaging = mock(GitScriptPackager.PackagingSession.class);
+        when(packaging.prepare(any())).thenReturn(new GitScriptPackager.PackagedScript(tempDir, tempDir));
+        GitScriptPackager packager = mock(GitScriptPackager.class);
+        when(packager.openSession(anyLong(), any(), anyList(), any())).thenReturn(packaging);
+
+        scriptManager = mock(LreScriptManager.class);
+        LreSyncService lreSyncService = new LreSyncService(packager, scriptManager,
+                mock(LreTestPlanApiClient.class), mock(SyncJournal.class), mock(ScriptDriftReconciler.class));
+
+        processor = new IncrementalSyncProcessor(new SyncAnalyzer(), lreSyncService,
+                new SyncStateUpdater(stateRepository), mock(GitRepositoryScanner.class),
+                mock(ShardedSyncExecutor.class), stateRepository);
+    }
+
+    @Test
+    void theNextSyncUploadsTheScriptsACancelledSyncSkipped() throws Exception {
+        stateRepository.saveCommits(TARGET, commits("v1", "scripts/A", "scripts/B", "scripts/C"),
+                Map.of("scripts/A", 1, "scripts/B", 2, "scripts/C", 3));
+
+        // the first upload cancels the sync, so B and C are skipped
+        AtomicInteger uploads = new AtomicInteger();
+        when(scriptManager.upload(anyString(), anyString(), anyString(), any(), anyList())).thenAnswer(call -> {
+            control.cancel("Cancelled by user");
+            return script(uploads.incrementAndGet());
+        });
+        sync(commits("v2", "scripts/A", "scripts/B", "scripts/C"));
+        assertThat(uploads).hasValue(1);
+
+        List<SyncStateEntry> state = stateRepository.findPreviousState(TARGET);
+        assertThat(state).extracting(SyncStateEntry::path, SyncStateEntry::commitSha, SyncStateEntry::lreScriptId)
+                .containsExactlyInAnyOrder(
+                        tuple("scripts/A", "v2", 1),
+                        tuple("scripts/B", "v1", 2),
+                        tuple("scripts/C", "v1", 3));
+
+        doAnswer(call -> script(uploads.incrementAndGet()))
+                .when(scriptManager).upload(anyString(), anyString(), anyString(), any(), anyList());
+        sync(commits("v2", "scripts/A", "scripts/B", "scripts/C"));
+
+        assertThat(uploads).hasValue(3);
+        assertThat(stateRepository.findPreviousState(TARGET)).extracting(SyncStateEntry::commitSha)
+                .containsOnly("v2");
+    }
+
+    @Test
+    void aFailedDeleteStaysInStateForTheNextSync() throws Exception {
+        stateRepository.saveCommits(TARGET, commits("v1", "scripts/A", "scripts/Old"),
+                Map.of("scripts/A", 1, "scripts/Old", 2));
+        doThrow(new IllegalStateException("LRE unavailable"))
+                .when(scriptManager).delete(anyString(), anyString(), anyString(), eq("Old"));
+
+        sync(commits("v1", "scripts/A"));
+
+        assertThat(stateRepository.findPreviousState(TARGET))
+                .extracting(SyncStateEntry::path, SyncStateEntry::lreScriptId)
+                .contains(tuple("scripts/Old", 2));
+    }
+
+    private void sync(List<GitLabCommit> current) throws Exception {
+        control = new SyncControl(null);
+        List<SyncStateEntry> previous = stateRepository.findPreviousState(TARGET);
+        control.callWith(() -> processor.process(new SyncContext(TARGET, previous, current, false, null, false)));
+    }
+
+    private static List<GitLabCommit> commits(String sha, String... paths) {
+        return Arrays.stream(paths)
+                .map(path -> {
+                    GitLabCommit commit = new GitLabCommit();
+                    commit.setPath(path);
+                    commit.setSha(sha);
+                    commit.setFingerprint(sha + ":" + path);
+                    return commit;
+                })
+                .toList();
+    }
+
+    private static Script script(int id) {
+        Script script = new Script();
+        script.setId(id);
+        return script;
+    }
+}
@@ -0,0 +1,74 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.client.api.LreTestPlanApiClient;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.lrescript.Script;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class LreSyncServiceTest {
+
+    private static final SyncRequest TARGET = new SyncRequest(7L, "main", "DEFAULT", "Perf");
+
+    @TempDir
+    Path tempDir;
+
+    private ScriptDriftReconciler driftReconciler;
+    private LreSyncService lreSyncService;
+    private Script uploaded;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        GitScriptPackager.PackagingSession packaging = mock(GitScriptPackager.PackagingSession.class);
+        when(packaging.prepare(any())).thenReturn(new GitScriptPackager.PackagedScript(tempDir, tempDir));
+        GitScriptPackager packager = mock(GitScriptPackager.class);
+        when(packager.openSession(anyLong(), any(), anyList(), any())).thenReturn(packaging);
+
+        uploaded = new Script();
+        uploaded.setId(42);
+        LreScriptManager scriptManager = mock(LreScriptManager.class);
+        when(scriptManager.upload(anyString(), anyString(), anyString(), any(), anyList())).thenReturn(uploaded);
+
+        driftReconciler = mock(ScriptDriftReconciler.class);
+        lreSyncService = new LreSyncService(packager, scriptManager,
+                mock(LreTestPlanApiClient.class), mock(SyncJournal.class), driftReconciler);
+    }
+
+    @Test
+    void aSyncedUploadRecordsItsDriftBaseline() {
+        GitLabCommit commit = commit();
+
+        lreSyncService.uploadScripts(TARGET, "abc123", List.of(commit));
+
+        verify(driftReconciler).recordUpload(eq(TARGET), eq(commit), eq(uploaded));
+    }
+
+    @Test
+    void aPreviewUploadLeavesTheDriftBaselineAlone() {
+        lreSyncService.uploadScripts(TARGET, "abc123", List.of(commit()), "MR-Preview/7/MR-12");
+
+        verifyNoInteractions(driftReconciler);
+    }
+
+    private static GitLabCommit commit() {
+        GitLabCommit commit = new GitLabCommit();
+        commit.setPath("scripts/Login");
+        commit.setSha("abc123");
+        return commit;
+    }
+}
@@ -0,0 +1,123 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.client.api.LreScriptApiClient;
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.dto.gitlab.GitLabCommit;
+import com.lre.gitlabintegration.dto.lrescript.Script;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.repository.ScriptDriftRepository;
+import com.lre.gitlabintegration.repository.SyncHeadRepository;
+import com.lre.gitlabintegration.repository.SyncLockRepository;
+import com.lre.gitlabintegration.repository.SyncStateRepository;
+import com.lre.gitlabintegration.services.lre.authsession.LreSessionManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static com.lre.gitlabintegration.repository.ScriptDriftRepository.DRIFT_MODIFIED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ScriptDriftReconcilerTest {
+
+    private static final String PATH = "scripts/Login";
+    private static final int SCRIPT_ID = 42;
+
+    @TempDir
+    Path tempDir;
+
+    private LreScriptApiClient scriptApiClient;
+    private SyncStateRepository stateRepository;
+    private ScriptDriftRepository driftRepository;
+    private ScriptDriftReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:sqlite:" + tempDir.resolve("state.db"));
+        new ResourceDatabasePopulator(new ClassPathResource("scehma.sql")).execute(dataSource);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        LreProperties properties = new LreProperties();
+        properties.getDrift().setEnabled(true);
+        properties.getDrift().setRequeue(false);
+
+        scriptApiClient = mock(LreScriptApiClient.class);
+        stateRepository = new SyncStateRepository(jdbcTemplate);
+        driftRepository = new ScriptDriftRepository(jdbcTemplate);
+        reconciler = new ScriptDriftReconciler(scriptApiClient, mock(LreSessionManager.class), stateRepository,
+                new SyncHeadRepository(jdbcTemplate), new SyncLockRepository(jdbcTemplate), driftRepository,
+                new SimpleMeterRegistry(), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reconciler.shutdown();
+    }
+
+    @Test
+    void flagsAnEditMadeBetweenTheUploadAndTheFirstCheck() {
+        GitLabCommit commit = commit();
+        reconciler.recordUpload(target(), commit, script("2026-01-01T10:00:00"));
+        stateRepository.saveCommits(target(), List.of(commit), Map.of(PATH, SCRIPT_ID));
+
+        lreHas(script("2026-01-01T10:05:00"));
+        reconciler.reconcile();
+
+        assertThat(driftRepository.findByTarget(target()))
+                .singleElement()
+                .satisfies(o -> {
+                    assertThat(o.driftType()).isEqualTo(DRIFT_MODIFIED);
+                    assertThat(o.lastModifyDate()).isEqualTo("2026-01-01T10:00:00");
+                });
+    }
+
+    @Test
+    void baselinesAScriptUploadedWithoutOne() {
+        stateRepository.saveCommits(target(), List.of(commit()), Map.of(PATH, SCRIPT_ID));
+
+        lreHas(script("2026-01-01T10:05:00"));
+        reconciler.reconcile();
+
+        assertThat(driftRepository.findByTarget(target()))
+                .singleElement()
+                .satisfies(o -> {
+                    assertThat(o.driftType()).isNull();
+                    assertThat(o.lastModifyDate()).isEqualTo("2026-01-01T10:05:00");
+                });
+    }
+
+    private void lreHas(Script script) {
+        when(scriptApiClient.getAllScripts("DEFAULT", "Perf")).thenReturn(List.of(script));
+    }
+
+    private static SyncRequest target() {
+        return new SyncRequest(7L, null, "DEFAULT", "Perf");
+    }
+
+    private static GitLabCommit commit() {
+        GitLabCommit commit = new GitLabCommit();
+        commit.setPath(PATH);
+        commit.setSha("abc123");
+        commit.setFingerprint("tree-1");
+        return commit;
+    }
+
+    private static Script script(String lastModifyDate) {
+        Script script = new Script();
+        script.setId(SCRIPT_ID);
+        script.setLastModifyDate(lastModifyDate);
+        return script;
+    }
+}
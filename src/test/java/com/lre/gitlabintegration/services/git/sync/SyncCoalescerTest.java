@@ -0,0 +1,179 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncCoalescerTest {
+
+    /** time for a request on another thread to reach its wait */
+    private static final long SETTLE_MILLIS = 200;
+
+    private final SyncControlRegistry controlRegistry = new SyncControlRegistry();
+    private final SyncCoalescer coalescer = new SyncCoalescer(controlRegistry);
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void aRequestForTheRunningHeadGetsThatSyncsResponse() throws Exception {
+        Sync first = new Sync();
+        Sync second = new Sync();
+
+        Future<SyncResponse> running = call(request(), "h1", first);
+        settle();
+        Future<SyncResponse> joined = call(request(), "h1", second);
+        settle();
+
+        first.release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isSameAs(first.response);
+        assertThat(joined.get(5, TimeUnit.SECONDS)).isSameAs(first.response);
+        assertThat(second.runs).hasValue(0);
+    }
+
+    @Test
+    void aRequestForAnotherHeadRunsOnceTheRunningSyncIsDone() throws Exception {
+        Sync first = new Sync();
+        Sync second = new Sync();
+        second.release.countDown();
+
+        Future<SyncResponse> running = call(request(), "h1", first);
+        settle();
+        Future<SyncResponse> queued = call(request(), "h2", second);
+        settle();
+        assertThat(second.runs).hasValue(0);
+
+        first.release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isSameAs(first.response);
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isSameAs(second.response);
+    }
+
+    @Test
+    void onlyTheLatestQueuedRequestRunsAndTheOnesItReplacedGetItsResponse() throws Exception {
+        Sync first = new Sync();
+        Sync replaced = new Sync();
+        Sync latest = new Sync();
+        latest.release.countDown();
+
+        call(request(), "h1", first);
+        settle();
+        Future<SyncResponse> older = call(request(), "h2", replaced);
+        settle();
+        Future<SyncResponse> newer = call(request(), "h3", latest);
+        settle();
+
+        first.release.countDown();
+        assertThat(newer.get(5, TimeUnit.SECONDS)).isSameAs(latest.response);
+        assertThat(older.get(5, TimeUnit.SECONDS)).isSameAs(latest.response);
+        assertThat(replaced.runs).hasValue(0);
+    }
+
+    @Test
+    void aQueuedRequestLeavesAtItsDeadline() throws Exception {
+        Sync first = new Sync();
+        Sync queued = new Sync();
+
+        call(request(), "h1", first);
+        settle();
+        SyncResponse response = coalescer.run(request(Instant.now().plusMillis(100)), "h2", queued);
+
+        assertThat(phase(response)).isEqualTo("SYNC_CANCELLED");
+        first.release.countDown();
+        settle();
+        assertThat(queued.runs).hasValue(0);
+    }
+
+    @Test
+    void theReplacedRequestRunsWhenTheRequestReplacingItTimesOut() throws Exception {
+        Sync first = new Sync();
+        Sync replaced = new Sync();
+        Sync latest = new Sync();
+        replaced.release.countDown();
+
+        call(request(), "h1", first);
+        settle();
+        Future<SyncResponse> older = call(request(), "h2", replaced);
+        settle();
+        SyncResponse timedOut = coalescer.run(request(Instant.now().plusMillis(100)), "h3", latest);
+        assertThat(phase(timedOut)).isEqualTo("SYNC_CANCELLED");
+
+        first.release.countDown();
+        assertThat(older.get(5, TimeUnit.SECONDS)).isSameAs(replaced.response);
+        assertThat(latest.runs).hasValue(0);
+    }
+
+    @Test
+    void cancellingAJoinedCallerOnlyEndsItsOwnWait() throws Exception {
+        Sync first = new Sync();
+        SyncRequest joiner = request();
+
+        Future<SyncResponse> running = call(request(), "h1", first);
+        settle();
+        Future<SyncResponse> joined = call(joiner, "h1", new Sync());
+        settle();
+
+        assertThat(controlRegistry.cancelCaller(joiner, "CI job is canceled")).isTrue();
+        assertThat(phase(joined.get(5, TimeUnit.SECONDS))).isEqualTo("SYNC_CANCELLED");
+        assertThat(running).isNotDone();
+
+        first.release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isSameAs(first.response);
+    }
+
+    private Future<SyncResponse> call(SyncRequest request, String headSha, Sync sync) {
+        return callers.submit(() -> coalescer.run(request, headSha, sync));
+    }
+
+    private static SyncRequest request() {
+        return request(null);
+    }
+
+    private static SyncRequest request(Instant deadline) {
+        SyncRequest request = new SyncRequest(7L, "main", "DEFAULT", "Perf");
+        request.setDeadline(deadline);
+        return request;
+    }
+
+    private static String phase(SyncResponse response) {
+        return response.changes().failed().get(0).action();
+    }
+
+    private static void settle() throws InterruptedException {
+        Thread.sleep(SETTLE_MILLIS);
+    }
+
+    /**
+     * A sync that runs until released.
+     */
+    private static final class Sync implements Supplier<SyncResponse> {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger runs = new AtomicInteger();
+        private final SyncResponse response = SyncResponse.builder().success(true).build();
+
+        @Override
+        public SyncResponse get() {
+            runs.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.lre.gitlabintegration.services.git.sync;
+
+import com.lre.gitlabintegration.config.concurrency.SyncControl;
+import com.lre.gitlabintegration.config.properties.LreProperties;
+import com.lre.gitlabintegration.dto.sync.ScriptChange;
+import com.lre.gitlabintegration.dto.sync.SyncRequest;
+import com.lre.gitlabintegration.dto.sync.SyncResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncJobServiceTest {
+
+    private static final long PROJECT_ID = 7;
+    private static final int CHANGES = 50;
+
+    private final SyncJobService jobService = new SyncJobService(new LreProperties());
+    private final CountDownLatch unstall = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        unstall.countDown();
+        jobService.shutdown();
+    }
+
+    @Test
+    void aStalledClientDoesNotHoldUpTheSync() throws Exception {
+        CountDownLatch subscribed = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        String jobId = jobService.submit(new SyncRequest(PROJECT_ID, "main", "DEFAULT", "Perf"), () -> {
+            await(subscribed);
+            for (int i = 0; i < CHANGES; i++) {
+                SyncControl.current().report(ScriptChange.success(
+                        "scripts/Script" + i, "Script" + i, "abc123", "UPLOAD", "Subject", i));
+            }
+            return SyncResponse.builder().success(true).build();
+        }, response -> done.countDown()).jobId();
+
+        RecordingEmitter stalled = new RecordingEmitter(unstall);
+        RecordingEmitter live = new RecordingEmitter(null);
+        jobService.subscribe(jobId, PROJECT_ID, stalled);
+        jobService.subscribe(jobId, PROJECT_ID, live);
+        subscribed.countDown();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(live.completed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(live.events).hasSize(CHANGES + 1).last().isEqualTo("result");
+        assertThat(stalled.events).hasSize(1);
+
+        // the stalled client catches up once it reads again
+        unstall.countDown();
+        assertThat(stalled.completed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(stalled.events).containsExactlyElementsOf(live.events);
+    }
+
+    @Test
+    void aLateClientGetsTheChangesSoFarThenTheResult() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        String jobId = jobService.submit(new SyncRequest(PROJECT_ID, "main", "DEFAULT", "Perf"), () -> {
+            SyncControl.current().report(ScriptChange.success(
+                    "scripts/Login", "Login", "abc123", "UPLOAD", "Subject", 1));
+            return SyncResponse.builder().success(true).build();
+        }, response -> done.countDown()).jobId();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        RecordingEmitter late = new RecordingEmitter(null);
+        jobService.subscribe(jobId, PROJECT_ID, late);
+
+        assertThat(late.completed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(late.events).containsExactly("change", "result");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Keeps the event names; with a latch, the first send blocks until it opens, like
+     * a client that stopped reading.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final CountDownLatch readable;
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        RecordingEmitter(CountDownLatch readable) {
+            this.readable = readable;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String text = builder.build().stream()
+                    .map(ResponseBodyEmitter.DataWithMediaType::getData)
+                    .map(String::valueOf)
+                    .findFirst()
+                    .orElse("");
+            events.add(text.substring("event:".length(), text.indexOf('\n')));
+            if (readable != null) await(readable);
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+    }
+}
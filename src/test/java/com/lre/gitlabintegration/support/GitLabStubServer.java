@@ -0,0 +1,157 @@
+package com.lre.gitlabintegration.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal GitLab on a local port: the latest-commit REST endpoint and the GraphQL
+ * {@code Tree.lastCommit} query. The latest commit of a path is {@code sha-<path>};
+ * paths containing "missing" have no history.
+ */
+public class GitLabStubServer implements AutoCloseable {
+
+    public static final String TOKEN = "stub-token";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final long latencyMillis;
+
+    public final AtomicInteger restCommitCalls = new AtomicInteger();
+    public final AtomicInteger graphqlCalls = new AtomicInteger();
+    public final Map<String, String> lastGraphqlHeaders = new ConcurrentHashMap<>();
+    public volatile String graphqlError;
+
+    /**
+     * @param latencyMillis added to every response, standing in for a network round trip
+     */
+    public GitLabStubServer(long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/graphql", this::graphql);
+        server.createContext("/api/v4/", this::rest);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String restUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v4/";
+    }
+
+    /**
+     * A client configured like the application's GitLab client.
+     */
+    public RestClient restClient() {
+        return RestClient.builder()
+                .baseUrl(restUrl())
+                .defaultHeader("PRIVATE-TOKEN", TOKEN)
+                .build();
+    }
+
+    public static String shaOf(String path) {
+        return "sha-" + path;
+    }
+
+    private void rest(HttpExchange exchange) throws IOException {
+        pause();
+        String path = exchange.getRequestURI().getPath();
+        if (!path.endsWith("/repository/commits")) {
+            send(exchange, 404, "{\"message\":\"404 Not Found\"}");
+            return;
+        }
+        restCommitCalls.incrementAndGet();
+
+        String scriptPath = UriComponentsBuilder.fromUri(exchange.getRequestURI()).build()
+                .getQueryParams().getFirst("path");
+        scriptPath = scriptPath == null ? null : URLDecoder.decode(scriptPath, StandardCharsets.UTF_8);
+
+        ArrayNode commits = objectMapper.createArrayNode();
+        if (scriptPath != null && !scriptPath.contains("missing")) {
+            commits.add(commit(scriptPath, "id", "committed_date"));
+        }
+        send(exchange, 200, commits.toString());
+    }
+
+    private void graphql(HttpExchange exchange) throws IOException {
+        pause();
+        graphqlCalls.incrementAndGet();
+        lastGraphqlHeaders.clear();
+        exchange.getRequestHeaders().forEach((name, values) ->
+                lastGraphqlHeaders.put(name.toLowerCase(), String.join(",", values)));
+
+        if (graphqlError != null) {
+            send(exchange, 200, "{\"errors\":[{\"message\":\"" + graphqlError + "\"}]}");
+            return;
+        }
+
+        JsonNode variables = objectMapper.readTree(exchange.getRequestBody()).path("variables");
+        ObjectNode repository = objectMapper.createObjectNode();
+        for (Iterator<Map.Entry<String, JsonNode>> it = variables.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> variable = it.next();
+            if (!variable.getKey().matches("p\\d+")) continue;
+
+            String scriptPath = variable.getValue().asText();
+            ObjectNode tree = repository.putObject(variable.getKey());
+            if (scriptPath.contains("missing")) {
+                tree.putNull("lastCommit");
+            } else {
+                tree.set("lastCommit", commit(scriptPath, "sha", "committedDate"));
+            }
+        }
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.putObject("data").putObject("projects").putArray("nodes").addObject().set("repository", repository);
+        send(exchange, 200, response.toString());
+    }
+
+    private ObjectNode commit(String path, String shaField, String dateField) {
+        ObjectNode commit = objectMapper.createObjectNode();
+        commit.put(shaField, shaOf(path));
+        commit.put(dateField, "2026-01-01T00:00:00Z");
+        commit.put("message", "Update " + path);
+        return commit;
+    }
+
+    private void pause() {
+        if (latencyMillis <= 0) return;
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
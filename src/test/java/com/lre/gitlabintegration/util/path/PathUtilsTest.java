@@ -0,0 +1,20 @@
+package com.lre.gitlabintegration.util.path;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathUtilsTest {
+
+    @Test
+    void nestedFoldersGoUnderSubjectWithSingleBackslashes() {
+        assertThat(PathUtils.normalizePathWithSubject("MR-Preview/7//MR-12/perf/"))
+                .isEqualTo("Subject\\MR-Preview\\7\\MR-12\\perf");
+    }
+
+    @Test
+    void anExistingSubjectPrefixIsKept() {
+        assertThat(PathUtils.normalizePathWithSubject("\\subject\\perf")).isEqualTo("subject\\perf");
+        assertThat(PathUtils.normalizePathWithSubject(" ")).isEqualTo("Subject");
+    }
+}